@@ -0,0 +1,30 @@
+/**
+ * Project: Zkrw
+ * File: Benchmarks.java
+ * Created on: Oct 17, 2026
+ * 2026 Federated Media, Inc.
+ */
+package net.fmpub.zk.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the usual JMH command line options, always with
+ * the GC profiler so allocation rates are reported next to ops/sec.
+ * <p>
+ * <code>java -jar benchmarks/target/benchmarks.jar [JMH options] [benchmark regex]</code>
+ */
+public class Benchmarks {
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
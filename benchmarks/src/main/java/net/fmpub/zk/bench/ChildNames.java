@@ -0,0 +1,58 @@
+/**
+ * Project: Zkrw
+ * File: ChildNames.java
+ * Created on: Oct 17, 2026
+ * 2026 Federated Media, Inc.
+ */
+package net.fmpub.zk.bench;
+
+import java.util.*;
+
+import net.fmpub.zk.util.queue.PackedPriorityKeyHandler;
+import net.fmpub.zk.util.queue.PriorityKeyHandler;
+import net.fmpub.zk.util.queue.SimplePriorityKeyHandler;
+
+/**
+ * Synthetic queue listings, in the unsorted order getChildren returns.
+ */
+final class ChildNames {
+
+    static final String SIMPLE = "simple";
+    static final String PACKED = "packed";
+
+    /**
+     * Priorities used for the synthetic children.
+     */
+    static final int NUM_PRIORITIES = 10;
+
+    private static final long SEED = 17;
+
+    private ChildNames() {
+    }
+
+    /**
+     * @param numChildren the number of child names
+     * @return shuffled q-PPP-SSSSSSSSSS names with unique sequence numbers
+     */
+    static List<String> generate(int numChildren) {
+        PackedPriorityKeyHandler keyHandler = new PackedPriorityKeyHandler();
+        Random rand = new Random(SEED);
+
+        List<String> childNames = new ArrayList<String>(numChildren);
+        for (int seq = 0; seq < numChildren; seq++) {
+            childNames.add(keyHandler.generateChildNamePrefix(rand.nextInt(NUM_PRIORITIES))
+                    + String.format("%010d", seq));
+        }
+        Collections.shuffle(childNames, rand);
+        return childNames;
+    }
+
+    static PriorityKeyHandler<?, Integer> keyHandler(String name) {
+        if (SIMPLE.equals(name)) {
+            return new SimplePriorityKeyHandler();
+        } else if (PACKED.equals(name)) {
+            return new PackedPriorityKeyHandler();
+        }
+        throw new IllegalArgumentException("Unknown key handler: " + name);
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * Project: Zkrw
+ * File: KeyHandlerBenchmark.java
+ * Created on: Oct 17, 2026
+ * 2026 Federated Media, Inc.
+ */
+package net.fmpub.zk.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.fmpub.zk.util.queue.PriorityKeyHandler;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Per-name cost of the key handler calls made for every child on every
+ * listing of a queue.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class KeyHandlerBenchmark {
+
+    private static final int NUM_NAMES = 1024;
+
+    @Param({ ChildNames.SIMPLE, ChildNames.PACKED })
+    public String keyHandlerName;
+
+    private PriorityKeyHandler<?, Integer> keyHandler;
+
+    private String[] childNames;
+    private String[] childPaths;
+
+    private int next = 0;
+
+    @Setup
+    public void setUp() {
+        keyHandler = ChildNames.keyHandler(keyHandlerName);
+
+        List<String> names = ChildNames.generate(NUM_NAMES);
+        childNames = names.toArray(new String[NUM_NAMES]);
+        childPaths = new String[NUM_NAMES];
+        for (int i = 0; i < NUM_NAMES; i++) {
+            childPaths[i] = "/DS/queues/bench/" + childNames[i];
+        }
+    }
+
+    private int nextIndex() {
+        next = (next + 1) & (NUM_NAMES - 1);
+        return next;
+    }
+
+    @Benchmark
+    public boolean hasValidName() {
+        return keyHandler.hasValidName(childNames[nextIndex()]);
+    }
+
+    @Benchmark
+    public Integer getPriority() {
+        return keyHandler.getPriority(childNames[nextIndex()]);
+    }
+
+    @Benchmark
+    public Integer getPriorityFromPath() {
+        return keyHandler.getPriority(childPaths[nextIndex()]);
+    }
+
+    @Benchmark
+    public String generateChildNamePrefix() {
+        return keyHandler.generateChildNamePrefix(nextIndex() % ChildNames.NUM_PRIORITIES);
+    }
+
+    @Benchmark
+    public Object generateKey() {
+        return keyHandler.generateKey(childNames[nextIndex()]);
+    }
+}
@@ -0,0 +1,65 @@
+/**
+ * Project: Zkrw
+ * File: OrderingBenchmark.java
+ * Created on: Oct 17, 2026
+ * 2026 Federated Media, Inc.
+ */
+package net.fmpub.zk.bench;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import net.fmpub.zk.util.queue.PriorityKeyHandler;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Cost of ordering one listing of a queue, as PriorityDistributedQueue does
+ * on every dequeue that does not use a local index.
+ *
+ * @see PackedOrderingBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+@State(Scope.Benchmark)
+public class OrderingBenchmark {
+
+    @Param({ "1000", "10000", "100000", "1000000" })
+    public int numChildren;
+
+    @Param({ ChildNames.SIMPLE, ChildNames.PACKED })
+    public String keyHandlerName;
+
+    private PriorityKeyHandler<?, Integer> keyHandler;
+
+    private List<String> childNames;
+
+    @Setup
+    public void setUp() {
+        keyHandler = ChildNames.keyHandler(keyHandlerName);
+        childNames = ChildNames.generate(numChildren);
+    }
+
+    /**
+     * Same as PriorityDistributedQueue.orderedChildren, without the request.
+     */
+    @Benchmark
+    public Object treeMap() {
+        return orderedChildren(keyHandler, childNames);
+    }
+
+    private static <KEY> TreeMap<KEY, String> orderedChildren(PriorityKeyHandler<KEY, Integer> keyHandler,
+            List<String> childNames) {
+        TreeMap<KEY, String> orderedChildren = new TreeMap<KEY, String>();
+        for (String childName : childNames) {
+            if (!keyHandler.hasValidName(childName)) {
+                continue;
+            }
+            orderedChildren.put(keyHandler.generateKey(childName), childName);
+        }
+        return orderedChildren;
+    }
+}
@@ -0,0 +1,47 @@
+/**
+ * Project: Zkrw
+ * File: PackedOrderingBenchmark.java
+ * Created on: Oct 17, 2026
+ * 2026 Federated Media, Inc.
+ */
+package net.fmpub.zk.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.fmpub.zk.util.queue.PackedPriorityKeyHandler;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Cost of ordering one listing of a queue with
+ * PackedPriorityKeyHandler.orderChildNames, which the queue uses instead of
+ * the TreeMap of OrderingBenchmark for that handler. The other handlers have
+ * no primitive ordering, so this one only has the packed handler.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+@State(Scope.Benchmark)
+public class PackedOrderingBenchmark {
+
+    @Param({ "1000", "10000", "100000", "1000000" })
+    public int numChildren;
+
+    private PackedPriorityKeyHandler keyHandler;
+
+    private List<String> childNames;
+
+    @Setup
+    public void setUp() {
+        keyHandler = new PackedPriorityKeyHandler();
+        childNames = ChildNames.generate(numChildren);
+    }
+
+    @Benchmark
+    public Object primitiveSort() {
+        return keyHandler.orderChildNames(childNames);
+    }
+}
@@ -85,6 +85,27 @@ enQueue()
 
 }
 
+# Adds each line of stdin to the queue in one call, and echoes the created node paths.
+# Lines are added as they are, unless arg 3 is "pri".
+# Arg 1: Path to queue.
+# Arg 2: Default priority. May be blank.
+# Arg 3: "pri" if each line starts with its own priority: "<priority><TAB><value>",
+#        or "<TAB><value>" for the default priority. May be blank.
+enQueueAll()
+{
+
+	local zk_q_path="$1"
+	local priority="$2"
+	local input="-"
+	if [ "$3" == "pri" ]; then
+		input="pri:-"
+	fi
+
+	zk qAddBatch "${zk_q_path}" "${input}" ${priority}
+	return $?
+
+}
+
 # adds to queue if the value does not already exist in the queue
 enQueueIfNew()
 {
@@ -138,68 +159,48 @@ getNumJobsInQueue()
 
 }
 
-# Waits for a change in a zookeeper zNode and returns the new value
+# Waits for a change in a zookeeper zNode and returns the new value.
+# Uses a watch, so the change is seen within milliseconds, without polling.
+# Returns 1 if there was no change in time, or the zNode does not exist.
+# Usage:
+# "<path>" "<wait in sec>" ["<old value>" or "version:<N>"]
+#
+# old value = Optional. The value to wait for a change from. Defaults to the current value.
+# The 4th argument, the pause between polls, is ignored.
 waitForChange() 
 {
 	local zk_path="$1"
 	local wait_in_sec="$2"
 	local old_value="$3" # optional
 
-	local pause_in_sec="$4" #optional
-
-	if [[ "$old_value" == "" ]]; then
-		old_value="$(zk get ${zk_path})"
-	fi
-
-	if [[ "$pause_in_sec" == "" ]]; then
-		pause_in_sec="60"
-	fi
-	
-	local exists="true"
-	local cur_dt="$(date +%s)"
-	local end_dt="$(( $cur_dt + $wait_in_sec ))"
-	local new_value="$old_value"
-	while [[ $cur_dt -lt $end_dt && "${exists}" == "true" ]]; do
-
-		new_value="$(zk get ${zk_path})"
-
-		if [[ "$?" != "0" ]]; then
-
-			# some error, so check if it really exists			
-			exists="$(zk exists ${zk_path})"
-
-		elif [[ "$new_value" != "$old_value" ]]; then
-			echo "$new_value"
-			return 0
-		fi
-
-		sleep $pause_in_sec
-		
-		cur_dt="$(date +%s)"
-	done
-		
-	return 1
+	zk waitForChange "${zk_path}" "${wait_in_sec}" "${old_value}"
 }
 
 # Delete zk zNodes that have modified times older than the given date-time.
-# The zk zNodes must match the pattern using egrep -i
+# The zk zNodes must match the pattern, ignoring case.
 # Also deletes children of the base path if the parents are empty.
+# Prints each deleted subtree root and emptied parent, with the number of nodes deleted with it.
+# Unlike before, the values of the deleted subtrees are not printed.
 # Usage:
-# "<base path>" "<date-time>" "<pattern>"
+# "<base path>" "<date-time>" "<pattern>" [--dry-run]
 #
 # base path = the root path in zookeeper
 # date-time = The cutoff. Either a valid date string for the date function, or unixtime in seconds.
-# pattern = Optional. The path pattern to match. If blank all child paths (recursively) from the basepath will be checked.
+# pattern = Optional. A case insensitive Java regex, matched against the "<path><TAB><value>" line
+#           of each node as getAll prints it, so it can match the value too. If blank all child paths
+#           (recursively) from the basepath will be checked.
+# --dry-run = Optional. Only print the paths that would be deleted.
 #
 # Examples
 # deleteOlder /DS/pv-tenzing/pv-hadoop-aws/staged-logs "2012-01-01 00:00:00" "staged_logs"
 # deleteOlder /DS/pv-tenzing/pv-hadoop-aws/staged-logs "$(date --date "-5 days" +%s)" "staged_logs"
+# deleteOlder /DS/pv-tenzing/pv-hadoop-aws/staged-logs "$(date --date "-5 days" +%s)" "staged_logs" --dry-run
 deleteOlder()
 {
 	local path="$1"
 	local dateStr="$2"
 	local pattern="$3"
-
+	local dryRun="$4"
 
 	# try the date param as is, then try as unixtime
 
@@ -239,51 +240,20 @@ deleteOlder()
 		return 2
 	fi
 
-	if [ "${pattern}" == "" ]; then
-		pattern="."
+	# a single traversal in zk, which prints each deleted subtree and emptied parent
+	local command="pruneOlder"
+	if [ "${dryRun}" == "--dry-run" ]; then
+		command="pruneOlderDryRun"
 	fi
-
-	# compare mtime. Note mtime is in milliseconds.
-	echo "Running $0, using path=$path pattern=$pattern dateCutoff=$dateCutoffMs"
-	zk getall $path | egrep -i "$pattern" | sort 2>/dev/null | while read pv; do
-
-		# get just the path (tab delimited)
-		local p=$(echo "$pv" | cut -d'	' -f1)
-
-		# process each child path
-		# ignore the base path itself
-		if [[ "$p" != "$path" && "$(zk exists $p)" == "true" ]]; then
-			local mtime=$(zk getMTime $p)
-			if [ $mtime -lt $dateCutoffMs ]; then
-				echo ">> Preparing to delete all $p. Current values:" && \
-				zk getAll $p && \
-				zk deleteAll $p && \
-				echo ">> Deleted $p" || echo ">> Failed to delete $p"
-			#else
-			#	echo ">> Skipped $p"
-			fi
-
-			# check whether we can delete the parents
-			# up to the base path
-			local parPrev=""
-			local parNext="$(getParent $p)"
-			local parOK=1
-
-			while [[ "$parNext" != "$path" && "$parNext" != "" && "$parNext" != "/" && "$parPrev" != "$parNext" && "$parOK" == "1" ]]; do
-				parPrev="$parNext"
-				local parMTime=$(zk getMTime $parNext)
-				if [ $parMTime -lt $dateCutoffMs ]; then
-					deleteIfNoChildren "$parNext" && \
-					echo ">> Deleted parent $parNext" && \
-					parNext="$(getParent $parNext)" || parOK=0
-				fi
-				#if [ "$parOK" != "1" ]; then
-				#	echo "Failed to delete parent $parNext. Continuing"
-				#fi
-			done
-		fi
+	echo "Running $0, using path=$path pattern=$pattern dateCutoff=$dateCutoffMs $dryRun"
+	local verb="Deleted"
+	if [ "${dryRun}" == "--dry-run" ]; then
+		verb="Would delete"
+	fi
+	zk $command "$path" "$dateSec" "$pattern" | while IFS='	' read -r p numNodes; do
+		echo ">> ${verb} $p (${numNodes} nodes)"
 	done
-
+	return ${PIPESTATUS[0]}
 }
 
 # Get the parent ZK Node path from the given path
@@ -0,0 +1,145 @@
+/**
+ * Project: Zkrw
+ * File: AsyncMultiReader.java
+ * Created on: Oct 17, 2026
+ * 2026 Federated Media, Inc.
+ */
+package net.fmpub.zk.util;
+
+import java.util.List;
+
+import org.apache.zookeeper.AsyncCallback.DataCallback;
+import org.apache.zookeeper.AsyncCallback.StatCallback;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.Stat;
+
+/**
+ * Reads a list of znodes with pipelined asynchronous getData requests, or
+ * exists requests when only the stat is needed, so the data does not cross
+ * the wire.
+ * <p>
+ * Results are handed to the ResultHandler in the order of the paths, on the
+ * thread that called read(), as soon as they and every result before them
+ * have arrived. Up to maxInFlight results are requested ahead of the one
+ * being handed over. A path that fails is handed over as an error, and the
+ * others are still read.
+ */
+public class AsyncMultiReader {
+
+	/**
+	 * Receives the result for each path.
+	 */
+	public interface ResultHandler extends AsyncTreeReader.NodeHandler {
+
+		/**
+		 * @param path the path that could not be read
+		 * @param failure why, e.g. NoNode
+		 * @throws Exception stops the reading
+		 */
+		void error(String path, KeeperException failure) throws Exception;
+	}
+
+	private final ZooKeeper zookeeper;
+	private final int maxInFlight;
+	private final boolean readData;
+
+	/**
+	 * @param readData
+	 *            false to fetch only the stat of each node
+	 */
+	public AsyncMultiReader(ZooKeeper zookeeper, int maxInFlight,
+			boolean readData) {
+		if (maxInFlight < 1) {
+			throw new IllegalArgumentException(
+					"maxInFlight must be at least 1: " + maxInFlight);
+		}
+		this.zookeeper = zookeeper;
+		this.maxInFlight = maxInFlight;
+		this.readData = readData;
+	}
+
+	private static class Result {
+		int rc;
+		byte[] data;
+		Stat stat;
+	}
+
+	/**
+	 * Read the paths.
+	 *
+	 * @param handler receives the result for each path, in order
+	 * @return the number of paths that failed
+	 * @throws InterruptedException
+	 * @throws Exception thrown by the handler
+	 */
+	public int read(List<String> paths, ResultHandler handler) throws Exception {
+
+		final Result[] results = new Result[paths.size()];
+		final Object lock = new Object();
+
+		int numFailed = 0;
+		int requested = 0;
+		for (int next = 0; next < paths.size(); next++) {
+			for (; requested < paths.size() && requested < next + maxInFlight; requested++) {
+				request(paths.get(requested), requested, results, lock);
+			}
+
+			Result result;
+			synchronized (lock) {
+				while (results[next] == null) {
+					lock.wait();
+				}
+				result = results[next];
+				results[next] = null;
+			}
+
+			String path = paths.get(next);
+			if (result.rc == Code.OK.intValue()) {
+				handler.node(path, result.data, result.stat);
+			} else {
+				numFailed++;
+				handler.error(path, KeeperException.create(Code.get(result.rc), path));
+			}
+		}
+		return numFailed;
+	}
+
+	private void request(String path, final int index, final Result[] results,
+			final Object lock) {
+		if (!readData) {
+			zookeeper.exists(path, false, new StatCallback() {
+
+				@Override
+				public void processResult(int rc, String path, Object ctx,
+						Stat stat) {
+					// a missing node is OK for exists, but an error here
+					arrived(index, stat == null && rc == Code.OK.intValue() ? Code.NONODE.intValue() : rc,
+							null, stat, results, lock);
+				}
+			}, null);
+			return;
+		}
+		zookeeper.getData(path, false, new DataCallback() {
+
+			@Override
+			public void processResult(int rc, String path, Object ctx,
+					byte[] data, Stat stat) {
+				arrived(index, rc, data, stat, results, lock);
+			}
+		}, null);
+	}
+
+	private static void arrived(int index, int rc, byte[] data, Stat stat,
+			Result[] results, Object lock) {
+		Result result = new Result();
+		result.rc = rc;
+		result.data = data;
+		result.stat = stat;
+		synchronized (lock) {
+			results[index] = result;
+			lock.notifyAll();
+		}
+	}
+}
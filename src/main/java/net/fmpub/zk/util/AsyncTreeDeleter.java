@@ -0,0 +1,213 @@
+/**
+ * Project: Zkrw
+ * File: AsyncTreeDeleter.java
+ * Created on: Oct 17, 2026
+ * 2026 Federated Media, Inc.
+ */
+package net.fmpub.zk.util;
+
+import java.util.*;
+
+import org.apache.log4j.Logger;
+import org.apache.zookeeper.AsyncCallback.ChildrenCallback;
+import org.apache.zookeeper.AsyncCallback.VoidCallback;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.ZooKeeper;
+
+/**
+ * Deletes a znode and all its descendants. The subtree is listed one level at
+ * a time with pipelined asynchronous getChildren requests, then deleted
+ * bottom up, one level at a time, with pipelined asynchronous deletes.
+ * <p>
+ * Nodes that no longer exist are ignored. If nodes gained children while
+ * being deleted, the remaining subtree is listed and deleted again, up to
+ * MAX_PASSES times.
+ */
+public class AsyncTreeDeleter {
+
+	private static final Logger LOGGER = Logger.getLogger(AsyncTreeDeleter.class);
+
+	/**
+	 * Number of times the subtree is listed and deleted before giving up on
+	 * nodes that keep gaining children.
+	 */
+	public static final int MAX_PASSES = 3;
+
+	private final ZooKeeper zookeeper;
+	private final InFlightWindow window;
+
+	private final Object lock = new Object();
+
+	private KeeperException failure;
+
+	public AsyncTreeDeleter(ZooKeeper zookeeper, int maxInFlight) {
+		this.zookeeper = zookeeper;
+		this.window = new InFlightWindow(maxInFlight);
+	}
+
+	/**
+	 * Delete the path and all its descendants.
+	 *
+	 * @param rootPath the path to delete
+	 * @return the number of znodes deleted
+	 * @throws KeeperException if the path does not exist or a request failed
+	 * @throws InterruptedException
+	 */
+	public int deleteAll(String rootPath) throws KeeperException,
+			InterruptedException {
+		return deleteAll(Collections.singletonList(rootPath), null);
+	}
+
+	/**
+	 * Delete the paths and all their descendants, which may already have been
+	 * listed, e.g. by an AsyncTreeReader. Listed roots that no longer exist
+	 * are ignored.
+	 *
+	 * @param rootPaths the paths to delete, none a descendant of another
+	 * @param listed the roots and their descendants one level at a time, with
+	 *            each node in the level after its parent, or null to list
+	 *            them here
+	 * @return the number of znodes deleted
+	 * @throws KeeperException if a root is not listed and does not exist, or
+	 *             a request failed
+	 * @throws InterruptedException
+	 */
+	public int deleteAll(List<String> rootPaths, List<List<String>> listed)
+			throws KeeperException, InterruptedException {
+
+		int numDeleted = 0;
+		List<String> notEmpty = null;
+
+		for (int pass = 1; pass <= MAX_PASSES; pass++) {
+			notEmpty = new ArrayList<String>();
+
+			// the roots must exist, unless listed by the caller or deleted by another client after the first pass
+			List<List<String>> levels = (pass == 1 && listed != null) ? listed
+					: listLevels(rootPaths, pass == 1);
+			numDeleted += deleteLevels(levels, notEmpty);
+
+			if (notEmpty.isEmpty()) {
+				return numDeleted;
+			}
+		}
+
+		throw KeeperException.create(Code.NOTEMPTY,
+				rootPaths.size() == 1 ? rootPaths.get(0) : notEmpty.get(0));
+	}
+
+	/**
+	 * List the subtrees one level at a time.
+	 *
+	 * @return the paths of each level, starting with the roots
+	 */
+	private List<List<String>> listLevels(List<String> rootPaths,
+			final boolean mustExist) throws KeeperException, InterruptedException {
+
+		final Set<String> roots = new HashSet<String>(rootPaths);
+		List<List<String>> levels = new ArrayList<List<String>>();
+		List<String> level = rootPaths;
+
+		while (!level.isEmpty()) {
+			levels.add(level);
+
+			final List<String> nextLevel = new ArrayList<String>();
+			for (final String parentPath : level) {
+				window.acquire();
+				zookeeper.getChildren(parentPath, false, new ChildrenCallback() {
+
+					@Override
+					public void processResult(int rc, String path, Object ctx,
+							List<String> children) {
+						try {
+							if (rc == Code.OK.intValue()) {
+								synchronized (nextLevel) {
+									for (String childName : children) {
+										nextLevel.add(ZkUtils.getChildPath(parentPath, childName));
+									}
+								}
+							} else if (rc != Code.NONODE.intValue() || (mustExist && roots.contains(parentPath))) {
+								fail(rc, parentPath);
+							}
+						} finally {
+							window.release();
+						}
+					}
+				}, null);
+			}
+			window.awaitAll();
+			checkFailure();
+
+			level = nextLevel;
+		}
+
+		return levels;
+	}
+
+	/**
+	 * Delete each level, deepest first.
+	 *
+	 * @param notEmpty collects the nodes that gained children
+	 * @return the number of znodes deleted
+	 */
+	private int deleteLevels(List<List<String>> levels,
+			final List<String> notEmpty) throws KeeperException,
+			InterruptedException {
+
+		final int[] numDeleted = new int[1];
+
+		for (int depth = levels.size() - 1; depth >= 0; depth--) {
+			for (final String path : levels.get(depth)) {
+				window.acquire();
+				zookeeper.delete(path, -1, new VoidCallback() {
+
+					@Override
+					public void processResult(int rc, String path, Object ctx) {
+						try {
+							synchronized (lock) {
+								if (rc == Code.OK.intValue()) {
+									numDeleted[0]++;
+								} else if (rc == Code.NONODE.intValue()) {
+									// do nothing if the node does not exist
+									LOGGER.debug("Attempted delete but node does not exist: " + path);
+								} else if (rc == Code.NOTEMPTY.intValue()) {
+									LOGGER.debug("Node gained children during delete: " + path);
+									notEmpty.add(path);
+								} else {
+									fail(rc, path);
+								}
+							}
+						} finally {
+							window.release();
+						}
+					}
+				}, null);
+			}
+			window.awaitAll();
+			checkFailure();
+
+			if (!notEmpty.isEmpty()) {
+				// the parents of these can not be deleted until they are
+				break;
+			}
+		}
+
+		return numDeleted[0];
+	}
+
+	private void fail(int rc, String path) {
+		synchronized (lock) {
+			if (failure == null) {
+				failure = KeeperException.create(Code.get(rc), path);
+			}
+		}
+	}
+
+	private void checkFailure() throws KeeperException {
+		synchronized (lock) {
+			if (failure != null) {
+				throw failure;
+			}
+		}
+	}
+}
@@ -0,0 +1,301 @@
+/**
+ * Project: Zkrw
+ * File: AsyncTreePruner.java
+ * Created on: Oct 17, 2026
+ * 2026 Federated Media, Inc.
+ */
+package net.fmpub.zk.util;
+
+import java.util.*;
+import java.util.regex.Pattern;
+
+import org.apache.log4j.Logger;
+import org.apache.zookeeper.AsyncCallback.VoidCallback;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.Stat;
+
+/**
+ * Deletes the descendants of a base path that were last modified before a
+ * cutoff, and the parents they leave empty.
+ * <p>
+ * The tree is read once with an AsyncTreeReader. A descendant whose mtime is
+ * before the cutoff and whose <code>{path}\t{value}</code>, as getAll prints
+ * it, matches the pattern is pruned with its whole subtree, which is deleted
+ * bottom up by an AsyncTreeDeleter without being listed again. Then each
+ * ancestor below the base path that is older than the cutoff and has no
+ * children left is deleted too, deepest first, so emptied branches collapse
+ * up to the base path. The base path itself is never deleted.
+ * <p>
+ * Without a pattern only the stat of each node is fetched, since the values
+ * are not needed.
+ * <p>
+ * A parent that gained children in the meantime is kept. A dry run reads the
+ * tree and returns the same paths without deleting anything.
+ */
+public class AsyncTreePruner {
+
+	private static final Logger LOGGER = Logger.getLogger(AsyncTreePruner.class);
+
+	private final ZooKeeper zookeeper;
+	private final int maxInFlight;
+
+	public AsyncTreePruner(ZooKeeper zookeeper, int maxInFlight) {
+		this.zookeeper = zookeeper;
+		this.maxInFlight = maxInFlight;
+	}
+
+	/**
+	 * A node on the path from the base to the node being handled.
+	 */
+	private static class Ancestor {
+		final String path;
+		final Stat stat;
+		int numChildrenPruned = 0;
+
+		Ancestor(String path, Stat stat) {
+			this.path = path;
+			this.stat = stat;
+		}
+	}
+
+	/**
+	 * Collects the subtrees to prune and the parents they empty, in a single
+	 * pre-order traversal.
+	 */
+	private static class Collector implements AsyncTreeReader.NodeHandler {
+		final String basePath;
+		final long cutoffMs;
+		final Pattern pattern;
+
+		final LinkedList<Ancestor> ancestors = new LinkedList<Ancestor>();
+
+		/**
+		 * The roots of the pruned subtrees, in pre-order.
+		 */
+		final List<String> subtreeRoots = new ArrayList<String>();
+
+		/**
+		 * The number of nodes in each pruned subtree.
+		 */
+		final List<Integer> subtreeSizes = new ArrayList<Integer>();
+
+		/**
+		 * The pruned subtrees one level at a time, each root in the first.
+		 */
+		final List<List<String>> subtreeLevels = new ArrayList<List<String>>();
+
+		/**
+		 * The emptied parents, children before their parents.
+		 */
+		final List<String> emptiedParents = new ArrayList<String>();
+
+		String subtreeRoot = null;
+		int subtreeRootDepth;
+
+		Collector(String basePath, long cutoffMs, Pattern pattern) {
+			this.basePath = basePath;
+			this.cutoffMs = cutoffMs;
+			this.pattern = pattern;
+		}
+
+		@Override
+		public void node(String path, byte[] data, Stat stat) {
+			if (subtreeRoot != null && isDescendant(subtreeRoot, path)) {
+				addToSubtree(path, depth(path) - subtreeRootDepth);
+				int last = subtreeSizes.size() - 1;
+				subtreeSizes.set(last, subtreeSizes.get(last) + 1);
+				return;
+			}
+			subtreeRoot = null;
+
+			while (!ancestors.isEmpty() && !isDescendant(ancestors.getLast().path, path)) {
+				leave(ancestors.removeLast());
+			}
+
+			if (!path.equals(basePath) && stat.getMtime() < cutoffMs
+					&& (pattern == null || pattern.matcher(line(path, data)).find())) {
+				subtreeRoot = path;
+				subtreeRootDepth = depth(path);
+				subtreeRoots.add(path);
+				subtreeSizes.add(1);
+				addToSubtree(path, 0);
+				ancestors.getLast().numChildrenPruned++;
+			} else {
+				ancestors.add(new Ancestor(path, stat));
+			}
+		}
+
+		/**
+		 * Called once the traversal is done.
+		 */
+		void finish() {
+			while (!ancestors.isEmpty()) {
+				leave(ancestors.removeLast());
+			}
+		}
+
+		/**
+		 * All the descendants of the ancestor have been handled.
+		 */
+		private void leave(Ancestor ancestor) {
+			if (ancestor.path.equals(basePath)
+					|| ancestor.numChildrenPruned == 0
+					|| ancestor.numChildrenPruned < ancestor.stat.getNumChildren()
+					|| ancestor.stat.getMtime() >= cutoffMs) {
+				return;
+			}
+			emptiedParents.add(ancestor.path);
+			ancestors.getLast().numChildrenPruned++;
+		}
+
+		/**
+		 * @return the line getAll prints for the node
+		 */
+		private static String line(String path, byte[] data) {
+			return path + "\t" + (data == null ? "" : new String(ValueCodec.decode(data)));
+		}
+
+		private void addToSubtree(String path, int level) {
+			if (level == subtreeLevels.size()) {
+				subtreeLevels.add(new ArrayList<String>());
+			}
+			subtreeLevels.get(level).add(path);
+		}
+
+		private static boolean isDescendant(String ancestorPath, String path) {
+			if (ancestorPath.equals("/")) {
+				return path.length() > 1;
+			}
+			return path.length() > ancestorPath.length() + 1
+					&& path.startsWith(ancestorPath)
+					&& path.charAt(ancestorPath.length()) == '/';
+		}
+
+		private static int depth(String path) {
+			int depth = 0;
+			for (int i = 0; i < path.length(); i++) {
+				if (path.charAt(i) == '/') {
+					depth++;
+				}
+			}
+			return depth;
+		}
+	}
+
+	/**
+	 * Prune the descendants of the base path older than the cutoff.
+	 *
+	 * @param basePath the path whose descendants are pruned
+	 * @param cutoffMs nodes with an mtime before this are pruned, in
+	 *            milliseconds since the epoch
+	 * @param pattern only descendants whose path and value, as a
+	 *            <code>{path}\t{value}</code> line, contain a match are
+	 *            pruned, or null for all
+	 * @param dryRun true to only return what would be deleted
+	 * @return the roots of the pruned subtrees in pre-order, then the emptied
+	 *         parents that were deleted, deepest first, each with the number
+	 *         of nodes deleted with it
+	 * @throws KeeperException if the base path does not exist or a request
+	 *             failed
+	 * @throws InterruptedException
+	 */
+	public Map<String, Integer> prune(String basePath, long cutoffMs, Pattern pattern,
+			boolean dryRun) throws KeeperException, InterruptedException {
+
+		long startMs = System.currentTimeMillis();
+		Collector collector = new Collector(basePath, cutoffMs, pattern);
+		try {
+			new AsyncTreeReader(zookeeper, maxInFlight, pattern != null).read(basePath, collector);
+		} catch (KeeperException e) {
+			throw e;
+		} catch (InterruptedException e) {
+			throw e;
+		} catch (Exception e) {
+			// the collector throws nothing
+			throw new IllegalStateException(e);
+		}
+		collector.finish();
+
+		Map<String, Integer> pruned = new LinkedHashMap<String, Integer>();
+		for (int i = 0; i < collector.subtreeRoots.size(); i++) {
+			pruned.put(collector.subtreeRoots.get(i), collector.subtreeSizes.get(i));
+		}
+		if (dryRun) {
+			addParents(pruned, collector.emptiedParents);
+			return pruned;
+		}
+
+		int numDeleted = 0;
+		if (!collector.subtreeRoots.isEmpty()) {
+			numDeleted = new AsyncTreeDeleter(zookeeper, maxInFlight)
+					.deleteAll(collector.subtreeRoots, collector.subtreeLevels);
+		}
+		List<String> deletedParents = deleteParents(collector.emptiedParents);
+		addParents(pruned, deletedParents);
+
+		LOGGER.info("Pruned " + collector.subtreeRoots.size() + " subtrees ("
+				+ numDeleted + " nodes) and " + deletedParents.size()
+				+ " emptied parents from " + basePath + " in "
+				+ (System.currentTimeMillis() - startMs) + " ms");
+		return pruned;
+	}
+
+	private static void addParents(Map<String, Integer> pruned, List<String> parentPaths) {
+		for (String parentPath : parentPaths) {
+			pruned.put(parentPath, 1);
+		}
+	}
+
+	/**
+	 * Delete the parents with pipelined requests. Requests are applied in the
+	 * order they are sent, so children are deleted before their parents.
+	 *
+	 * @return the parents deleted
+	 */
+	private List<String> deleteParents(List<String> parentPaths)
+			throws KeeperException, InterruptedException {
+
+		final InFlightWindow window = new InFlightWindow(maxInFlight);
+		final Set<String> kept = new HashSet<String>();
+		final int[] failureRc = { Code.OK.intValue() };
+		final String[] failurePath = new String[1];
+
+		for (String parentPath : parentPaths) {
+			window.acquire();
+			zookeeper.delete(parentPath, -1, new VoidCallback() {
+
+				@Override
+				public void processResult(int rc, String path, Object ctx) {
+					try {
+						synchronized (kept) {
+							if (rc == Code.NOTEMPTY.intValue()) {
+								LOGGER.debug("Parent gained children, keeping it: " + path);
+								kept.add(path);
+							} else if (rc == Code.NONODE.intValue()) {
+								kept.add(path);
+							} else if (rc != Code.OK.intValue()
+									&& failureRc[0] == Code.OK.intValue()) {
+								failureRc[0] = rc;
+								failurePath[0] = path;
+							}
+						}
+					} finally {
+						window.release();
+					}
+				}
+			}, null);
+		}
+		window.awaitAll();
+
+		synchronized (kept) {
+			if (failureRc[0] != Code.OK.intValue()) {
+				throw KeeperException.create(Code.get(failureRc[0]), failurePath[0]);
+			}
+			List<String> deleted = new ArrayList<String>(parentPaths);
+			deleted.removeAll(kept);
+			return deleted;
+		}
+	}
+}
@@ -0,0 +1,258 @@
+/**
+ * Project: Zkrw
+ * File: AsyncTreeReader.java
+ * Created on: Oct 17, 2026
+ * 2026 Federated Media, Inc.
+ */
+package net.fmpub.zk.util;
+
+import java.util.*;
+
+import org.apache.log4j.Logger;
+import org.apache.zookeeper.AsyncCallback.ChildrenCallback;
+import org.apache.zookeeper.AsyncCallback.DataCallback;
+import org.apache.zookeeper.AsyncCallback.StatCallback;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.Stat;
+
+/**
+ * Reads a znode and all its descendants with pipelined asynchronous
+ * getData and getChildren requests, up to a maximum number in flight.
+ * <p>
+ * Nodes are handed to the NodeHandler in depth first pre-order, with children
+ * sorted by name, on the thread that called read(). Nodes are handed over as
+ * soon as they and every node before them have been fetched, so only the
+ * frontier of the traversal is held in memory.
+ * <p>
+ * Descendants deleted during the traversal are skipped.
+ * <p>
+ * A reader created with readData false uses exists instead of getData, so
+ * only the stat of each node is fetched and the data handed over is null.
+ */
+public class AsyncTreeReader {
+
+	private static final Logger LOGGER = Logger.getLogger(AsyncTreeReader.class);
+
+	/**
+	 * Receives each node of the tree.
+	 */
+	public interface NodeHandler {
+
+		/**
+		 * @param path the path of the znode
+		 * @param data the data of the znode
+		 * @param stat the stat of the znode
+		 * @throws Exception stops the traversal
+		 */
+		void node(String path, byte[] data, Stat stat) throws Exception;
+	}
+
+	private final ZooKeeper zookeeper;
+	private final int maxInFlight;
+	private final boolean readData;
+
+	private final Object lock = new Object();
+
+	/**
+	 * Nodes whose requests have not been issued yet. Children are added at the
+	 * front, so requests are issued in roughly the order nodes are handed over.
+	 */
+	private final LinkedList<Node> toFetch = new LinkedList<Node>();
+
+	/**
+	 * Nodes in pre-order that have not been handed over, top is next.
+	 */
+	private final LinkedList<Node> toHandle = new LinkedList<Node>();
+
+	private int inFlight = 0;
+
+	private KeeperException failure;
+
+	public AsyncTreeReader(ZooKeeper zookeeper, int maxInFlight) {
+		this(zookeeper, maxInFlight, true);
+	}
+
+	/**
+	 * @param readData
+	 *            false to fetch only the stat of each node
+	 */
+	public AsyncTreeReader(ZooKeeper zookeeper, int maxInFlight,
+			boolean readData) {
+		if (maxInFlight < 1) {
+			throw new IllegalArgumentException(
+					"maxInFlight must be at least 1: " + maxInFlight);
+		}
+		this.zookeeper = zookeeper;
+		this.maxInFlight = maxInFlight;
+		this.readData = readData;
+	}
+
+	/**
+	 * Read the path and all its descendants. A reader can only be used once.
+	 *
+	 * @param rootPath the path to read
+	 * @param handler receives each node in pre-order
+	 * @throws KeeperException if the path does not exist or a request failed
+	 * @throws InterruptedException
+	 * @throws Exception thrown by the handler
+	 */
+	public void read(String rootPath, NodeHandler handler) throws Exception {
+
+		Node root = new Node(rootPath, true);
+		toFetch.add(root);
+		toHandle.add(root);
+
+		while (true) {
+			Node next = null;
+			List<Node> ready = new ArrayList<Node>();
+
+			synchronized (lock) {
+				collectReady(ready);
+
+				if (ready.isEmpty()) {
+					if (failure != null) {
+						throw failure;
+					}
+					if (toHandle.isEmpty()) {
+						return;
+					}
+					if (!toFetch.isEmpty() && inFlight < maxInFlight) {
+						next = toFetch.removeFirst();
+						inFlight++;
+					} else {
+						lock.wait();
+					}
+				}
+			}
+
+			for (Node node : ready) {
+				handler.node(node.path, node.data, node.stat);
+			}
+
+			if (next != null) {
+				fetchData(next);
+			}
+		}
+	}
+
+	/**
+	 * Move the nodes that can be handed over in pre-order into ready.
+	 */
+	private void collectReady(List<Node> ready) {
+		while (!toHandle.isEmpty()) {
+			Node node = toHandle.getFirst();
+			if (node.missing) {
+				toHandle.removeFirst();
+				continue;
+			}
+			if (node.stat == null || node.children == null) {
+				return;
+			}
+			toHandle.removeFirst();
+			ready.add(node);
+
+			for (int i = node.children.size() - 1; i >= 0; i--) {
+				toHandle.addFirst(node.children.get(i));
+			}
+			node.children = null;
+		}
+	}
+
+	private void fetchData(final Node node) {
+		if (!readData) {
+			zookeeper.exists(node.path, false, new StatCallback() {
+
+				@Override
+				public void processResult(int rc, String path, Object ctx,
+						Stat stat) {
+					fetched(node, rc, null, stat);
+				}
+			}, null);
+			return;
+		}
+		zookeeper.getData(node.path, false, new DataCallback() {
+
+			@Override
+			public void processResult(int rc, String path, Object ctx,
+					byte[] data, Stat stat) {
+				fetched(node, rc, data, stat);
+			}
+		}, null);
+	}
+
+	private void fetched(Node node, int rc, byte[] data, Stat stat) {
+		synchronized (lock) {
+			if (rc == Code.OK.intValue()) {
+				node.data = data;
+				node.stat = stat;
+				if (stat.getNumChildren() == 0) {
+					node.children = Collections.emptyList();
+					inFlight--;
+				} else {
+					// the request slot passes to getChildren
+					fetchChildren(node);
+				}
+			} else {
+				inFlight--;
+				fail(node, rc);
+			}
+			lock.notifyAll();
+		}
+	}
+
+	private void fetchChildren(final Node node) {
+		zookeeper.getChildren(node.path, false, new ChildrenCallback() {
+
+			@Override
+			public void processResult(int rc, String path, Object ctx,
+					List<String> childNames) {
+				synchronized (lock) {
+					inFlight--;
+					if (rc == Code.OK.intValue()) {
+						Collections.sort(childNames);
+						List<Node> children = new ArrayList<Node>(childNames.size());
+						for (String childName : childNames) {
+							children.add(new Node(ZkUtils.getChildPath(node.path, childName), false));
+						}
+						node.children = children;
+
+						for (int i = children.size() - 1; i >= 0; i--) {
+							toFetch.addFirst(children.get(i));
+						}
+					} else {
+						fail(node, rc);
+					}
+					lock.notifyAll();
+				}
+			}
+		}, null);
+	}
+
+	/**
+	 * Called with the lock held.
+	 */
+	private void fail(Node node, int rc) {
+		if (rc == Code.NONODE.intValue() && !node.isRoot) {
+			LOGGER.debug("Skipping node deleted during traversal: " + node.path);
+			node.missing = true;
+		} else if (failure == null) {
+			failure = KeeperException.create(Code.get(rc), node.path);
+		}
+	}
+
+	private static class Node {
+		final String path;
+		final boolean isRoot;
+		byte[] data;
+		Stat stat;
+		List<Node> children;
+		boolean missing = false;
+
+		Node(String path, boolean isRoot) {
+			this.path = path;
+			this.isRoot = isRoot;
+		}
+	}
+}
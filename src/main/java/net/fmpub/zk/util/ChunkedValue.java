@@ -0,0 +1,361 @@
+/**
+ * Project: Zkrw
+ * File: ChunkedValue.java
+ * Created on: Oct 17, 2026
+ * 2026 Federated Media, Inc.
+ */
+package net.fmpub.zk.util;
+
+import java.io.*;
+import java.util.*;
+
+import org.apache.log4j.Logger;
+import org.apache.zookeeper.AsyncCallback.DataCallback;
+import org.apache.zookeeper.AsyncCallback.StringCallback;
+import org.apache.zookeeper.AsyncCallback.VoidCallback;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.ZooDefs.Ids;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.Stat;
+
+/**
+ * Stores a value too large for one znode as chunk children of a manifest
+ * znode.
+ * <p>
+ * A write streams the value into new chunks named c-{generation}-{index},
+ * with pipelined asynchronous creates, then sets the manifest to the new
+ * generation. The manifest is the commit point: readers see either the old
+ * or the new value, never a mix. The manifest is set with the version read
+ * when the write started, so of two concurrent writes only one is published.
+ * The chunks of the previous generation are kept, so a read that started
+ * before the write can still finish. Older chunks are deleted.
+ * <p>
+ * A read gets the manifest, then the chunks with pipelined asynchronous
+ * getData requests, and streams them out in order.
+ * <p>
+ * Chunks are encoded with a ValueCodec. Up to maxInFlight chunks are held in
+ * memory at a time.
+ */
+public class ChunkedValue {
+
+	private static final Logger LOGGER = Logger.getLogger(ChunkedValue.class);
+
+	/**
+	 * Half the default 1 MB limit of the server (jute.maxbuffer).
+	 */
+	public static final int DEFAULT_CHUNK_SIZE = 512 * 1024;
+
+	public static final int DEFAULT_MAX_IN_FLIGHT = 8;
+
+	private static final String MANIFEST_PREFIX = "zkrw-chunked";
+
+	private static final String CHUNK_PREFIX = "c-";
+
+	private final ZooKeeper zookeeper;
+	private final int chunkSize;
+	private final int maxInFlight;
+	private final ValueCodec codec;
+
+	private final Random random = new Random();
+
+	/**
+	 * @param chunkSize
+	 *            the size of each chunk before it is encoded
+	 * @param maxInFlight
+	 *            the maximum number of chunks requested at a time
+	 * @param codec
+	 *            the codec the chunks are written with
+	 */
+	public ChunkedValue(ZooKeeper zookeeper, int chunkSize, int maxInFlight,
+			ValueCodec codec) {
+		if (chunkSize < 1 || maxInFlight < 1) {
+			throw new IllegalArgumentException("Invalid chunkSize="
+					+ chunkSize + " or maxInFlight=" + maxInFlight);
+		}
+		this.zookeeper = zookeeper;
+		this.chunkSize = chunkSize;
+		this.maxInFlight = maxInFlight;
+		this.codec = codec;
+	}
+
+	/**
+	 * The manifest: the generation, number of chunks and size of a value.
+	 */
+	static class Manifest {
+		final String generation;
+		final int numChunks;
+		final long size;
+
+		Manifest(String generation, int numChunks, long size) {
+			this.generation = generation;
+			this.numChunks = numChunks;
+			this.size = size;
+		}
+
+		String chunkName(int index) {
+			return chunkName(generation, index);
+		}
+
+		static String chunkName(String generation, int index) {
+			return CHUNK_PREFIX + generation + "-" + index;
+		}
+
+		boolean ownsChunk(String childName) {
+			return childName.startsWith(CHUNK_PREFIX + generation + "-");
+		}
+
+		byte[] toBytes() {
+			return (MANIFEST_PREFIX + " generation=" + generation + " chunks="
+					+ numChunks + " size=" + size).getBytes();
+		}
+
+		/**
+		 * @return the manifest, or null if the data is not one
+		 */
+		static Manifest parse(byte[] data) {
+			String text = data == null ? "" : new String(data);
+			String[] fields = text.split(" ");
+			if (fields.length != 4 || !fields[0].equals(MANIFEST_PREFIX)) {
+				return null;
+			}
+			try {
+				return new Manifest(value(fields[1], "generation"),
+						Integer.parseInt(value(fields[2], "chunks")),
+						Long.parseLong(value(fields[3], "size")));
+			} catch (IllegalArgumentException e) {
+				return null;
+			}
+		}
+
+		private static String value(String field, String name) {
+			if (!field.startsWith(name + "=")) {
+				throw new IllegalArgumentException(field);
+			}
+			return field.substring(name.length() + 1);
+		}
+	}
+
+	/**
+	 * Write the value read from in, creating the manifest znode if needed.
+	 *
+	 * @return the size of the value
+	 * @throws KeeperException.BadVersionException
+	 *             if another write was published first
+	 * @throws KeeperException
+	 *             if a request failed. The chunks already written are deleted
+	 *             by the next write.
+	 * @throws IOException
+	 *             if in could not be read
+	 * @throws InterruptedException
+	 */
+	public long write(String path, InputStream in) throws KeeperException,
+			IOException, InterruptedException {
+
+		Stat stat = new Stat();
+		Manifest previous;
+		try {
+			previous = Manifest.parse(zookeeper.getData(path, false, stat));
+		} catch (KeeperException.NoNodeException e) {
+			try {
+				zookeeper.create(path, new byte[0], Ids.OPEN_ACL_UNSAFE,
+						CreateMode.PERSISTENT);
+			} catch (KeeperException.NodeExistsException e2) {
+				// created by another client
+			}
+			previous = Manifest.parse(zookeeper.getData(path, false, stat));
+		}
+
+		String generation = Long.toString(random.nextLong() & Long.MAX_VALUE, 36);
+		final InFlightWindow window = new InFlightWindow(maxInFlight);
+		final int[] failureRc = { Code.OK.intValue() };
+		final String[] failurePath = new String[1];
+
+		int numChunks = 0;
+		long size = 0;
+		try {
+			while (true) {
+				byte[] chunk = readChunk(in);
+				if (chunk == null) {
+					break;
+				}
+				synchronized (failureRc) {
+					if (failureRc[0] != Code.OK.intValue()) {
+						break;
+					}
+				}
+				String chunkPath = ZkUtils.getChildPath(path,
+						Manifest.chunkName(generation, numChunks));
+				window.acquire();
+				zookeeper.create(chunkPath, codec.encode(chunk),
+						Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT,
+						new StringCallback() {
+
+							@Override
+							public void processResult(int rc, String path,
+									Object ctx, String name) {
+								if (rc != Code.OK.intValue()) {
+									synchronized (failureRc) {
+										if (failureRc[0] == Code.OK.intValue()) {
+											failureRc[0] = rc;
+											failurePath[0] = path;
+										}
+									}
+								}
+								window.release();
+							}
+						}, null);
+				numChunks++;
+				size += chunk.length;
+			}
+		} finally {
+			window.awaitAll();
+		}
+		synchronized (failureRc) {
+			if (failureRc[0] != Code.OK.intValue()) {
+				throw KeeperException.create(Code.get(failureRc[0]),
+						failurePath[0]);
+			}
+		}
+
+		Manifest manifest = new Manifest(generation, numChunks, size);
+		zookeeper.setData(path, manifest.toBytes(), stat.getVersion());
+
+		deleteOldChunks(path, manifest, previous);
+		return size;
+	}
+
+	/**
+	 * @return the next chunk, shorter only at the end of in, or null at the
+	 *         end
+	 */
+	private byte[] readChunk(InputStream in) throws IOException {
+		byte[] chunk = new byte[chunkSize];
+		int length = 0;
+		while (length < chunkSize) {
+			int n = in.read(chunk, length, chunkSize - length);
+			if (n == -1) {
+				break;
+			}
+			length += n;
+		}
+		if (length == 0) {
+			return null;
+		}
+		return length == chunkSize ? chunk : Arrays.copyOf(chunk, length);
+	}
+
+	/**
+	 * Delete the chunks of generations other than the current and previous
+	 * one. Failures are only logged, since the next write tries again.
+	 */
+	private void deleteOldChunks(String path, Manifest current,
+			Manifest previous) throws InterruptedException {
+		List<String> childNames;
+		try {
+			childNames = zookeeper.getChildren(path, false);
+		} catch (KeeperException e) {
+			LOGGER.warn("Could not list old chunks of " + path + ": " + e);
+			return;
+		}
+
+		final InFlightWindow window = new InFlightWindow(InFlightWindow.DEFAULT_MAX_IN_FLIGHT);
+		for (String childName : childNames) {
+			if (!childName.startsWith(CHUNK_PREFIX) || current.ownsChunk(childName)
+					|| (previous != null && previous.ownsChunk(childName))) {
+				continue;
+			}
+			window.acquire();
+			zookeeper.delete(ZkUtils.getChildPath(path, childName), -1,
+					new VoidCallback() {
+
+						@Override
+						public void processResult(int rc, String path,
+								Object ctx) {
+							if (rc != Code.OK.intValue()
+									&& rc != Code.NONODE.intValue()) {
+								LOGGER.warn("Could not delete old chunk "
+										+ path + ": " + Code.get(rc));
+							}
+							window.release();
+						}
+					}, null);
+		}
+		window.awaitAll();
+	}
+
+	/**
+	 * Write the value to out, chunk by chunk.
+	 *
+	 * @return the size of the value
+	 * @throws IllegalArgumentException
+	 *             if the path does not hold a chunked value
+	 * @throws KeeperException
+	 *             if a request failed, e.g. NoNode if two writes were
+	 *             published during the read
+	 * @throws IOException
+	 *             if out could not be written, or the value is not the size
+	 *             in the manifest
+	 * @throws InterruptedException
+	 */
+	public long read(String path, OutputStream out) throws KeeperException,
+			IOException, InterruptedException {
+
+		final Manifest manifest = Manifest.parse(zookeeper.getData(path, false, null));
+		if (manifest == null) {
+			throw new IllegalArgumentException(path + " does not hold a chunked value");
+		}
+
+		final byte[][] chunks = new byte[manifest.numChunks][];
+		final int[] failureRc = { Code.OK.intValue() };
+		final String[] failurePath = new String[1];
+		final Object lock = new Object();
+
+		long size = 0;
+		int requested = 0;
+		for (int next = 0; next < manifest.numChunks; next++) {
+			// keep up to maxInFlight chunks requested or waiting to be written
+			for (; requested < manifest.numChunks && requested < next + maxInFlight; requested++) {
+				final int index = requested;
+				zookeeper.getData(ZkUtils.getChildPath(path, manifest.chunkName(index)),
+						false, new DataCallback() {
+
+							@Override
+							public void processResult(int rc, String path,
+									Object ctx, byte[] data, Stat stat) {
+								synchronized (lock) {
+									if (rc == Code.OK.intValue()) {
+										chunks[index] = data;
+									} else if (failureRc[0] == Code.OK.intValue()) {
+										failureRc[0] = rc;
+										failurePath[0] = path;
+									}
+									lock.notifyAll();
+								}
+							}
+						}, null);
+			}
+
+			byte[] chunk;
+			synchronized (lock) {
+				while (chunks[next] == null && failureRc[0] == Code.OK.intValue()) {
+					lock.wait();
+				}
+				if (failureRc[0] != Code.OK.intValue()) {
+					throw KeeperException.create(Code.get(failureRc[0]), failurePath[0]);
+				}
+				chunk = chunks[next];
+				chunks[next] = null;
+			}
+			chunk = ValueCodec.decode(chunk);
+			out.write(chunk);
+			size += chunk.length;
+		}
+
+		if (size != manifest.size) {
+			throw new IOException(path + " is " + size + " bytes, but its manifest says " + manifest.size);
+		}
+		return size;
+	}
+}
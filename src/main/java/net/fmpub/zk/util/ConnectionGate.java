@@ -0,0 +1,101 @@
+/**
+ * Project: Zkrw
+ * File: ConnectionGate.java
+ * Created on: Oct 17, 2026
+ * 2026 Federated Media, Inc.
+ */
+package net.fmpub.zk.util;
+
+import org.apache.log4j.Logger;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.Watcher.Event.EventType;
+import org.apache.zookeeper.Watcher.Event.KeeperState;
+
+/**
+ * Default watcher of a session that tracks its connection state, so that
+ * operations can wait until the session is connected instead of racing the
+ * handshake or a reconnect.
+ * <p>
+ * The gate opens on SyncConnected and closes on Disconnected. Once the session
+ * has expired it stays closed, and only a new session can be used.
+ */
+public class ConnectionGate implements Watcher {
+
+	private static final Logger LOGGER = Logger.getLogger(ConnectionGate.class);
+
+	private final Watcher watcher;
+
+	private KeeperState state = KeeperState.Disconnected;
+
+	public ConnectionGate() {
+		this(null);
+	}
+
+	/**
+	 * @param watcher
+	 *            optional watcher to pass all events on to
+	 */
+	public ConnectionGate(Watcher watcher) {
+		this.watcher = watcher;
+	}
+
+	public void process(WatchedEvent event) {
+		if (event.getType() == EventType.None) {
+			synchronized (this) {
+				if (state != event.getState()) {
+					LOGGER.debug("Session state changed from " + state
+							+ " to " + event.getState());
+				}
+				if (state != KeeperState.Expired) {
+					state = event.getState();
+				}
+				notifyAll();
+			}
+		}
+		if (watcher != null) {
+			watcher.process(event);
+		}
+	}
+
+	/**
+	 * Wait until the session is connected.
+	 *
+	 * @param timeoutMs
+	 *            the longest time to wait
+	 * @throws KeeperException.ConnectionLossException
+	 *             if the session is not connected by the deadline
+	 * @throws KeeperException.SessionExpiredException
+	 *             if the session expired
+	 * @throws KeeperException.AuthFailedException
+	 *             if authentication failed
+	 * @throws InterruptedException
+	 */
+	public synchronized void awaitConnected(long timeoutMs)
+			throws KeeperException, InterruptedException {
+		long deadline = System.currentTimeMillis() + timeoutMs;
+		while (state != KeeperState.SyncConnected) {
+			if (state == KeeperState.Expired) {
+				throw new KeeperException.SessionExpiredException();
+			}
+			if (state == KeeperState.AuthFailed) {
+				throw new KeeperException.AuthFailedException();
+			}
+			long remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0) {
+				LOGGER.info("Session not connected after " + timeoutMs + " ms");
+				throw new KeeperException.ConnectionLossException();
+			}
+			wait(remaining);
+		}
+	}
+
+	public synchronized boolean isConnected() {
+		return state == KeeperState.SyncConnected;
+	}
+
+	public synchronized boolean isExpired() {
+		return state == KeeperState.Expired;
+	}
+}
@@ -0,0 +1,204 @@
+/**
+ * Project: Zkrw
+ * File: DistributedBarrier.java
+ * Created on: Oct 17, 2026
+ * 2026 Federated Media, Inc.
+ */
+package net.fmpub.zk.util;
+
+import org.apache.log4j.Logger;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.Watcher.Event.EventType;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.Stat;
+
+/**
+ * A double barrier: enter() blocks until all the parties have entered, and
+ * leave() until all of them have left, so that they start and finish a step
+ * together.
+ * <p>
+ * The data of the barrier znode is a generation number, and each enter or
+ * leave is a round of it. A party joins the current round with an ephemeral
+ * sequential child, so a party that dies while waiting is not counted. It
+ * then waits on a child and data watch. The party that sees all the parties
+ * of the round advances the generation with a conditional setData, which
+ * wakes the others, and every party deletes its child as it goes. Since the
+ * release is recorded in the data, it does not depend on the parties staying
+ * connected, and the barrier can be used again for the next step.
+ * <p>
+ * A failure after the child may have been created, while the session that
+ * owns it is still alive, is thrown as a NonRetryableException unless the
+ * child was deleted, since a retry in the same session would join the round
+ * with a second child and count the party twice.
+ */
+public class DistributedBarrier {
+
+	private static final Logger LOGGER = Logger.getLogger(DistributedBarrier.class);
+
+	private static final String ENTER_PREFIX = "enter-";
+
+	private static final String LEAVE_PREFIX = "leave-";
+
+	private final ZooKeeper zookeeper;
+	private final ConnectionGate connection;
+	private final String dir;
+	private final int numParties;
+
+	/**
+	 * @param connection
+	 *            the connection state of the session, to wait for a reconnect
+	 * @param dir
+	 *            the barrier znode, which must exist
+	 * @param numParties
+	 *            the number of parties that enter and leave
+	 */
+	public DistributedBarrier(ZooKeeper zookeeper, ConnectionGate connection,
+			String dir, int numParties) {
+		if (numParties < 1) {
+			throw new IllegalArgumentException(
+					"numParties must be at least 1: " + numParties);
+		}
+		this.zookeeper = zookeeper;
+		this.connection = connection;
+		this.dir = dir;
+		this.numParties = numParties;
+	}
+
+	/**
+	 * Wait until all the parties have entered.
+	 *
+	 * @param timeoutMs
+	 *            the longest time to wait, or a negative number to wait
+	 *            forever
+	 * @return false if the parties did not all enter in time
+	 */
+	public boolean enter(long timeoutMs) throws KeeperException,
+			InterruptedException {
+		return await(ENTER_PREFIX, timeoutMs);
+	}
+
+	/**
+	 * Wait until all the parties have left.
+	 *
+	 * @see #enter(long)
+	 */
+	public boolean leave(long timeoutMs) throws KeeperException,
+			InterruptedException {
+		return await(LEAVE_PREFIX, timeoutMs);
+	}
+
+	/**
+	 * @return the current generation
+	 */
+	public long getGeneration() throws KeeperException, InterruptedException {
+		return parseGeneration(zookeeper.getData(dir, false, null));
+	}
+
+	private boolean await(String prefix, long timeoutMs)
+			throws KeeperException, InterruptedException {
+		long deadlineMs = Participants.deadline(timeoutMs);
+
+		long generation = getGeneration();
+		String roundPrefix = prefix + generation + "-";
+		String partyPath;
+		try {
+			partyPath = Participants.create(zookeeper, connection, dir,
+					roundPrefix, CreateMode.EPHEMERAL_SEQUENTIAL, deadlineMs);
+		} catch (KeeperException e) {
+			if (mayOutliveFailure(e)) {
+				throw new NonRetryableException("May have joined " + dir
+						+ " generation " + generation + ", not retrying: " + e.getMessage(), e);
+			}
+			throw e;
+		}
+		try {
+			while (true) {
+				LatchWatcher watcher = new LatchWatcher();
+				try {
+					Stat stat = new Stat();
+					if (parseGeneration(zookeeper.getData(dir, watcher, stat)) != generation) {
+						return true;
+					}
+					int numArrived = Participants.count(zookeeper.getChildren(dir, watcher), roundPrefix);
+					if (numArrived >= numParties) {
+						try {
+							zookeeper.setData(dir, Long.toString(generation + 1).getBytes(), stat.getVersion());
+							LOGGER.debug("Released " + numArrived + " parties from " + dir + " generation " + generation);
+							return true;
+						} catch (KeeperException.BadVersionException e) {
+							// released by another party
+							continue;
+						}
+					}
+				} catch (KeeperException.ConnectionLossException e) {
+					Participants.awaitConnected(zookeeper, connection, deadlineMs);
+					continue;
+				}
+
+				if (!watcher.await(deadlineMs)) {
+					// not counted any more, unless it was released in the meantime
+					if (delete(partyPath)) {
+						partyPath = null;
+					}
+					return getGeneration() != generation;
+				}
+				if (watcher.getEvent().getType() == EventType.None) {
+					Participants.awaitConnected(zookeeper, connection, deadlineMs);
+				}
+			}
+		} catch (KeeperException e) {
+			if (partyPath != null && !delete(partyPath)) {
+				throw new NonRetryableException("Could not delete " + partyPath
+						+ " after failing, not retrying: " + e.getMessage(), e);
+			}
+			partyPath = null;
+			throw e;
+		} finally {
+			if (partyPath != null) {
+				delete(partyPath);
+			}
+		}
+	}
+
+	/**
+	 * Delete the child of the party. Failures are only logged, since the
+	 * child is not counted in later rounds and goes with the session.
+	 *
+	 * @return false if the child may still be there
+	 */
+	private boolean delete(String partyPath) throws InterruptedException {
+		try {
+			zookeeper.delete(partyPath, -1);
+		} catch (KeeperException.NoNodeException e) {
+			// gone with a previous session
+		} catch (KeeperException.SessionExpiredException e) {
+			// goes with the session
+		} catch (KeeperException e) {
+			LOGGER.warn("Could not delete " + partyPath + ": " + e);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return true if the request may have been applied anyway and the
+	 *         session is still alive, so an ephemeral child may still exist
+	 */
+	private static boolean mayOutliveFailure(KeeperException e) {
+		return e.code() == KeeperException.Code.CONNECTIONLOSS
+				|| e.code() == KeeperException.Code.OPERATIONTIMEOUT;
+	}
+
+	private static long parseGeneration(byte[] data) {
+		String text = data == null ? "" : new String(data).trim();
+		if (text.length() == 0) {
+			return 0;
+		}
+		try {
+			return Long.parseLong(text);
+		} catch (NumberFormatException e) {
+			throw new IllegalStateException("Not a barrier, the data is not a generation: '" + text + "'");
+		}
+	}
+}
@@ -0,0 +1,104 @@
+/**
+ * Project: Zkrw
+ * File: DistributedLatch.java
+ * Created on: Oct 17, 2026
+ * 2026 Federated Media, Inc.
+ */
+package net.fmpub.zk.util;
+
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.Watcher.Event.EventType;
+import org.apache.zookeeper.ZooKeeper;
+
+/**
+ * A count down latch: await() blocks until countDown() has been called a
+ * number of times.
+ * <p>
+ * Each countDown() adds a persistent sequential child, so it counts even
+ * after the process that made it has exited. await() waits on a child watch
+ * until there are enough of them. Delete the latch znode and its children to
+ * use it again.
+ */
+public class DistributedLatch {
+
+	private static final String COUNT_PREFIX = "count-";
+
+	private final ZooKeeper zookeeper;
+	private final ConnectionGate connection;
+	private final String dir;
+
+	/**
+	 * @param connection
+	 *            the connection state of the session, to wait for a reconnect
+	 * @param dir
+	 *            the latch znode, which must exist to count down
+	 */
+	public DistributedLatch(ZooKeeper zookeeper, ConnectionGate connection,
+			String dir) {
+		this.zookeeper = zookeeper;
+		this.connection = connection;
+		this.dir = dir;
+	}
+
+	/**
+	 * @return the path of the child that was added
+	 * @throws NonRetryableException if the child may have been added anyway,
+	 *             since a retry would count down twice
+	 */
+	public String countDown() throws KeeperException, InterruptedException {
+		try {
+			return Participants.create(zookeeper, connection, dir, COUNT_PREFIX,
+					CreateMode.PERSISTENT_SEQUENTIAL, 0);
+		} catch (KeeperException e) {
+			if (RetryPolicy.isRetryable(e)) {
+				throw new NonRetryableException("May have counted down " + dir
+						+ ", not retrying: " + e.getMessage(), e);
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * @return the number of times countDown() was called
+	 */
+	public int getCount() throws KeeperException, InterruptedException {
+		return Participants.count(zookeeper.getChildren(dir, false), COUNT_PREFIX);
+	}
+
+	/**
+	 * Wait until countDown() has been called count times. If the latch znode
+	 * does not exist yet, wait until it is created.
+	 *
+	 * @param timeoutMs
+	 *            the longest time to wait, or a negative number to wait
+	 *            forever
+	 * @return false if the count was not reached in time
+	 */
+	public boolean await(int count, long timeoutMs) throws KeeperException,
+			InterruptedException {
+		long deadlineMs = Participants.deadline(timeoutMs);
+
+		while (true) {
+			LatchWatcher watcher = new LatchWatcher();
+			try {
+				if (zookeeper.exists(dir, watcher) != null
+						&& Participants.count(zookeeper.getChildren(dir, watcher), COUNT_PREFIX) >= count) {
+					return true;
+				}
+			} catch (KeeperException.NoNodeException e) {
+				// deleted between the exists and getChildren, watched by exists
+			} catch (KeeperException.ConnectionLossException e) {
+				Participants.awaitConnected(zookeeper, connection, deadlineMs);
+				continue;
+			}
+
+			if (!watcher.await(deadlineMs)) {
+				return false;
+			}
+			if (watcher.getEvent().getType() == EventType.None) {
+				Participants.awaitConnected(zookeeper, connection, deadlineMs);
+			}
+		}
+	}
+}
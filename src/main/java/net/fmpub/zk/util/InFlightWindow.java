@@ -0,0 +1,60 @@
+/**
+ * Project: Zkrw
+ * File: InFlightWindow.java
+ * Created on: Oct 17, 2026
+ * 2026 Federated Media, Inc.
+ */
+package net.fmpub.zk.util;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * Bounds the number of outstanding asynchronous ZooKeeper requests.
+ * Call acquire() before issuing a request and release() from its callback.
+ */
+public class InFlightWindow {
+
+	public static final int DEFAULT_MAX_IN_FLIGHT = 256;
+
+	private final int maxInFlight;
+	private final Semaphore permits;
+
+	public InFlightWindow(int maxInFlight) {
+		if (maxInFlight < 1) {
+			throw new IllegalArgumentException(
+					"maxInFlight must be at least 1: " + maxInFlight);
+		}
+		this.maxInFlight = maxInFlight;
+		this.permits = new Semaphore(maxInFlight);
+	}
+
+	/**
+	 * Blocks until another request may be issued.
+	 *
+	 * @throws InterruptedException
+	 */
+	public void acquire() throws InterruptedException {
+		permits.acquire();
+	}
+
+	/**
+	 * Marks one outstanding request as complete.
+	 */
+	public void release() {
+		permits.release();
+	}
+
+	/**
+	 * Blocks until all outstanding requests are complete.
+	 *
+	 * @throws InterruptedException
+	 */
+	public void awaitAll() throws InterruptedException {
+		permits.acquire(maxInFlight);
+		permits.release(maxInFlight);
+	}
+
+	public int getMaxInFlight() {
+		return maxInFlight;
+	}
+}
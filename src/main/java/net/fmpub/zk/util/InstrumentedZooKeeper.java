@@ -0,0 +1,350 @@
+/**
+ * Project: Zkrw
+ * File: InstrumentedZooKeeper.java
+ * Created on: Oct 17, 2026
+ * 2026 Federated Media, Inc.
+ */
+package net.fmpub.zk.util;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.zookeeper.*;
+import org.apache.zookeeper.AsyncCallback.*;
+import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.Watcher.Event.KeeperState;
+import org.apache.zookeeper.data.ACL;
+import org.apache.zookeeper.data.Stat;
+
+/**
+ * ZooKeeper client that records the latency and result code of every
+ * operation in a ZkStats, by operation type (create, delete, exists, getData,
+ * setData, getChildren, sync, getACL, setACL). Asynchronous operations are
+ * timed from when they are issued until their callback runs. The time from
+ * construction until the session is first connected is recorded as connect.
+ * <p>
+ * Only the overloads taking a Watcher are overridden, since the ones taking a
+ * boolean watch flag call them.
+ */
+public class InstrumentedZooKeeper extends ZooKeeper {
+
+	public static final String CONNECT = "connect";
+
+	private final ZkStats stats;
+
+	public InstrumentedZooKeeper(String connectString, int sessionTimeout,
+			Watcher watcher, ZkStats stats) throws IOException {
+		super(connectString, sessionTimeout, new ConnectTimer(watcher, stats));
+		this.stats = stats;
+	}
+
+	public InstrumentedZooKeeper(String connectString, int sessionTimeout,
+			Watcher watcher, long sessionId, byte[] sessionPasswd, ZkStats stats)
+			throws IOException {
+		super(connectString, sessionTimeout, new ConnectTimer(watcher, stats),
+				sessionId, sessionPasswd);
+		this.stats = stats;
+	}
+
+	public ZkStats getStats() {
+		return stats;
+	}
+
+	/**
+	 * Records the time until the first SyncConnected event, and passes all
+	 * events on to the default watcher.
+	 */
+	private static class ConnectTimer implements Watcher {
+
+		private final Watcher watcher;
+		private final ZkStats stats;
+		private final long startNanos = System.nanoTime();
+		private final AtomicBoolean connected = new AtomicBoolean();
+
+		ConnectTimer(Watcher watcher, ZkStats stats) {
+			this.watcher = watcher;
+			this.stats = stats;
+		}
+
+		public void process(WatchedEvent event) {
+			if (event.getType() == Event.EventType.None
+					&& event.getState() == KeeperState.SyncConnected
+					&& connected.compareAndSet(false, true)) {
+				stats.record(CONNECT, startNanos, Code.OK.intValue());
+			}
+			if (watcher != null) {
+				watcher.process(event);
+			}
+		}
+	}
+
+	private void record(String op, long startNanos, KeeperException e) {
+		stats.record(op, startNanos, e.code().intValue());
+	}
+
+	private void record(String op, long startNanos) {
+		stats.record(op, startNanos, Code.OK.intValue());
+	}
+
+	@Override
+	public String create(String path, byte[] data, List<ACL> acl,
+			CreateMode createMode) throws KeeperException, InterruptedException {
+		long startNanos = System.nanoTime();
+		try {
+			String created = super.create(path, data, acl, createMode);
+			record("create", startNanos);
+			return created;
+		} catch (KeeperException e) {
+			record("create", startNanos, e);
+			throw e;
+		}
+	}
+
+	@Override
+	public void create(String path, byte[] data, List<ACL> acl,
+			CreateMode createMode, final StringCallback cb, Object ctx) {
+		final long startNanos = System.nanoTime();
+		super.create(path, data, acl, createMode, new StringCallback() {
+			public void processResult(int rc, String path, Object ctx,
+					String name) {
+				stats.record("create", startNanos, rc);
+				if (cb != null) {
+					cb.processResult(rc, path, ctx, name);
+				}
+			}
+		}, ctx);
+	}
+
+	@Override
+	public void delete(String path, int version) throws InterruptedException,
+			KeeperException {
+		long startNanos = System.nanoTime();
+		try {
+			super.delete(path, version);
+			record("delete", startNanos);
+		} catch (KeeperException e) {
+			record("delete", startNanos, e);
+			throw e;
+		}
+	}
+
+	@Override
+	public void delete(String path, int version, VoidCallback cb, Object ctx) {
+		super.delete(path, version, timed("delete", cb), ctx);
+	}
+
+	@Override
+	public Stat exists(String path, Watcher watcher) throws KeeperException,
+			InterruptedException {
+		long startNanos = System.nanoTime();
+		try {
+			Stat stat = super.exists(path, watcher);
+			record("exists", startNanos);
+			return stat;
+		} catch (KeeperException e) {
+			record("exists", startNanos, e);
+			throw e;
+		}
+	}
+
+	@Override
+	public void exists(String path, Watcher watcher, final StatCallback cb,
+			Object ctx) {
+		final long startNanos = System.nanoTime();
+		super.exists(path, watcher, new StatCallback() {
+			public void processResult(int rc, String path, Object ctx, Stat stat) {
+				// not an error, like a null Stat from the synchronous exists
+				stats.record("exists", startNanos,
+						rc == Code.NONODE.intValue() ? Code.OK.intValue() : rc);
+				if (cb != null) {
+					cb.processResult(rc, path, ctx, stat);
+				}
+			}
+		}, ctx);
+	}
+
+	@Override
+	public byte[] getData(String path, Watcher watcher, Stat stat)
+			throws KeeperException, InterruptedException {
+		long startNanos = System.nanoTime();
+		try {
+			byte[] data = super.getData(path, watcher, stat);
+			record("getData", startNanos);
+			return data;
+		} catch (KeeperException e) {
+			record("getData", startNanos, e);
+			throw e;
+		}
+	}
+
+	@Override
+	public void getData(String path, Watcher watcher, final DataCallback cb,
+			Object ctx) {
+		final long startNanos = System.nanoTime();
+		super.getData(path, watcher, new DataCallback() {
+			public void processResult(int rc, String path, Object ctx,
+					byte[] data, Stat stat) {
+				stats.record("getData", startNanos, rc);
+				if (cb != null) {
+					cb.processResult(rc, path, ctx, data, stat);
+				}
+			}
+		}, ctx);
+	}
+
+	@Override
+	public Stat setData(String path, byte[] data, int version)
+			throws KeeperException, InterruptedException {
+		long startNanos = System.nanoTime();
+		try {
+			Stat stat = super.setData(path, data, version);
+			record("setData", startNanos);
+			return stat;
+		} catch (KeeperException e) {
+			record("setData", startNanos, e);
+			throw e;
+		}
+	}
+
+	@Override
+	public void setData(String path, byte[] data, int version,
+			StatCallback cb, Object ctx) {
+		super.setData(path, data, version, timed("setData", cb), ctx);
+	}
+
+	@Override
+	public List<ACL> getACL(String path, Stat stat) throws KeeperException,
+			InterruptedException {
+		long startNanos = System.nanoTime();
+		try {
+			List<ACL> acl = super.getACL(path, stat);
+			record("getACL", startNanos);
+			return acl;
+		} catch (KeeperException e) {
+			record("getACL", startNanos, e);
+			throw e;
+		}
+	}
+
+	@Override
+	public void getACL(String path, Stat stat, final ACLCallback cb, Object ctx) {
+		final long startNanos = System.nanoTime();
+		super.getACL(path, stat, new ACLCallback() {
+			public void processResult(int rc, String path, Object ctx,
+					List<ACL> acl, Stat stat) {
+				stats.record("getACL", startNanos, rc);
+				if (cb != null) {
+					cb.processResult(rc, path, ctx, acl, stat);
+				}
+			}
+		}, ctx);
+	}
+
+	@Override
+	public Stat setACL(String path, List<ACL> acl, int version)
+			throws KeeperException, InterruptedException {
+		long startNanos = System.nanoTime();
+		try {
+			Stat stat = super.setACL(path, acl, version);
+			record("setACL", startNanos);
+			return stat;
+		} catch (KeeperException e) {
+			record("setACL", startNanos, e);
+			throw e;
+		}
+	}
+
+	@Override
+	public void setACL(String path, List<ACL> acl, int version,
+			StatCallback cb, Object ctx) {
+		super.setACL(path, acl, version, timed("setACL", cb), ctx);
+	}
+
+	@Override
+	public List<String> getChildren(String path, Watcher watcher)
+			throws KeeperException, InterruptedException {
+		long startNanos = System.nanoTime();
+		try {
+			List<String> children = super.getChildren(path, watcher);
+			record("getChildren", startNanos);
+			return children;
+		} catch (KeeperException e) {
+			record("getChildren", startNanos, e);
+			throw e;
+		}
+	}
+
+	@Override
+	public void getChildren(String path, Watcher watcher,
+			final ChildrenCallback cb, Object ctx) {
+		final long startNanos = System.nanoTime();
+		super.getChildren(path, watcher, new ChildrenCallback() {
+			public void processResult(int rc, String path, Object ctx,
+					List<String> children) {
+				stats.record("getChildren", startNanos, rc);
+				if (cb != null) {
+					cb.processResult(rc, path, ctx, children);
+				}
+			}
+		}, ctx);
+	}
+
+	@Override
+	public List<String> getChildren(String path, Watcher watcher, Stat stat)
+			throws KeeperException, InterruptedException {
+		long startNanos = System.nanoTime();
+		try {
+			List<String> children = super.getChildren(path, watcher, stat);
+			record("getChildren", startNanos);
+			return children;
+		} catch (KeeperException e) {
+			record("getChildren", startNanos, e);
+			throw e;
+		}
+	}
+
+	@Override
+	public void getChildren(String path, Watcher watcher,
+			final Children2Callback cb, Object ctx) {
+		final long startNanos = System.nanoTime();
+		super.getChildren(path, watcher, new Children2Callback() {
+			public void processResult(int rc, String path, Object ctx,
+					List<String> children, Stat stat) {
+				stats.record("getChildren", startNanos, rc);
+				if (cb != null) {
+					cb.processResult(rc, path, ctx, children, stat);
+				}
+			}
+		}, ctx);
+	}
+
+	@Override
+	public void sync(String path, VoidCallback cb, Object ctx) {
+		super.sync(path, timed("sync", cb), ctx);
+	}
+
+	private VoidCallback timed(final String op, final VoidCallback cb) {
+		final long startNanos = System.nanoTime();
+		return new VoidCallback() {
+			public void processResult(int rc, String path, Object ctx) {
+				stats.record(op, startNanos, rc);
+				if (cb != null) {
+					cb.processResult(rc, path, ctx);
+				}
+			}
+		};
+	}
+
+	private StatCallback timed(final String op, final StatCallback cb) {
+		final long startNanos = System.nanoTime();
+		return new StatCallback() {
+			public void processResult(int rc, String path, Object ctx, Stat stat) {
+				stats.record(op, startNanos, rc);
+				if (cb != null) {
+					cb.processResult(rc, path, ctx, stat);
+				}
+			}
+		};
+	}
+}
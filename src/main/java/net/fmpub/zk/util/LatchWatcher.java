@@ -0,0 +1,60 @@
+/**
+ * Project: Zkrw
+ * File: LatchWatcher.java
+ * Created on: Oct 17, 2026
+ * 2026 Federated Media, Inc.
+ */
+package net.fmpub.zk.util;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+
+/**
+ * A one-shot watcher that a thread can block on until it fires. Set a new one
+ * with each request, since ZooKeeper watches fire only once.
+ */
+public class LatchWatcher implements Watcher {
+
+	private static final Logger LOGGER = Logger.getLogger(LatchWatcher.class);
+
+	private final CountDownLatch latch = new CountDownLatch(1);
+
+	private volatile WatchedEvent event;
+
+	public void process(WatchedEvent event) {
+		LOGGER.debug("Watcher fired on path: " + event.getPath() + " state: "
+				+ event.getState() + " type " + event.getType());
+		if (this.event == null) {
+			this.event = event;
+		}
+		latch.countDown();
+	}
+
+	/**
+	 * Wait until the watcher fires.
+	 *
+	 * @param deadlineMs
+	 *            the time to stop waiting, or 0 to wait forever
+	 * @return false if the deadline passed first
+	 * @throws InterruptedException
+	 */
+	public boolean await(long deadlineMs) throws InterruptedException {
+		if (deadlineMs == 0) {
+			latch.await();
+			return true;
+		}
+		long remainingMs = deadlineMs - System.currentTimeMillis();
+		return latch.await(Math.max(remainingMs, 0), TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @return the first event, or null if the watcher has not fired
+	 */
+	public WatchedEvent getEvent() {
+		return event;
+	}
+}
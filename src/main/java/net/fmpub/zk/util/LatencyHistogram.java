@@ -0,0 +1,120 @@
+/**
+ * Project: Zkrw
+ * File: LatencyHistogram.java
+ * Created on: Oct 17, 2026
+ * 2026 Federated Media, Inc.
+ */
+package net.fmpub.zk.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of latencies in power of two buckets of microseconds:
+ * bucket 0 holds 0 us, and bucket i holds latencies from 2^(i-1) up to 2^i - 1
+ * us. Percentiles are the upper bound of their bucket, so they are at most
+ * twice the actual value.
+ */
+public class LatencyHistogram {
+
+	/**
+	 * The last bucket also holds anything above 2^38 us (about 3 days).
+	 */
+	static final int NUM_BUCKETS = 40;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(NUM_BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong totalMicros = new AtomicLong();
+	private final AtomicLong maxMicros = new AtomicLong();
+
+	/**
+	 * Record the latency of an operation that started at startNanos.
+	 *
+	 * @param startNanos
+	 *            the System.nanoTime() when the operation started
+	 */
+	public void recordSince(long startNanos) {
+		record((System.nanoTime() - startNanos) / 1000);
+	}
+
+	/**
+	 * Record one latency.
+	 *
+	 * @param micros
+	 *            the latency in microseconds
+	 */
+	public void record(long micros) {
+		if (micros < 0) {
+			micros = 0;
+		}
+		buckets.incrementAndGet(bucket(micros));
+		count.incrementAndGet();
+		totalMicros.addAndGet(micros);
+
+		long max;
+		while (micros > (max = maxMicros.get())
+				&& !maxMicros.compareAndSet(max, micros)) {
+			// retry
+		}
+	}
+
+	private static int bucket(long micros) {
+		return Math.min(64 - Long.numberOfLeadingZeros(micros), NUM_BUCKETS - 1);
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	public long getTotalMicros() {
+		return totalMicros.get();
+	}
+
+	public long getMaxMicros() {
+		return maxMicros.get();
+	}
+
+	/**
+	 * @param percent
+	 *            the percentile, from 0 to 100
+	 * @return the upper bound of the bucket holding the percentile, at most
+	 *         the maximum latency, or 0 if nothing was recorded
+	 */
+	public long getPercentileMicros(double percent) {
+		long total = count.get();
+		if (total == 0) {
+			return 0;
+		}
+		long rank = Math.max((long) Math.ceil(total * percent / 100), 1);
+		long seen = 0;
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			seen += buckets.get(i);
+			if (seen >= rank) {
+				return Math.min((1L << i) - 1, getMaxMicros());
+			}
+		}
+		return getMaxMicros();
+	}
+
+	/**
+	 * Clear all recorded latencies.
+	 */
+	public void reset() {
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			buckets.set(i, 0);
+		}
+		count.set(0);
+		totalMicros.set(0);
+		maxMicros.set(0);
+	}
+
+	/**
+	 * @return e.g. <code>n=12 p50=0.51ms p99=1.93ms max=1.93ms</code>
+	 */
+	@Override
+	public String toString() {
+		return String.format("n=%d p50=%.2fms p99=%.2fms max=%.2fms",
+				getCount(), getPercentileMicros(50) / 1000.0,
+				getPercentileMicros(99) / 1000.0, getMaxMicros() / 1000.0);
+	}
+}
@@ -0,0 +1,21 @@
+/**
+ * Project: Zkrw
+ * File: NonRetryableException.java
+ * Created on: Oct 17, 2026
+ * 2026 Federated Media, Inc.
+ */
+package net.fmpub.zk.util;
+
+/**
+ * A failure that must not be retried, even if its cause is a connection
+ * failure, e.g. because the operation may already have had an effect that a
+ * retry would repeat. RetryPolicy checks for it before the cause.
+ */
+public class NonRetryableException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public NonRetryableException(String message, Throwable cause) {
+		super(message, cause);
+	}
+}
@@ -0,0 +1,90 @@
+/**
+ * Project: Zkrw
+ * File: Participants.java
+ * Created on: Oct 17, 2026
+ * 2026 Federated Media, Inc.
+ */
+package net.fmpub.zk.util;
+
+import java.util.List;
+import java.util.UUID;
+
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.ZooDefs.Ids;
+import org.apache.zookeeper.ZooKeeper;
+
+/**
+ * Helpers shared by the coordination recipes, whose participants are
+ * sequential children of a directory znode.
+ */
+class Participants {
+
+	private Participants() {
+	}
+
+	/**
+	 * Create a sequential child. The name includes a unique id, so that after
+	 * a connection loss a child that was created anyway is found instead of
+	 * being created twice.
+	 *
+	 * @param prefix
+	 *            the start of the child name
+	 * @param deadlineMs
+	 *            the time to stop waiting for a reconnect, or 0 for the
+	 *            session timeout
+	 * @return the path of the child
+	 */
+	static String create(ZooKeeper zookeeper, ConnectionGate connection,
+			String dir, String prefix, CreateMode mode, long deadlineMs)
+			throws KeeperException, InterruptedException {
+		String name = prefix + UUID.randomUUID() + "-";
+		while (true) {
+			try {
+				return zookeeper.create(ZkUtils.getChildPath(dir, name),
+						new byte[0], Ids.OPEN_ACL_UNSAFE, mode);
+			} catch (KeeperException.ConnectionLossException e) {
+				awaitConnected(zookeeper, connection, deadlineMs);
+				for (String childName : zookeeper.getChildren(dir, false)) {
+					if (childName.startsWith(name)) {
+						return ZkUtils.getChildPath(dir, childName);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the number of names that start with the prefix
+	 */
+	static int count(List<String> childNames, String prefix) {
+		int count = 0;
+		for (String childName : childNames) {
+			if (childName.startsWith(prefix)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Wait for a reconnect, until the deadline.
+	 *
+	 * @param deadlineMs
+	 *            the time to stop waiting, or 0 for the session timeout
+	 * @throws KeeperException.ConnectionLossException
+	 *             if not reconnected in time
+	 */
+	static void awaitConnected(ZooKeeper zookeeper, ConnectionGate connection,
+			long deadlineMs) throws KeeperException, InterruptedException {
+		connection.awaitConnected(deadlineMs == 0 ? zookeeper.getSessionTimeout()
+				: Math.max(deadlineMs - System.currentTimeMillis(), 1));
+	}
+
+	/**
+	 * @return the deadline for a timeout, 0 for a negative timeout
+	 */
+	static long deadline(long timeoutMs) {
+		return timeoutMs < 0 ? 0 : System.currentTimeMillis() + timeoutMs;
+	}
+}
@@ -0,0 +1,117 @@
+/**
+ * Project: Zkrw
+ * File: RetryPolicy.java
+ * Created on: Oct 17, 2026
+ * 2026 Federated Media, Inc.
+ */
+package net.fmpub.zk.util;
+
+import java.util.Random;
+
+import org.apache.zookeeper.KeeperException;
+
+/**
+ * Decides which failures are worth retrying, and how long to wait before each
+ * retry.
+ * <p>
+ * Only failures caused by the connection or the session are retryable:
+ * ConnectionLoss, OperationTimeout and SessionExpired. Any other failure, e.g.
+ * NoNode, NodeExists or a bad argument, will fail the same way again, so it is
+ * terminal. So is a NonRetryableException, whatever its cause.
+ * <p>
+ * The delay grows exponentially from the minimum delay up to the maximum, with
+ * random jitter so that clients that failed together do not retry together.
+ */
+public class RetryPolicy {
+
+	private final int maxAttempts;
+	private final int minDelayMs;
+	private final int maxDelayMs;
+
+	private final Random random = new Random();
+
+	/**
+	 * @param maxAttempts
+	 *            the maximum number of attempts, including the first one
+	 * @param minDelayMs
+	 *            the delay before the first retry
+	 * @param maxDelayMs
+	 *            the largest delay before any retry
+	 */
+	public RetryPolicy(int maxAttempts, int minDelayMs, int maxDelayMs) {
+		if (minDelayMs < 0 || maxDelayMs < minDelayMs) {
+			throw new IllegalArgumentException("Invalid retry delays: min="
+					+ minDelayMs + ", max=" + maxDelayMs);
+		}
+		this.maxAttempts = maxAttempts;
+		this.minDelayMs = minDelayMs;
+		this.maxDelayMs = maxDelayMs;
+	}
+
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	/**
+	 * @return true if the failure, or any of its causes, may succeed when
+	 *         retried
+	 */
+	public static boolean isRetryable(Throwable failure) {
+		for (Throwable e = failure; e != null; e = e.getCause()) {
+			if (e instanceof NonRetryableException) {
+				return false;
+			}
+			if (e instanceof KeeperException) {
+				switch (((KeeperException) e).code()) {
+				case CONNECTIONLOSS:
+				case OPERATIONTIMEOUT:
+				case SESSIONEXPIRED:
+					return true;
+				default:
+					return false;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return true if the failure, or any of its causes, means the session is
+	 *         gone and a new one is needed to retry
+	 */
+	public static boolean needsNewSession(Throwable failure) {
+		for (Throwable e = failure; e != null; e = e.getCause()) {
+			if (e instanceof KeeperException) {
+				return ((KeeperException) e).code() == KeeperException.Code.SESSIONEXPIRED;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param retry
+	 *            the number of retries before this one, starting at 0
+	 * @return the delay before the retry: a random value between the minimum
+	 *         delay and min * 2^retry, at most the maximum delay
+	 */
+	public int getDelayMs(int retry) {
+		long ceiling = Math.max(minDelayMs, 1L) << Math.min(retry, 30);
+		int bound = (int) Math.min(ceiling, maxDelayMs);
+		if (bound <= minDelayMs) {
+			return minDelayMs;
+		}
+		return minDelayMs + random.nextInt(bound - minDelayMs + 1);
+	}
+
+	/**
+	 * Sleep for getDelayMs(retry).
+	 *
+	 * @throws InterruptedException
+	 */
+	public void pause(int retry) throws InterruptedException {
+		int delay = getDelayMs(retry);
+		if (delay > 0) {
+			Thread.sleep(delay);
+		}
+	}
+}
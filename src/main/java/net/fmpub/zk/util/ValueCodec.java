@@ -0,0 +1,318 @@
+/**
+ * Project: Zkrw
+ * File: ValueCodec.java
+ * Created on: Oct 17, 2026
+ * 2026 Federated Media, Inc.
+ */
+package net.fmpub.zk.util;
+
+import java.io.*;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.*;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Compresses znode values before they are written, and decompresses them when
+ * they are read.
+ * <p>
+ * A compressed value starts with a 4 byte header: a zero byte, 'Z', 'V' and
+ * the id of the codec. Values without the header are plain, so compressed and
+ * plain values can be mixed under the same path and read by any codec: decode()
+ * picks the codec from the header. Values smaller than the minimum size, or
+ * that do not get smaller, are written plain.
+ * <p>
+ * This class writes values as they are (PLAIN). The compressing codecs extend
+ * CompressingCodec, and others can be added with register(), using an unused
+ * id.
+ */
+public class ValueCodec {
+
+	private static final Logger LOGGER = Logger.getLogger(ValueCodec.class);
+
+	/**
+	 * Values smaller than this are not worth compressing.
+	 */
+	public static final int DEFAULT_MIN_SIZE = 512;
+
+	/**
+	 * Largest decoded value, so a corrupt value can not exhaust the heap.
+	 */
+	public static final int MAX_DECODED_SIZE = 64 * 1024 * 1024;
+
+	private static final byte[] MAGIC = { 0, 'Z', 'V' };
+
+	private static final int HEADER_SIZE = MAGIC.length + 1;
+
+	/**
+	 * Writes values as they are.
+	 */
+	public static final ValueCodec PLAIN = new ValueCodec("plain", 0);
+
+	private static final Map<Integer, CompressingCodec> CODECS = new HashMap<Integer, CompressingCodec>();
+
+	static {
+		register(new Gzip(DEFAULT_MIN_SIZE));
+		register(new Deflate(DEFAULT_MIN_SIZE));
+	}
+
+	private final String name;
+	private final int id;
+
+	/**
+	 * @param name
+	 *            the name used to select the codec
+	 * @param id
+	 *            the id in the header, 0 for plain values
+	 */
+	private ValueCodec(String name, int id) {
+		if (id < 0 || id > 255) {
+			throw new IllegalArgumentException("Codec id must be 0 to 255: " + id);
+		}
+		this.name = name;
+		this.id = id;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getId() {
+		return id;
+	}
+
+	/**
+	 * @return the value to write
+	 */
+	public byte[] encode(byte[] value) {
+		return value;
+	}
+
+	/**
+	 * Decode a value written by any registered codec.
+	 *
+	 * @return the decompressed value, or the value itself if it is plain. A
+	 *         value that only looks compressed is returned as it is.
+	 */
+	public static byte[] decode(byte[] value) {
+		if (!isEncoded(value)) {
+			return value;
+		}
+		int codecId = value[MAGIC.length] & 0xff;
+		CompressingCodec codec;
+		synchronized (CODECS) {
+			codec = CODECS.get(codecId);
+		}
+		if (codec == null) {
+			LOGGER.warn("Unknown codec id " + codecId + ", returning the value as it is.");
+			return value;
+		}
+		try {
+			InputStream in = codec.decompress(new ByteArrayInputStream(value,
+					HEADER_SIZE, value.length - HEADER_SIZE));
+			try {
+				ByteArrayOutputStream decoded = new ByteArrayOutputStream(value.length * 4);
+				byte[] buffer = new byte[8192];
+				for (int n; (n = in.read(buffer)) != -1;) {
+					if (decoded.size() + n > MAX_DECODED_SIZE) {
+						throw new IOException("Decoded value is larger than " + MAX_DECODED_SIZE + " bytes");
+					}
+					decoded.write(buffer, 0, n);
+				}
+				return decoded.toByteArray();
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			LOGGER.warn("Could not decode " + codec.getName() + " value, returning it as it is: " + e);
+			return value;
+		}
+	}
+
+	/**
+	 * @return true if the value starts with the header of a compressed value
+	 */
+	public static boolean isEncoded(byte[] value) {
+		if (value == null || value.length < HEADER_SIZE) {
+			return false;
+		}
+		for (int i = 0; i < MAGIC.length; i++) {
+			if (value[i] != MAGIC[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Make the codec available to decode(), replacing any codec with the same
+	 * id.
+	 */
+	public static void register(CompressingCodec codec) {
+		synchronized (CODECS) {
+			CODECS.put(codec.getId(), codec);
+		}
+	}
+
+	/**
+	 * @param name
+	 *            plain, gzip, deflate or the name of a registered codec
+	 * @param minSize
+	 *            values smaller than this are written plain
+	 * @return the codec
+	 * @throws IllegalArgumentException
+	 *             if there is no codec with the name
+	 */
+	public static ValueCodec forName(String name, int minSize) {
+		if (name == null || name.length() == 0 || name.equalsIgnoreCase(PLAIN.getName())) {
+			return PLAIN;
+		}
+		if (name.equalsIgnoreCase(Gzip.NAME)) {
+			return new Gzip(minSize);
+		}
+		if (name.equalsIgnoreCase(Deflate.NAME)) {
+			return new Deflate(minSize);
+		}
+		synchronized (CODECS) {
+			for (ValueCodec codec : CODECS.values()) {
+				if (codec.getName().equalsIgnoreCase(name)) {
+					return codec;
+				}
+			}
+		}
+		throw new IllegalArgumentException("Unknown value codec: " + name);
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+
+	/**
+	 * Writes values larger than the minimum size compressed, with the header.
+	 */
+	public abstract static class CompressingCodec extends ValueCodec {
+
+		private final int minSize;
+
+		/**
+		 * @param name
+		 *            the name used to select the codec
+		 * @param id
+		 *            the id in the header, from 1 to 255
+		 * @param minSize
+		 *            values smaller than this are written plain
+		 */
+		protected CompressingCodec(String name, int id, int minSize) {
+			super(name, id);
+			if (id == PLAIN.getId()) {
+				throw new IllegalArgumentException("Codec id 0 is reserved for plain values");
+			}
+			this.minSize = minSize;
+		}
+
+		public int getMinSize() {
+			return minSize;
+		}
+
+		/**
+		 * Write the compressed value to out.
+		 */
+		protected abstract void compress(byte[] value, OutputStream out)
+				throws IOException;
+
+		/**
+		 * @return a stream of the decompressed bytes of in
+		 */
+		protected abstract InputStream decompress(InputStream in)
+				throws IOException;
+
+		/**
+		 * @return the value with the header and compressed, or the value
+		 *         itself if it is too small or does not compress
+		 */
+		@Override
+		public byte[] encode(byte[] value) {
+			if (value == null || value.length < minSize) {
+				return value;
+			}
+			ByteArrayOutputStream encoded = new ByteArrayOutputStream(value.length / 2);
+			encoded.write(MAGIC, 0, MAGIC.length);
+			encoded.write(getId());
+			try {
+				compress(value, encoded);
+			} catch (IOException e) {
+				// not from a ByteArrayOutputStream
+				throw new IllegalStateException(e);
+			}
+			return encoded.size() < value.length ? encoded.toByteArray() : value;
+		}
+	}
+
+	/**
+	 * Gzip at the default level: the better ratio, for values that are
+	 * written rarely and read often.
+	 */
+	public static class Gzip extends CompressingCodec {
+
+		public static final String NAME = "gzip";
+
+		public Gzip(int minSize) {
+			super(NAME, 1, minSize);
+		}
+
+		@Override
+		protected void compress(byte[] value, OutputStream out) throws IOException {
+			GZIPOutputStream gzip = new GZIPOutputStream(out);
+			gzip.write(value);
+			// also ends its deflater
+			gzip.close();
+		}
+
+		@Override
+		protected InputStream decompress(InputStream in) throws IOException {
+			return new GZIPInputStream(in);
+		}
+	}
+
+	/**
+	 * Raw deflate at the fastest level, without the gzip header and checksum:
+	 * less CPU for values that are written often, e.g. queue payloads.
+	 */
+	public static class Deflate extends CompressingCodec {
+
+		public static final String NAME = "deflate";
+
+		public Deflate(int minSize) {
+			super(NAME, 2, minSize);
+		}
+
+		@Override
+		protected void compress(byte[] value, OutputStream out) throws IOException {
+			Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+			try {
+				DeflaterOutputStream deflate = new DeflaterOutputStream(out, deflater);
+				deflate.write(value);
+				deflate.finish();
+			} finally {
+				deflater.end();
+			}
+		}
+
+		@Override
+		protected InputStream decompress(InputStream in) throws IOException {
+			// nowrap needs an extra byte at the end of the input
+			return new InflaterInputStream(new SequenceInputStream(in,
+					new ByteArrayInputStream(new byte[1])), new Inflater(true)) {
+
+				@Override
+				public void close() throws IOException {
+					super.close();
+					// not ended by the stream, since it was passed in
+					inf.end();
+				}
+			};
+		}
+	}
+}
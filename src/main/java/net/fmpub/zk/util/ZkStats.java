@@ -0,0 +1,185 @@
+/**
+ * Project: Zkrw
+ * File: ZkStats.java
+ * Created on: Oct 17, 2026
+ * 2026 Federated Media, Inc.
+ */
+package net.fmpub.zk.util;
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.*;
+
+import org.apache.zookeeper.KeeperException.Code;
+
+/**
+ * Latency histograms per ZooKeeper operation type, and counts of error codes
+ * and retries. Filled in by InstrumentedZooKeeper, and safe to update from
+ * any thread.
+ */
+public class ZkStats implements ZkStatsMBean {
+
+	/**
+	 * Name of the MBean registered by register().
+	 */
+	public static final String OBJECT_NAME = "net.fmpub.zk.util:type=ZkStats";
+
+	private static final ZkStats DEFAULT = new ZkStats();
+
+	private final ConcurrentMap<String, LatencyHistogram> latencies = new ConcurrentSkipListMap<String, LatencyHistogram>();
+	private final ConcurrentMap<String, AtomicLong> errorCounts = new ConcurrentSkipListMap<String, AtomicLong>();
+	private final AtomicLong retries = new AtomicLong();
+
+	/**
+	 * @return the stats shared by all sessions of this JVM
+	 */
+	public static ZkStats getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * @return the latency histogram for the operation type, created if needed
+	 */
+	public LatencyHistogram getLatency(String op) {
+		LatencyHistogram histogram = latencies.get(op);
+		if (histogram == null) {
+			LatencyHistogram created = new LatencyHistogram();
+			histogram = latencies.putIfAbsent(op, created);
+			if (histogram == null) {
+				histogram = created;
+			}
+		}
+		return histogram;
+	}
+
+	/**
+	 * Record a completed operation.
+	 *
+	 * @param op
+	 *            the operation type, e.g. getData
+	 * @param startNanos
+	 *            the System.nanoTime() when the operation was issued
+	 * @param rc
+	 *            the result code
+	 */
+	public void record(String op, long startNanos, int rc) {
+		getLatency(op).recordSince(startNanos);
+		if (rc != Code.OK.intValue()) {
+			recordError(rc);
+		}
+	}
+
+	private void recordError(int rc) {
+		Code code = Code.get(rc);
+		String name = (code == null ? String.valueOf(rc) : code.name());
+		AtomicLong count = errorCounts.get(name);
+		if (count == null) {
+			AtomicLong created = new AtomicLong();
+			count = errorCounts.putIfAbsent(name, created);
+			if (count == null) {
+				count = created;
+			}
+		}
+		count.incrementAndGet();
+	}
+
+	/**
+	 * Record that a command attempt failed and is retried.
+	 */
+	public void recordRetry() {
+		retries.incrementAndGet();
+	}
+
+	/**
+	 * @return the number of operations that returned the code
+	 */
+	public long getErrorCount(Code code) {
+		AtomicLong count = errorCounts.get(code.name());
+		return (count == null ? 0 : count.get());
+	}
+
+	@Override
+	public long getOperations() {
+		long total = 0;
+		for (LatencyHistogram histogram : latencies.values()) {
+			total += histogram.getCount();
+		}
+		return total;
+	}
+
+	@Override
+	public long getErrors() {
+		long total = 0;
+		for (AtomicLong count : errorCounts.values()) {
+			total += count.get();
+		}
+		return total;
+	}
+
+	@Override
+	public long getRetries() {
+		return retries.get();
+	}
+
+	@Override
+	public String[] getLatencies() {
+		List<String> lines = new ArrayList<String>();
+		for (Map.Entry<String, LatencyHistogram> entry : latencies.entrySet()) {
+			lines.add(entry.getKey() + " " + entry.getValue());
+		}
+		return lines.toArray(new String[lines.size()]);
+	}
+
+	@Override
+	public String[] getErrorCounts() {
+		List<String> lines = new ArrayList<String>();
+		for (Map.Entry<String, AtomicLong> entry : errorCounts.entrySet()) {
+			lines.add(entry.getKey() + "=" + entry.getValue());
+		}
+		return lines.toArray(new String[lines.size()]);
+	}
+
+	/**
+	 * @return e.g.
+	 *         <code>ops=4 retries=0 errors=1 [NONODE=1]; connect n=1 ...; getData n=3 ...</code>
+	 */
+	@Override
+	public String getSummary() {
+		StringBuilder summary = new StringBuilder();
+		summary.append("ops=").append(getOperations());
+		summary.append(" retries=").append(getRetries());
+		summary.append(" errors=").append(getErrors());
+		String[] errors = getErrorCounts();
+		if (errors.length > 0) {
+			summary.append(" ").append(Arrays.toString(errors));
+		}
+		for (String line : getLatencies()) {
+			summary.append("; ").append(line);
+		}
+		return summary.toString();
+	}
+
+	@Override
+	public void reset() {
+		for (LatencyHistogram histogram : latencies.values()) {
+			histogram.reset();
+		}
+		errorCounts.clear();
+		retries.set(0);
+	}
+
+	/**
+	 * Register the stats with the platform MBean server as OBJECT_NAME.
+	 *
+	 * @throws JMException
+	 *             if the name is already registered
+	 */
+	public void register() throws JMException {
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+				new ObjectName(OBJECT_NAME));
+	}
+}
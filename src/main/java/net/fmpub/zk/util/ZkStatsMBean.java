@@ -0,0 +1,48 @@
+/**
+ * Project: Zkrw
+ * File: ZkStatsMBean.java
+ * Created on: Oct 17, 2026
+ * 2026 Federated Media, Inc.
+ */
+package net.fmpub.zk.util;
+
+/**
+ * JMX view of ZkStats.
+ */
+public interface ZkStatsMBean {
+
+	/**
+	 * @return the number of ZooKeeper operations completed
+	 */
+	long getOperations();
+
+	/**
+	 * @return the number of operations that returned an error code
+	 */
+	long getErrors();
+
+	/**
+	 * @return the number of command attempts that were retried
+	 */
+	long getRetries();
+
+	/**
+	 * @return one line per operation type with its count and latencies
+	 */
+	String[] getLatencies();
+
+	/**
+	 * @return one line per error code with its count
+	 */
+	String[] getErrorCounts();
+
+	/**
+	 * @return everything on one line
+	 */
+	String getSummary();
+
+	/**
+	 * Clear all counts and latencies.
+	 */
+	void reset();
+}
@@ -55,6 +55,19 @@ public class ZkUtils {
     	}
     }
     
+	/**
+	 * Join a parent path and a child name.
+	 * @param parentPath the parent znode path, may be the root "/"
+	 * @param childName the name of the child
+	 * @return the path of the child
+	 */
+	public static String getChildPath(String parentPath, String childName) {
+		if (parentPath.endsWith("/")) {
+			return parentPath + childName;
+		}
+		return parentPath + "/" + childName;
+	}
+	
 	public static String getPathEnd(String path) {
 		
 		if (path == null) {
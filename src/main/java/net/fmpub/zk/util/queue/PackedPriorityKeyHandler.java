@@ -0,0 +1,273 @@
+/**
+ * Project: Zkrw
+ * File: PackedPriorityKeyHandler.java
+ * Created on: Oct 17, 2026
+ * 2026 Federated Media, Inc.
+ */
+package net.fmpub.zk.util.queue;
+
+import java.util.*;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Key handler for the same <code>q-PPP-SSSSSSSSSS</code> child names as
+ * SimplePriorityKeyHandler, that packs each name into one long: the priority
+ * in the high bits and the sequence number in the low 32 bits. Names are
+ * checked and parsed with a scanner instead of a regex, without allocating.
+ * <p>
+ * Names with a sequence number above 2^32 - 1 are not valid for this handler.
+ * ZooKeeper sequence numbers never are.
+ * <p>
+ * PriorityDistributedQueue orders the children with orderChildNames(), which
+ * sorts an array of primitive keys instead of building a TreeMap.
+ */
+public class PackedPriorityKeyHandler implements
+		PriorityKeyHandler<Long, Integer> {
+
+	private static final Logger LOGGER = Logger
+			.getLogger(PackedPriorityKeyHandler.class);
+
+	/**
+	 * Returned by packKey() for invalid names.
+	 */
+	public static final long INVALID_KEY = -1;
+
+	private static final int SEQUENCE_BITS = 32;
+	private static final long MAX_SEQUENCE = (1L << SEQUENCE_BITS) - 1;
+
+	/**
+	 * Bits left below a key for the index of its name when sorting. Keys use
+	 * at most 42 bits: 10 for the priority and 32 for the sequence.
+	 */
+	private static final int INDEX_BITS = 21;
+	private static final long INDEX_MASK = (1L << INDEX_BITS) - 1;
+
+	private static final String PREFIX = SimplePriorityKeyHandler.PREFIX;
+	private static final char DELIM = SimplePriorityKeyHandler.CHILD_NAME_DELIM
+			.charAt(0);
+	private static final int PRIORITY_LEN = SimplePriorityKeyHandler.CHILD_NAME_PRIORITY_LEN;
+
+	/**
+	 * Length of the name before the sequence number.
+	 */
+	private static final int SEQUENCE_START = PREFIX.length() + PRIORITY_LEN
+			+ 1;
+
+	/**
+	 * Parse the child name into a key.
+	 *
+	 * @param childName
+	 *            the name of the child node in the queue.
+	 * @return the key, or INVALID_KEY if the name is not valid.
+	 */
+	public long packKey(String childName) {
+		return childName == null ? INVALID_KEY : pack(childName, 0);
+	}
+
+	/**
+	 * @return the priority of a key from packKey().
+	 */
+	public static int getPriority(long key) {
+		return (int) (key >>> SEQUENCE_BITS);
+	}
+
+	/**
+	 * @return the sequence number of a key from packKey().
+	 */
+	public static long getSequence(long key) {
+		return key & MAX_SEQUENCE;
+	}
+
+	/**
+	 * Order the valid child names by key. Invalid names are left out.
+	 *
+	 * @param childNames
+	 *            the names of the child nodes in the queue.
+	 * @return the valid names, highest priority first
+	 */
+	public List<String> orderChildNames(List<String> childNames) {
+		int numChildren = childNames.size();
+		if (numChildren > INDEX_MASK + 1) {
+			return orderChildNamesBoxed(childNames);
+		}
+
+		// each sort key is the name's key followed by the name's index
+		long[] sortKeys = new long[numChildren];
+		int numValid = 0;
+		for (int i = 0; i < numChildren; i++) {
+			String childName = childNames.get(i);
+			long key = packKey(childName);
+			if (key == INVALID_KEY) {
+				LOGGER.warn("Found child node with improper name: "
+						+ childName);
+				continue;
+			}
+			sortKeys[numValid++] = (key << INDEX_BITS) | i;
+		}
+
+		Arrays.sort(sortKeys, 0, numValid);
+
+		String[] ordered = new String[numValid];
+		for (int i = 0; i < numValid; i++) {
+			ordered[i] = childNames.get((int) (sortKeys[i] & INDEX_MASK));
+		}
+		return Arrays.asList(ordered);
+	}
+
+	private List<String> orderChildNamesBoxed(List<String> childNames) {
+		TreeMap<Long, String> ordered = new TreeMap<Long, String>();
+		for (String childName : childNames) {
+			long key = packKey(childName);
+			if (key == INVALID_KEY) {
+				LOGGER.warn("Found child node with improper name: "
+						+ childName);
+				continue;
+			}
+			ordered.put(key, childName);
+		}
+		return new ArrayList<String>(ordered.values());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * net.fmpub.zk.util.queue.PriorityKeyHandler#generateChildNamePrefix(java
+	 * .lang.Object)
+	 */
+	@Override
+	public String generateChildNamePrefix(Integer priority) {
+		checkArgPriority(priority);
+
+		char[] prefix = new char[SEQUENCE_START];
+		PREFIX.getChars(0, PREFIX.length(), prefix, 0);
+		int value = priority;
+		for (int i = PREFIX.length() + PRIORITY_LEN - 1; i >= PREFIX.length(); i--) {
+			prefix[i] = (char) ('0' + value % 10);
+			value /= 10;
+		}
+		prefix[SEQUENCE_START - 1] = DELIM;
+		return new String(prefix);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * net.fmpub.zk.util.queue.PriorityKeyHandler#generateKey(java.lang.String)
+	 */
+	@Override
+	public Long generateKey(String childName) {
+		if (childName == null || childName.length() == 0) {
+			throw new IllegalArgumentException(
+					"Illegal argument empty or null for childName.");
+		}
+
+		long key = packKey(childName);
+		if (key == INVALID_KEY) {
+			throw new IllegalArgumentException("Invalid childName: '"
+					+ childName + "'");
+		}
+		return key;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * net.fmpub.zk.util.queue.PriorityKeyHandler#generateKey(java.lang.String,
+	 * byte[])
+	 */
+	@Override
+	public Long generateKey(String childName, byte[] value) {
+		return generateKey(childName);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * net.fmpub.zk.util.queue.PriorityKeyHandler#hasValidName(java.lang.String)
+	 */
+	@Override
+	public boolean hasValidName(String childName) {
+		return packKey(childName) != INVALID_KEY;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * net.fmpub.zk.util.queue.PriorityKeyHandler#getPriority(java.lang.String)
+	 */
+	@Override
+	public Integer getPriority(String childNameOrPath) {
+		if (childNameOrPath == null) {
+			return null;
+		}
+
+		long key = pack(childNameOrPath, childNameOrPath.lastIndexOf('/') + 1);
+		return key == INVALID_KEY ? null : getPriority(key);
+	}
+
+	/**
+	 * Scan the child name that starts at offset.
+	 */
+	private static long pack(String name, int offset) {
+		int length = name.length();
+		if (length - offset <= SEQUENCE_START
+				|| !name.regionMatches(true, offset, PREFIX, 0, PREFIX.length())) {
+			return INVALID_KEY;
+		}
+
+		int i = offset + PREFIX.length();
+		long priority = 0;
+		for (int end = i + PRIORITY_LEN; i < end; i++) {
+			int digit = digit(name.charAt(i));
+			if (digit < 0) {
+				return INVALID_KEY;
+			}
+			priority = priority * 10 + digit;
+		}
+
+		if (name.charAt(i++) != DELIM) {
+			return INVALID_KEY;
+		}
+
+		long sequence = 0;
+		for (; i < length; i++) {
+			int digit = digit(name.charAt(i));
+			if (digit < 0) {
+				return INVALID_KEY;
+			}
+			sequence = sequence * 10 + digit;
+			if (sequence > MAX_SEQUENCE) {
+				return INVALID_KEY;
+			}
+		}
+
+		return (priority << SEQUENCE_BITS) | sequence;
+	}
+
+	private static int digit(char c) {
+		return c >= '0' && c <= '9' ? c - '0' : -1;
+	}
+
+	private void checkArgPriority(Integer priority) {
+		if (priority == null) {
+			throw new IllegalArgumentException("Null argument for priority.");
+		}
+
+		if (priority > SimplePriorityKeyHandler.MAX_PRIORITY) {
+			throw new IllegalArgumentException("Priority exceeds maximum of "
+					+ SimplePriorityKeyHandler.MAX_PRIORITY);
+		}
+
+		if (priority < SimplePriorityKeyHandler.MIN_PRIORITY) {
+			throw new IllegalArgumentException(
+					"Priority is less than minimum of "
+							+ SimplePriorityKeyHandler.MIN_PRIORITY);
+		}
+	}
+}
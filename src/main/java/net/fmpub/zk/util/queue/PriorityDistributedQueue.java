@@ -28,12 +28,20 @@ package net.fmpub.zk.util.queue;
 
 import java.util.*;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
+import net.fmpub.zk.util.InFlightWindow;
+import net.fmpub.zk.util.ValueCodec;
 import net.fmpub.zk.util.ZkUtils;
 
 import org.apache.log4j.Logger;
 import org.apache.zookeeper.*;
+import org.apache.zookeeper.AsyncCallback.DataCallback;
+import org.apache.zookeeper.AsyncCallback.StringCallback;
+import org.apache.zookeeper.AsyncCallback.VoidCallback;
+import org.apache.zookeeper.KeeperException.Code;
 import org.apache.zookeeper.data.ACL;
+import org.apache.zookeeper.data.Stat;
 
 /**
  * @author brogosky
@@ -43,6 +51,11 @@ public class PriorityDistributedQueue<KEY, PRIORITY extends Comparable<PRIORITY>
 	private static final Logger LOGGER = Logger
 			.getLogger(PriorityDistributedQueue.class);
 
+	/**
+	 * Wait time for getNext() that waits until there is an element.
+	 */
+	protected static final long WAIT_FOREVER = -1;
+
 	private final String dir;
 
 	private ZooKeeper zookeeper;
@@ -51,6 +64,17 @@ public class PriorityDistributedQueue<KEY, PRIORITY extends Comparable<PRIORITY>
 	// NEW
 	private PriorityKeyHandler<KEY, PRIORITY> keyHandler;
 
+	/**
+	 * Local index of the children, or null to list them on every call.
+	 */
+	private QueueChildIndex<KEY, PRIORITY> childIndex;
+
+	/**
+	 * Codec the offered values are encoded with. Values are always decoded,
+	 * whichever codec they were written with.
+	 */
+	private volatile ValueCodec codec = ValueCodec.PLAIN;
+
 	public PriorityDistributedQueue(ZooKeeper zookeeper, String dir,
 			PriorityKeyHandler<KEY, PRIORITY> keyHandler) {
 
@@ -80,6 +104,81 @@ public class PriorityDistributedQueue<KEY, PRIORITY extends Comparable<PRIORITY>
 
 	}
 
+	/**
+	 * Keep a local sorted index of the children, updated from child watch
+	 * notifications, instead of listing and sorting all the children on every
+	 * call. Meant for long-lived consumers of large queues.
+	 * 
+	 * @param useLocalIndex
+	 */
+	public synchronized void setLocalIndex(boolean useLocalIndex) {
+		if (!useLocalIndex) {
+			childIndex = null;
+		} else if (childIndex == null) {
+			childIndex = new QueueChildIndex<KEY, PRIORITY>(zookeeper, dir,
+					keyHandler);
+		}
+	}
+
+	public synchronized boolean hasLocalIndex() {
+		return childIndex != null;
+	}
+
+	/**
+	 * Compress the offered values with the codec.
+	 * 
+	 * @param codec
+	 *            the codec, or ValueCodec.PLAIN to offer values as they are
+	 */
+	public void setValueCodec(ValueCodec codec) {
+		if (codec == null) {
+			throw new IllegalArgumentException("codec cannot be null");
+		}
+		this.codec = codec;
+	}
+
+	public ValueCodec getValueCodec() {
+		return codec;
+	}
+
+	/**
+	 * Returns the child names ordered by id, from the local index if there is
+	 * one.
+	 * 
+	 * @param watcher
+	 *            optional watcher on the children.
+	 * @return the names of all valid children, in order
+	 */
+	private Collection<String> currentChildren(Watcher watcher)
+			throws KeeperException, InterruptedException {
+		QueueChildIndex<KEY, PRIORITY> index;
+		synchronized (this) {
+			index = childIndex;
+		}
+		if (index != null) {
+			return index.orderedChildren(watcher).values();
+		}
+		if (keyHandler instanceof PackedPriorityKeyHandler) {
+			// sorted as primitive keys
+			return ((PackedPriorityKeyHandler) keyHandler)
+					.orderChildNames(zookeeper.getChildren(dir, watcher));
+		}
+		return orderedChildren(watcher).values();
+	}
+
+	/**
+	 * Note a child removed by this client.
+	 */
+	private void removed(String childName) {
+		QueueChildIndex<KEY, PRIORITY> index;
+		synchronized (this) {
+			index = childIndex;
+		}
+		if (index != null) {
+			index.remove(childName);
+		}
+	}
+
 	/**
 	 * Returns a Map of the children, ordered by id.
 	 * 
@@ -204,6 +303,15 @@ public class PriorityDistributedQueue<KEY, PRIORITY extends Comparable<PRIORITY>
 			latchIfNoChange.await();
 		}
 
+		/**
+		 * @return false if the deadline passed before a change
+		 */
+		public boolean awaitChange(long deadlineMs) throws InterruptedException {
+			long remainingMs = deadlineMs - System.currentTimeMillis();
+			return remainingMs > 0
+					&& latchIfNoChange.await(remainingMs, TimeUnit.MILLISECONDS);
+		}
+
 		public boolean hasChanged() {
 			return highestPriorityChanged != null;
 		}
@@ -246,7 +354,25 @@ public class PriorityDistributedQueue<KEY, PRIORITY extends Comparable<PRIORITY>
 	protected byte[] getNext(boolean waitForElement, boolean deleteElement)
 			throws KeeperException, InterruptedException,
 			NoSuchElementException {
-		TreeMap<KEY, String> orderedChildren;
+		return getNext(waitForElement ? WAIT_FOREVER : 0, deleteElement);
+	}
+
+	/**
+	 * @param waitMs
+	 *            time to wait for an element, 0 for no wait, or WAIT_FOREVER.
+	 *            The wait is on a child watch, so no requests are made while
+	 *            the queue stays empty.
+	 * @throws KeeperException
+	 * @throws InterruptedException
+	 * @throws NoSuchElementException
+	 *             if the queue is still empty after the wait
+	 */
+	protected byte[] getNext(long waitMs, boolean deleteElement)
+			throws KeeperException, InterruptedException,
+			NoSuchElementException {
+		Collection<String> orderedChildren;
+
+		long deadlineMs = System.currentTimeMillis() + waitMs;
 
 		// element, take, and remove follow the same pattern.
 		// We want to return the child node with the smallest sequence number.
@@ -262,28 +388,37 @@ public class PriorityDistributedQueue<KEY, PRIORITY extends Comparable<PRIORITY>
 		while (true) {
 			PriorityLatchChildWatcher childWatcher = new PriorityLatchChildWatcher();
 			try {
-				orderedChildren = orderedChildren(childWatcher);
+				orderedChildren = currentChildren(childWatcher);
 			} catch (KeeperException.NoNodeException e) {
 
-				if (waitForElement) {
+				if (waitMs == WAIT_FOREVER) {
 					zookeeper.create(dir, new byte[0], acl,
 							CreateMode.PERSISTENT);
 					continue;
+				} else if (waitMs > 0) {
+					// wait for the queue to be created
+					if (zookeeper.exists(dir, childWatcher) == null
+							&& !childWatcher.awaitChange(deadlineMs)) {
+						throw new NoSuchElementException();
+					}
+					continue;
 				} else {
 					throw new NoSuchElementException();
 				}
 			}
 
-			if (orderedChildren.size() == 0) {
-				if (waitForElement) {
+			if (orderedChildren.isEmpty()) {
+				if (waitMs == WAIT_FOREVER) {
 					childWatcher.awaitChange();
 					continue;
+				} else if (waitMs > 0 && childWatcher.awaitChange(deadlineMs)) {
+					continue;
 				} else {
 					throw new NoSuchElementException();
 				}
 			}
 
-			for (String headNode : orderedChildren.values()) {
+			for (String headNode : orderedChildren) {
 				String path = dir + "/" + headNode;
 				try {
 					byte[] data = zookeeper.getData(path, false, null);
@@ -295,10 +430,12 @@ public class PriorityDistributedQueue<KEY, PRIORITY extends Comparable<PRIORITY>
 
 					if (deleteElement) {
 						zookeeper.delete(path, -1);
+						removed(headNode);
 					}
-					return data;
+					return ValueCodec.decode(data);
 				} catch (KeeperException.NoNodeException e) {
 					// Another client deleted the node first.
+					removed(headNode);
 				}
 			}
 		} // while loop end
@@ -321,7 +458,7 @@ public class PriorityDistributedQueue<KEY, PRIORITY extends Comparable<PRIORITY>
 				zookeeper.create(
 						dir + "/"
 								+ keyHandler.generateChildNamePrefix(priority),
-						data, acl, CreateMode.PERSISTENT_SEQUENTIAL);
+						codec.encode(data), acl, CreateMode.PERSISTENT_SEQUENTIAL);
 				return true;
 			} catch (KeeperException.NoNodeException e) {
 				zookeeper.create(dir, new byte[0], acl, CreateMode.PERSISTENT);
@@ -330,6 +467,130 @@ public class PriorityDistributedQueue<KEY, PRIORITY extends Comparable<PRIORITY>
 
 	}
 
+	/**
+	 * Inserts all the data into the queue with the same priority.
+	 * 
+	 * @see #offerAll(List, List)
+	 */
+	public List<String> offerAll(Iterable<byte[]> data, PRIORITY priority)
+			throws KeeperException, InterruptedException {
+		List<byte[]> dataList = new ArrayList<byte[]>();
+		for (byte[] value : data) {
+			dataList.add(value);
+		}
+		return offerAll(dataList,
+				Collections.nCopies(dataList.size(), priority));
+	}
+
+	/**
+	 * Inserts all the data into the queue, each with its own priority. The
+	 * creates are pipelined, up to InFlightWindow.DEFAULT_MAX_IN_FLIGHT at a
+	 * time, and are sequenced by the server in list order.
+	 * 
+	 * @param data
+	 * @param priorities
+	 *            the priority of each element of data
+	 * @return the paths of the created nodes, in data order
+	 * @throws KeeperException
+	 *             if any create failed. The elements before it may have been
+	 *             added.
+	 * @throws InterruptedException
+	 */
+	public List<String> offerAll(List<byte[]> data, List<PRIORITY> priorities)
+			throws KeeperException, InterruptedException {
+		return offerAll(data, priorities, new String[data.size()]);
+	}
+
+	/**
+	 * Like offerAll(List, List), also telling the caller what was added when
+	 * it fails.
+	 * 
+	 * @param names
+	 *            the same size as data, receives the path of each node as it
+	 *            is created. A create whose reply was lost with the connection
+	 *            may have added its node without a name here.
+	 * @see #offerAll(List, List)
+	 */
+	public List<String> offerAll(List<byte[]> data, List<PRIORITY> priorities,
+			final String[] names) throws KeeperException, InterruptedException {
+		if (data.size() != priorities.size() || names.length != data.size()) {
+			throw new IllegalArgumentException(
+					"Illegal argument: data, priorities and names must be the same size.");
+		}
+
+		if (names.length == 0) {
+			return Arrays.asList(names);
+		}
+
+		final InFlightWindow window = new InFlightWindow(
+				InFlightWindow.DEFAULT_MAX_IN_FLIGHT);
+
+		List<Integer> toCreate = new ArrayList<Integer>(names.length);
+		for (int i = 0; i < names.length; i++) {
+			toCreate.add(i);
+		}
+
+		if (zookeeper.exists(dir, false) == null) {
+			createDir();
+		}
+
+		while (true) {
+			final List<Integer> noNode = new ArrayList<Integer>();
+			final KeeperException[] failure = new KeeperException[1];
+
+			for (final int index : toCreate) {
+				synchronized (failure) {
+					if (failure[0] != null) {
+						break;
+					}
+				}
+				window.acquire();
+				zookeeper.create(dir + "/" + keyHandler.generateChildNamePrefix(priorities.get(index)),
+						codec.encode(data.get(index)), acl, CreateMode.PERSISTENT_SEQUENTIAL,
+						new StringCallback() {
+
+							@Override
+							public void processResult(int rc, String path,
+									Object ctx, String name) {
+								synchronized (failure) {
+									if (rc == Code.OK.intValue()) {
+										names[index] = name;
+									} else if (rc == Code.NONODE.intValue()) {
+										// the queue was deleted, add these again
+										noNode.add(index);
+									} else if (failure[0] == null) {
+										failure[0] = KeeperException.create(
+												Code.get(rc), path);
+									}
+								}
+								window.release();
+							}
+						}, null);
+			}
+			window.awaitAll();
+
+			synchronized (failure) {
+				if (failure[0] != null) {
+					throw failure[0];
+				}
+				if (noNode.isEmpty()) {
+					return Arrays.asList(names);
+				}
+				Collections.sort(noNode);
+				toCreate = noNode;
+			}
+			createDir();
+		}
+	}
+
+	private void createDir() throws KeeperException, InterruptedException {
+		try {
+			zookeeper.create(dir, new byte[0], acl, CreateMode.PERSISTENT);
+		} catch (KeeperException.NodeExistsException e) {
+			// created by another client
+		}
+	}
+
 	/**
 	 * Returns the data at the first element of the queue, or null if the queue
 	 * is empty.
@@ -364,7 +625,7 @@ public class PriorityDistributedQueue<KEY, PRIORITY extends Comparable<PRIORITY>
 	
 	/**
 	 * Attempts to remove the head of the queue and return it. If the queue is
-	 * empty, checks periodically for an addition, up to numSeconds. Returns null if
+	 * empty, waits for an addition, up to numSeconds. Returns null if
 	 * the queue is empty after wait.
 	 * 
 	 * @return Head of the queue or null.
@@ -373,19 +634,196 @@ public class PriorityDistributedQueue<KEY, PRIORITY extends Comparable<PRIORITY>
 	 */
 	public byte[] poll(int numSeconds) throws KeeperException, InterruptedException {
 		
-		if(numSeconds <= 0) {
+		return poll(numSeconds, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Attempts to remove the head of the queue and return it. If the queue is
+	 * empty, waits on a child watch for an addition, up to the timeout.
+	 * Returns null if the queue is empty after wait.
+	 * 
+	 * @return Head of the queue or null.
+	 * @throws KeeperException
+	 * @throws InterruptedException
+	 */
+	public byte[] poll(long timeout, TimeUnit unit) throws KeeperException, InterruptedException {
+		
+		if(timeout <= 0) {
 			return poll();
 		}
 		
-		for(int cycle=0; cycle < numSeconds; cycle++) {
+		try {
+			return getNext(unit.toMillis(timeout), true);
+		} catch (NoSuchElementException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Attempts to remove up to max elements from the head of the queue and
+	 * return them in priority order. If the queue is empty, waits on a child
+	 * watch for an addition, up to timeoutMs. Returns an empty list if the
+	 * queue is empty after wait.
+	 * <p>
+	 * The candidates are taken from one ordered listing of the children, and
+	 * their getData and delete requests are pipelined. Elements deleted by
+	 * another client first are skipped.
+	 * 
+	 * @param max
+	 *            maximum number of elements to remove
+	 * @param timeoutMs
+	 *            time to wait for an element, 0 for no wait
+	 * @return the removed elements, highest priority first
+	 * @throws KeeperException
+	 * @throws InterruptedException
+	 */
+	public List<byte[]> pollBatch(int max, long timeoutMs)
+			throws KeeperException, InterruptedException {
+		if (max < 1) {
+			throw new IllegalArgumentException(
+					"Illegal argument: max must be at least 1: " + max);
+		}
+
+		List<byte[]> claimed = new ArrayList<byte[]>(Math.min(max, 1024));
+
+		long deadlineMs = System.currentTimeMillis() + Math.max(timeoutMs, 0);
+
+		while (true) {
+			PriorityLatchChildWatcher childWatcher = new PriorityLatchChildWatcher();
+			Collection<String> orderedChildren;
 			try {
-				return remove();
-			} catch (NoSuchElementException e) {
-				// do nothing but wait
-				Thread.sleep(1000);
+				orderedChildren = currentChildren(childWatcher);
+			} catch (KeeperException.NoNodeException e) {
+				// wait for the queue to be created
+				if (zookeeper.exists(dir, childWatcher) == null
+						&& !childWatcher.awaitChange(deadlineMs)) {
+					return claimed;
+				}
+				continue;
+			}
+
+			if (orderedChildren.isEmpty()) {
+				if (childWatcher.awaitChange(deadlineMs)) {
+					continue;
+				}
+				return claimed;
+			}
+
+			Iterator<String> headNodes = orderedChildren.iterator();
+			while (claimed.size() < max && headNodes.hasNext()) {
+				List<String> candidates = new ArrayList<String>();
+				while (candidates.size() < max - claimed.size()
+						&& headNodes.hasNext()) {
+					candidates.add(headNodes.next());
+				}
+				try {
+					claimAll(candidates, claimed);
+				} catch (KeeperException e) {
+					if (claimed.isEmpty()) {
+						throw e;
+					}
+					// the claimed elements are already deleted, so return them
+					LOGGER.warn("Returning " + claimed.size()
+							+ " claimed elements after failure: " + e);
+					return claimed;
+				}
+			}
+
+			if (!claimed.isEmpty()) {
+				return claimed;
+			}
+			// every candidate was lost to other clients, list again
+		}
+	}
+
+	/**
+	 * Gets and deletes each of the child nodes with pipelined requests, up to
+	 * InFlightWindow.DEFAULT_MAX_IN_FLIGHT at a time. The session processes the
+	 * getData before the delete of the same node, and the node is claimed only
+	 * if the delete succeeds. No more requests are sent after a failure.
+	 * 
+	 * @param claimed
+	 *            receives the data of the claimed nodes, in candidate order
+	 */
+	private void claimAll(List<String> childNames, List<byte[]> claimed)
+			throws KeeperException, InterruptedException {
+
+		final int numCandidates = childNames.size();
+		final byte[][] values = new byte[numCandidates][];
+		final boolean[] deleted = new boolean[numCandidates];
+		final int[] failureRc = { Code.OK.intValue() };
+		final String[] failurePath = new String[1];
+		final InFlightWindow window = new InFlightWindow(
+				InFlightWindow.DEFAULT_MAX_IN_FLIGHT);
+
+		int numSent = 0;
+		for (; numSent < numCandidates; numSent++) {
+			synchronized (failureRc) {
+				if (failureRc[0] != Code.OK.intValue()) {
+					break;
+				}
+			}
+			final int index = numSent;
+			String path = dir + "/" + childNames.get(index);
+
+			window.acquire();
+			zookeeper.getData(path, false, new DataCallback() {
+
+				@Override
+				public void processResult(int rc, String path, Object ctx,
+						byte[] data, Stat stat) {
+					if (rc == Code.OK.intValue()) {
+						synchronized (values) {
+							values[index] = data;
+						}
+					}
+					window.release();
+				}
+			}, null);
+
+			window.acquire();
+			zookeeper.delete(path, -1, new VoidCallback() {
+
+				@Override
+				public void processResult(int rc, String path, Object ctx) {
+					if (rc == Code.OK.intValue()) {
+						deleted[index] = true;
+					} else {
+						// not claimed, so do not hold on to the value
+						synchronized (values) {
+							values[index] = null;
+						}
+						if (rc != Code.NONODE.intValue()) {
+							synchronized (failureRc) {
+								failureRc[0] = rc;
+								failurePath[0] = path;
+							}
+						}
+						// else another client deleted the node first.
+					}
+					window.release();
+				}
+			}, null);
+		}
+
+		window.awaitAll();
+
+		for (int i = 0; i < numSent; i++) {
+			// claimed or lost to another client
+			removed(childNames.get(i));
+			synchronized (values) {
+				if (deleted[i] && values[i] != null) {
+					claimed.add(ValueCodec.decode(values[i]));
+				}
+			}
+		}
+
+		synchronized (failureRc) {
+			if (failureRc[0] != Code.OK.intValue()) {
+				throw KeeperException.create(Code.get(failureRc[0]),
+						failurePath[0]);
 			}
 		}
-		return null;
 	}
 
 }
@@ -0,0 +1,164 @@
+/**
+ * Project: Zkrw
+ * File: QueueChildIndex.java
+ * Created on: Oct 17, 2026
+ * 2026 Federated Media, Inc.
+ */
+package net.fmpub.zk.util.queue;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.log4j.Logger;
+import org.apache.zookeeper.*;
+
+/**
+ * Local sorted index of the children of a queue, for long-lived consumers.
+ * <p>
+ * The index keeps a child watch on the queue. The children are listed again
+ * only after the watch fires, and the new listing is diffed against the index,
+ * so only added children are parsed and keyed. Children removed by this client
+ * are dropped from the index right away.
+ * <p>
+ * The index can be iterated while it is updated by another thread.
+ */
+class QueueChildIndex<KEY, PRIORITY> implements Watcher {
+
+	private static final Logger LOGGER = Logger
+			.getLogger(QueueChildIndex.class);
+
+	private final ZooKeeper zookeeper;
+	private final String dir;
+	private final PriorityKeyHandler<KEY, PRIORITY> keyHandler;
+
+	private final ConcurrentSkipListMap<KEY, String> orderedChildren = new ConcurrentSkipListMap<KEY, String>();
+	private final Map<String, KEY> keys = new HashMap<String, KEY>();
+
+	/**
+	 * True until the child watch is set, and again once it fires.
+	 */
+	private final AtomicBoolean stale = new AtomicBoolean(true);
+
+	/**
+	 * Watchers to notify on the next change, like a watch set by getChildren.
+	 * Weak, so the watchers of calls that already returned do not pile up
+	 * while the queue is idle.
+	 */
+	private final Set<Watcher> listeners = Collections
+			.newSetFromMap(new WeakHashMap<Watcher, Boolean>());
+
+	QueueChildIndex(ZooKeeper zookeeper, String dir,
+			PriorityKeyHandler<KEY, PRIORITY> keyHandler) {
+		this.zookeeper = zookeeper;
+		this.dir = dir;
+		this.keyHandler = keyHandler;
+	}
+
+	/**
+	 * Returns the children ordered by key, listing them again only if they
+	 * changed since the last call.
+	 *
+	 * @param watcher
+	 *            optional watcher notified on the next change of the children.
+	 * @throws KeeperException.NoNodeException
+	 *             if the queue does not exist
+	 */
+	SortedMap<KEY, String> orderedChildren(Watcher watcher)
+			throws KeeperException, InterruptedException {
+
+		if (watcher != null) {
+			synchronized (listeners) {
+				listeners.add(watcher);
+			}
+		}
+
+		// an empty index may be missing a child whose watch event is not
+		// delivered yet, e.g. one just offered on the same session, so list
+		// the children again before reporting the queue empty
+		if (stale.getAndSet(false) || orderedChildren.isEmpty()) {
+			List<String> childNames;
+			try {
+				childNames = zookeeper.getChildren(dir, this);
+			} catch (KeeperException e) {
+				stale.set(true);
+				throw e;
+			} catch (InterruptedException e) {
+				stale.set(true);
+				throw e;
+			}
+			update(childNames);
+		}
+
+		return orderedChildren;
+	}
+
+	/**
+	 * Drop a child this client removed.
+	 */
+	void remove(String childName) {
+		synchronized (keys) {
+			KEY key = keys.remove(childName);
+			if (key != null) {
+				orderedChildren.remove(key);
+			}
+		}
+	}
+
+	/**
+	 * Diff the listing against the index.
+	 */
+	private void update(List<String> childNames) {
+		synchronized (keys) {
+			Set<String> listed = new HashSet<String>(childNames);
+
+			Iterator<Map.Entry<String, KEY>> entries = keys.entrySet()
+					.iterator();
+			while (entries.hasNext()) {
+				Map.Entry<String, KEY> entry = entries.next();
+				if (!listed.contains(entry.getKey())) {
+					orderedChildren.remove(entry.getValue());
+					entries.remove();
+				}
+			}
+
+			for (String childName : childNames) {
+				if (keys.containsKey(childName)) {
+					continue;
+				}
+				try {
+					if (!keyHandler.hasValidName(childName)) {
+						LOGGER.warn("Found child node with improper name: "
+								+ childName);
+						continue;
+					}
+
+					KEY childId = keyHandler.generateKey(childName);
+					orderedChildren.put(childId, childName);
+					keys.put(childName, childId);
+				} catch (NumberFormatException e) {
+					LOGGER.warn("Found child node with improper format : "
+							+ childName + " " + e, e);
+				}
+			}
+		}
+	}
+
+	public void process(WatchedEvent event) {
+		LOGGER.debug("Index watcher fired on path: " + event.getPath()
+				+ " state: " + event.getState() + " type "
+				+ event.getType());
+
+		// any event may mean a missed change
+		stale.set(true);
+
+		List<Watcher> toNotify;
+		synchronized (listeners) {
+			toNotify = new ArrayList<Watcher>(listeners);
+			listeners.clear();
+		}
+		for (Watcher listener : toNotify) {
+			listener.process(event);
+		}
+	}
+}
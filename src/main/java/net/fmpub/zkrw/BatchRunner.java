@@ -0,0 +1,424 @@
+/**
+ * Project: Zkrw
+ * File: BatchRunner.java
+ * Created on: Oct 17, 2026
+ * 2026 Federated Media, Inc.
+ */
+package net.fmpub.zkrw;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import net.fmpub.zk.util.InFlightWindow;
+import net.fmpub.zk.util.ValueCodec;
+
+import org.apache.log4j.Logger;
+import org.apache.zookeeper.*;
+import org.apache.zookeeper.AsyncCallback.*;
+import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.ZooDefs.Ids;
+import org.apache.zookeeper.data.Stat;
+
+/**
+ * Runs newline delimited zkrw commands over one session. The simple commands
+ * are pipelined with the asynchronous ZooKeeper API, up to the in-flight
+ * window, and the rest run on a small thread pool.
+ * <p>
+ * Each input line is <code>command path [data]</code>, or the tab delimited
+ * <code>command\tpath[\tdata[\tpriority]]</code> when data has leading or
+ * trailing spaces or a priority is needed. Blank lines and lines starting with
+ * '#' are skipped. The commands that read stdin or write binary output
+ * (batch, qAddBatch, setLarge and getLarge) fail, and the others still run.
+ * <p>
+ * For each command one result is printed, in input order:
+ * <code>{line number}\t{exit value}\t{output or error}</code>
+ * <p>
+ * So that every result is one line, a newline in the output is printed as
+ * <code>\n</code>, a carriage return as <code>\r</code> and a backslash as
+ * <code>\\</code>.
+ */
+public class BatchRunner {
+
+    private static Logger logger = Logger.getLogger(BatchRunner.class);
+
+    public static final int DEFAULT_NUM_THREADS = 8;
+
+    private static final String COMMENT_PREFIX = "#";
+
+    private final Zkrw rw;
+    private final ZooKeeper zk;
+    private final InFlightWindow window;
+    private final PrintStream out;
+
+    private final ExecutorService executor;
+
+    /**
+     * Results waiting to be printed, in input order.
+     */
+    private final LinkedList<Result> pending = new LinkedList<Result>();
+
+    private int numFailed = 0;
+
+    public BatchRunner(Zkrw rw, int maxInFlight, PrintStream out) {
+        this.rw = rw;
+        this.zk = rw.getZooKeeper();
+        this.window = new InFlightWindow(maxInFlight);
+        this.out = out;
+        this.executor = Executors.newFixedThreadPool(Math.min(maxInFlight, DEFAULT_NUM_THREADS));
+    }
+
+    /**
+     * Run every command read from in.
+     *
+     * @param in the commands
+     * @return the number of commands that failed
+     * @throws IOException if the commands could not be read
+     * @throws InterruptedException
+     */
+    public int run(BufferedReader in) throws IOException, InterruptedException {
+        try {
+            int lineNum = 0;
+            String line;
+            while ((line = in.readLine()) != null) {
+                lineNum++;
+                if (line.trim().length() == 0 || line.startsWith(COMMENT_PREFIX)) {
+                    continue;
+                }
+
+                String[] args = null;
+                String parseError = null;
+                try {
+                    args = parseLine(line);
+                } catch (IllegalArgumentException e) {
+                    parseError = e.toString();
+                }
+
+                window.acquire();
+                Result result = new Result(lineNum, args == null ? null : args[1], args != null && isSingleRequest(args[0]));
+                awaitConflicts(result);
+                synchronized (pending) {
+                    pending.add(result);
+                }
+
+                if (parseError != null) {
+                    result.fail(parseError);
+                    continue;
+                }
+                try {
+                    submit(result, args);
+                } catch (RuntimeException e) {
+                    result.fail(e.toString());
+                }
+            }
+
+            window.awaitAll();
+        } finally {
+            executor.shutdown();
+        }
+
+        out.flush();
+        return numFailed;
+    }
+
+    /**
+     * Splits the line into command, path, data and priority.
+     */
+    static String[] parseLine(String line) {
+        String[] fields;
+        if (line.indexOf(Zkrw.DEFAULT_LIST_DELIMITER) > -1) {
+            fields = line.split(Zkrw.DEFAULT_LIST_DELIMITER, 4);
+        } else {
+            fields = line.trim().split("\\s+", 3);
+        }
+        String[] args = new String[4];
+        System.arraycopy(fields, 0, args, 0, fields.length);
+        if (args[1] == null || args[1].length() == 0) {
+            throw new IllegalArgumentException("Argument 'path' is required.");
+        }
+        return args;
+    }
+
+    /**
+     * Commands sent as one request are processed in order by the session, so
+     * they do not need to wait for each other.
+     */
+    private static boolean isSingleRequest(String command) {
+        return command.equalsIgnoreCase("get") || command.equalsIgnoreCase("exists")
+                || command.equalsIgnoreCase("getCTime") || command.equalsIgnoreCase("getMTime")
+                || command.equalsIgnoreCase("getNumChildren") || command.equalsIgnoreCase("set")
+                || command.equalsIgnoreCase("create") || command.equalsIgnoreCase("createIfNotExists")
+                || command.equalsIgnoreCase("delete");
+    }
+
+    /**
+     * Wait for earlier commands on the same path, or a parent or child path,
+     * unless both are single requests. The results are removed from pending
+     * while waiting, so it is scanned again after every wakeup.
+     */
+    private void awaitConflicts(Result result) throws InterruptedException {
+        synchronized (pending) {
+            while (findConflict(result) != null) {
+                pending.wait();
+            }
+        }
+    }
+
+    /**
+     * @return the first earlier command not done yet that result must wait
+     *         for, or null. Call with the lock on pending.
+     */
+    private Result findConflict(Result result) {
+        for (Result earlier : pending) {
+            if (!earlier.done && !(result.singleRequest && earlier.singleRequest)
+                    && overlaps(result.path, earlier.path)) {
+                return earlier;
+            }
+        }
+        return null;
+    }
+
+    private static boolean overlaps(String path, String otherPath) {
+        if (path == null || otherPath == null) {
+            return false;
+        }
+        return isSameOrAncestor(path, otherPath) || isSameOrAncestor(otherPath, path);
+    }
+
+    private static boolean isSameOrAncestor(String path, String otherPath) {
+        return otherPath.startsWith(path)
+                && (otherPath.length() == path.length() || path.endsWith("/") || otherPath.charAt(path.length()) == '/');
+    }
+
+    private void submit(final Result result, final String[] args) {
+
+        final String command = args[0];
+        final String path = args[1];
+        final String data = args[2];
+
+        // they would read the rest of the commands as their input
+        if (ZkrwDaemon.needsOwnProcess(command)) {
+            throw new IllegalArgumentException("'" + command
+                    + "' reads stdin or writes binary output, so it can not run in a batch.");
+        }
+
+        if (data == null && (command.equalsIgnoreCase("set") || command.toLowerCase().startsWith("create"))) {
+            throw new IllegalArgumentException("data cannot be null");
+        }
+
+        if (command.equalsIgnoreCase("get")) {
+            zk.getData(path, false, new DataCallback() {
+                @Override
+                public void processResult(int rc, String path, Object ctx, byte[] value, Stat stat) {
+                    if (rc == Code.OK.intValue()) {
+                        result.succeed(new String(ValueCodec.decode(value)));
+                    } else {
+                        result.fail(rc, path);
+                    }
+                }
+            }, null);
+        } else if (command.equalsIgnoreCase("exists")) {
+            zk.exists(path, false, new StatCallback() {
+                @Override
+                public void processResult(int rc, String path, Object ctx, Stat stat) {
+                    if (rc == Code.OK.intValue()) {
+                        result.succeed(Zkrw.TRUE_RETURN_VAL);
+                    } else if (rc == Code.NONODE.intValue()) {
+                        result.succeed(Zkrw.FALSE_RETURN_VAL);
+                    } else {
+                        result.fail(rc, path);
+                    }
+                }
+            }, null);
+        } else if (command.equalsIgnoreCase("getCTime") || command.equalsIgnoreCase("getMTime")
+                || command.equalsIgnoreCase("getNumChildren")) {
+            zk.exists(path, false, new StatCallback() {
+                @Override
+                public void processResult(int rc, String path, Object ctx, Stat stat) {
+                    if (rc != Code.OK.intValue()) {
+                        result.fail(rc, path);
+                    } else if (command.equalsIgnoreCase("getCTime")) {
+                        result.succeed(String.valueOf(stat.getCtime()));
+                    } else if (command.equalsIgnoreCase("getMTime")) {
+                        result.succeed(String.valueOf(stat.getMtime()));
+                    } else {
+                        result.succeed(String.valueOf(stat.getNumChildren()));
+                    }
+                }
+            }, null);
+        } else if (command.equalsIgnoreCase("set")) {
+            setData(result, path, data);
+        } else if (command.equalsIgnoreCase("create")) {
+            create(result, path, data, false, false);
+        } else if (command.equalsIgnoreCase("createIfNotExists")) {
+            create(result, path, data, true, false);
+        } else if (command.equalsIgnoreCase("createOrSet")) {
+            // set first, the node usually exists
+            zk.setData(path, bytes(data), -1, new StatCallback() {
+                @Override
+                public void processResult(int rc, String path, Object ctx, Stat stat) {
+                    if (rc == Code.NONODE.intValue()) {
+                        create(result, path, data, false, true);
+                    } else {
+                        result.complete(rc, path, "");
+                    }
+                }
+            }, null);
+        } else if (command.equalsIgnoreCase("delete")) {
+            zk.delete(path, -1, new VoidCallback() {
+                @Override
+                public void processResult(int rc, String path, Object ctx) {
+                    // do nothing if the node does not exist
+                    result.complete(rc == Code.NONODE.intValue() ? Code.OK.intValue() : rc, path, "");
+                }
+            }, null);
+        } else {
+            // everything else runs synchronously on the pool
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                    PrintStream cmdOut = new PrintStream(buffer);
+                    try {
+                        if (rw.execute(command, path, data, args[3], Zkrw.FORMAT_TEXT, Stdin.unavailable("in a batch"), cmdOut)) {
+                            cmdOut.flush();
+                            result.succeed(trimNewline(buffer.toString()));
+                        } else {
+                            result.fail("could not find command named: '" + command + "'");
+                        }
+                    } catch (Exception e) {
+                        result.fail(e.toString());
+                    }
+                }
+            });
+        }
+    }
+
+    private void setData(final Result result, String path, String data) {
+        zk.setData(path, bytes(data), -1, new StatCallback() {
+            @Override
+            public void processResult(int rc, String path, Object ctx, Stat stat) {
+                result.complete(rc, path, "");
+            }
+        }, null);
+    }
+
+    /**
+     * @param ignoreExists succeed if the node already exists
+     * @param setIfExists set the data if the node already exists
+     */
+    private void create(final Result result, String path, final String data, final boolean ignoreExists,
+            final boolean setIfExists) {
+        zk.create(path, bytes(data), Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT, new StringCallback() {
+            @Override
+            public void processResult(int rc, String path, Object ctx, String name) {
+                if (rc == Code.NODEEXISTS.intValue() && setIfExists) {
+                    setData(result, path, data);
+                } else if (rc == Code.NODEEXISTS.intValue() && ignoreExists) {
+                    result.succeed("");
+                } else {
+                    result.complete(rc, path, "");
+                }
+            }
+        }, null);
+    }
+
+    private byte[] bytes(String data) {
+        return rw.encode(data);
+    }
+
+    private static String trimNewline(String output) {
+        return output.endsWith(Zkrw.NEWLINE) ? output.substring(0, output.length() - Zkrw.NEWLINE.length()) : output;
+    }
+
+    /**
+     * Escape the line breaks in output, and the backslashes so the escapes can
+     * be told apart from the value.
+     */
+    static String escape(String output) {
+        if (output.indexOf('\\') < 0 && output.indexOf('\n') < 0 && output.indexOf('\r') < 0) {
+            return output;
+        }
+        StringBuilder escaped = new StringBuilder(output.length() + 8);
+        for (int i = 0; i < output.length(); i++) {
+            char c = output.charAt(i);
+            if (c == '\\') {
+                escaped.append("\\\\");
+            } else if (c == '\n') {
+                escaped.append("\\n");
+            } else if (c == '\r') {
+                escaped.append("\\r");
+            } else {
+                escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    /**
+     * Print the results at the head of the queue that are done.
+     */
+    private void printCompleted() {
+        synchronized (pending) {
+            while (!pending.isEmpty() && pending.getFirst().done) {
+                Result result = pending.removeFirst();
+                if (result.exitVal != 0) {
+                    numFailed++;
+                }
+                out.print(result.lineNum);
+                out.print(Zkrw.DEFAULT_LIST_DELIMITER);
+                out.print(result.exitVal);
+                out.print(Zkrw.DEFAULT_LIST_DELIMITER);
+                out.print(escape(result.output));
+                out.print(Zkrw.NEWLINE);
+            }
+        }
+    }
+
+    private class Result {
+        final int lineNum;
+        final String path;
+        final boolean singleRequest;
+        boolean done = false;
+        int exitVal;
+        String output;
+
+        Result(int lineNum, String path, boolean singleRequest) {
+            this.lineNum = lineNum;
+            this.path = path;
+            this.singleRequest = singleRequest;
+        }
+
+        void complete(int rc, String path, String output) {
+            if (rc == Code.OK.intValue()) {
+                succeed(output);
+            } else {
+                fail(rc, path);
+            }
+        }
+
+        void succeed(String output) {
+            finish(0, output);
+        }
+
+        void fail(int rc, String path) {
+            fail(KeeperException.create(Code.get(rc), path).getMessage());
+        }
+
+        void fail(String message) {
+            logger.debug("Batch line " + lineNum + " failed: " + message);
+            finish(1, message);
+        }
+
+        private void finish(int exitVal, String output) {
+            synchronized (pending) {
+                this.exitVal = exitVal;
+                this.output = output;
+                this.done = true;
+                pending.notifyAll();
+            }
+            printCompleted();
+            window.release();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * Project: Zkrw
+ * File: MultiResultWriter.java
+ * Created on: Oct 17, 2026
+ * 2026 Federated Media, Inc.
+ */
+package net.fmpub.zkrw;
+
+import java.io.*;
+
+import net.fmpub.zk.util.AsyncMultiReader;
+import net.fmpub.zk.util.ValueCodec;
+
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.data.Stat;
+
+/**
+ * Writes the results of mget and mstat, one line per path. In text, like the
+ * results of batch mode:
+ * <pre>
+ * {path}\t0\t{value}
+ * {path}\t0\t{ctime}\t{mtime}\t{version}\t{dataLength}\t{numChildren}
+ * {path}\t1\t{error}
+ * </pre>
+ * In NDJSON, the records of NdjsonNodeWriter, without the value for mstat.
+ */
+public class MultiResultWriter implements AsyncMultiReader.ResultHandler {
+
+    private final OutputStream out;
+
+    private final NdjsonNodeWriter ndjson;
+
+    private final boolean withValues;
+
+    private final byte[] delimiter = Zkrw.DEFAULT_LIST_DELIMITER.getBytes();
+    private final byte[] newline = Zkrw.NEWLINE.getBytes();
+
+    /**
+     * @param format Zkrw.FORMAT_TEXT or Zkrw.FORMAT_NDJSON
+     * @param withValues false to write the stat instead of the value
+     * @param out the output, which should be buffered
+     */
+    public MultiResultWriter(String format, boolean withValues, OutputStream out) {
+        this.out = out;
+        this.withValues = withValues;
+        this.ndjson = Zkrw.FORMAT_NDJSON.equals(format) ? new NdjsonNodeWriter(out, withValues) : null;
+    }
+
+    @Override
+    public void node(String path, byte[] data, Stat stat) throws IOException {
+        if(ndjson != null) {
+            ndjson.node(path, data, stat);
+            return;
+        }
+        writeStart(path, 0);
+        if(!withValues) {
+            out.write((stat.getCtime() + Zkrw.DEFAULT_LIST_DELIMITER + stat.getMtime() + Zkrw.DEFAULT_LIST_DELIMITER
+                    + stat.getVersion() + Zkrw.DEFAULT_LIST_DELIMITER + stat.getDataLength()
+                    + Zkrw.DEFAULT_LIST_DELIMITER + stat.getNumChildren()).getBytes());
+        }
+        else if(data != null) {
+            out.write(ValueCodec.decode(data));
+        }
+        out.write(newline);
+    }
+
+    @Override
+    public void error(String path, KeeperException failure) throws IOException {
+        if(ndjson != null) {
+            ndjson.error(path, failure.getMessage());
+            return;
+        }
+        writeStart(path, 1);
+        out.write(failure.getMessage().getBytes());
+        out.write(newline);
+    }
+
+    private void writeStart(String path, int exitVal) throws IOException {
+        out.write(path.getBytes());
+        out.write(delimiter);
+        out.write(String.valueOf(exitVal).getBytes());
+        out.write(delimiter);
+    }
+
+    /**
+     * Flush anything buffered to the output.
+     * @throws IOException
+     */
+    public void flush() throws IOException {
+        if(ndjson != null) {
+            ndjson.flush();
+        }
+        out.flush();
+    }
+}
@@ -0,0 +1,190 @@
+/**
+ * Project: Zkrw
+ * File: NdjsonNodeWriter.java
+ * Created on: Oct 17, 2026
+ * 2026 Federated Media, Inc.
+ */
+package net.fmpub.zkrw;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.*;
+
+import net.fmpub.zk.util.ValueCodec;
+
+import org.apache.zookeeper.data.Stat;
+
+/**
+ * Writes one JSON object per line (NDJSON) for each znode, with the path, the
+ * value and the stat:
+ * <pre>
+ * {"path":"/a","value":"text","ctime":1,"mtime":2,"version":0,"dataLength":4,"numChildren":0}
+ * </pre>
+ * A value that is valid UTF-8 is written as a JSON string as "value", any
+ * other value as base64 as "valueBase64". A znode without data has a null
+ * value. Values are decompressed if they were written with a ValueCodec, and
+ * dataLength is the stored length. A writer without values leaves out the
+ * value field, e.g. for a stat only listing.
+ * <p>
+ * A path that could not be read is written as {"path":"/a","error":"message"}.
+ */
+public class NdjsonNodeWriter implements NodeWriter {
+
+    private static final char[] BASE64_DIGITS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final Writer out;
+    
+    private final boolean withValues;
+
+    private final CharsetDecoder utf8 = Charset.forName("UTF-8").newDecoder()
+            .onMalformedInput(CodingErrorAction.REPORT).onUnmappableCharacter(CodingErrorAction.REPORT);
+
+    /**
+     * @param out the output, which should be buffered
+     */
+    public NdjsonNodeWriter(OutputStream out) {
+        this(out, true);
+    }
+    
+    /**
+     * @param out the output, which should be buffered
+     * @param withValues false to leave out the value field
+     */
+    public NdjsonNodeWriter(OutputStream out, boolean withValues) {
+        this.withValues = withValues;
+        try {
+            this.out = new OutputStreamWriter(out, "UTF-8");
+        }
+        catch(UnsupportedEncodingException e) {
+            // every JVM supports UTF-8
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void node(String path, byte[] data, Stat stat) throws IOException {
+        StringBuilder line = new StringBuilder(64 + (data == null ? 0 : data.length * 2));
+        line.append("{\"path\":");
+        appendString(line, path);
+
+        if(withValues) {
+            appendValue(line, ValueCodec.decode(data));
+        }
+
+        line.append(",\"ctime\":").append(stat.getCtime());
+        line.append(",\"mtime\":").append(stat.getMtime());
+        line.append(",\"version\":").append(stat.getVersion());
+        line.append(",\"dataLength\":").append(stat.getDataLength());
+        line.append(",\"numChildren\":").append(stat.getNumChildren());
+        line.append("}\n");
+        out.write(line.toString());
+    }
+
+    private void appendValue(StringBuilder line, byte[] value) {
+        if(value == null) {
+            line.append(",\"value\":null");
+            return;
+        }
+        String text = toUtf8(value);
+        if(text != null) {
+            line.append(",\"value\":");
+            appendString(line, text);
+        }
+        else {
+            line.append(",\"valueBase64\":\"");
+            appendBase64(line, value);
+            line.append('"');
+        }
+    }
+
+    /**
+     * Write a path that could not be read.
+     */
+    public void error(String path, String message) throws IOException {
+        StringBuilder line = new StringBuilder(64);
+        line.append("{\"path\":");
+        appendString(line, path);
+        line.append(",\"error\":");
+        appendString(line, message);
+        line.append("}\n");
+        out.write(line.toString());
+    }
+    
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * @return the value decoded as UTF-8, or null if it is not valid UTF-8
+     */
+    private String toUtf8(byte[] value) {
+        try {
+            return utf8.decode(ByteBuffer.wrap(value)).toString();
+        }
+        catch(CharacterCodingException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Append the text as a JSON string, escaping quotes, backslashes and control characters.
+     */
+    static void appendString(StringBuilder json, String text) {
+        json.append('"');
+        for(int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch(c) {
+            case '"':
+                json.append("\\\"");
+                break;
+            case '\\':
+                json.append("\\\\");
+                break;
+            case '\n':
+                json.append("\\n");
+                break;
+            case '\r':
+                json.append("\\r");
+                break;
+            case '\t':
+                json.append("\\t");
+                break;
+            default:
+                // the line and paragraph separators too, which some parsers treat as newlines
+                if(c < 0x20 || c == '\u2028' || c == '\u2029') {
+                    json.append("\\u").append(HEX_DIGITS[(c >> 12) & 0xf]).append(HEX_DIGITS[(c >> 8) & 0xf])
+                            .append(HEX_DIGITS[(c >> 4) & 0xf]).append(HEX_DIGITS[c & 0xf]);
+                }
+                else {
+                    json.append(c);
+                }
+            }
+        }
+        json.append('"');
+    }
+
+    /**
+     * Append the bytes in standard base64, with padding.
+     */
+    static void appendBase64(StringBuilder out, byte[] bytes) {
+        int i = 0;
+        for(; i + 2 < bytes.length; i += 3) {
+            int n = ((bytes[i] & 0xff) << 16) | ((bytes[i + 1] & 0xff) << 8) | (bytes[i + 2] & 0xff);
+            out.append(BASE64_DIGITS[n >> 18]).append(BASE64_DIGITS[(n >> 12) & 0x3f])
+                    .append(BASE64_DIGITS[(n >> 6) & 0x3f]).append(BASE64_DIGITS[n & 0x3f]);
+        }
+        int remaining = bytes.length - i;
+        if(remaining == 1) {
+            int n = (bytes[i] & 0xff) << 16;
+            out.append(BASE64_DIGITS[n >> 18]).append(BASE64_DIGITS[(n >> 12) & 0x3f]).append("==");
+        }
+        else if(remaining == 2) {
+            int n = ((bytes[i] & 0xff) << 16) | ((bytes[i + 1] & 0xff) << 8);
+            out.append(BASE64_DIGITS[n >> 18]).append(BASE64_DIGITS[(n >> 12) & 0x3f])
+                    .append(BASE64_DIGITS[(n >> 6) & 0x3f]).append('=');
+        }
+    }
+}
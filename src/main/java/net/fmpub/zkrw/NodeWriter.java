@@ -0,0 +1,35 @@
+/**
+ * Project: Zkrw
+ * File: NodeWriter.java
+ * Created on: Oct 17, 2026
+ * 2026 Federated Media, Inc.
+ */
+package net.fmpub.zkrw;
+
+import java.io.IOException;
+
+import net.fmpub.zk.util.AsyncTreeReader;
+
+import org.apache.zookeeper.data.Stat;
+
+/**
+ * Writes each znode of a listing to the output as soon as it is read.
+ */
+public interface NodeWriter extends AsyncTreeReader.NodeHandler {
+
+    /**
+     * Write one znode.
+     * @param path the path of the znode
+     * @param data the data of the znode
+     * @param stat the stat of the znode
+     * @throws IOException
+     */
+    @Override
+    void node(String path, byte[] data, Stat stat) throws IOException;
+    
+    /**
+     * Flush anything buffered to the output.
+     * @throws IOException
+     */
+    void flush() throws IOException;
+}
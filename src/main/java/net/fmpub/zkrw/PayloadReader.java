@@ -0,0 +1,178 @@
+/**
+ * Project: Zkrw
+ * File: PayloadReader.java
+ * Created on: Oct 17, 2026
+ * 2026 Federated Media, Inc.
+ */
+package net.fmpub.zkrw;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Reads queue payloads for qAddBatch, each with an optional priority.
+ * <p>
+ * The input is a file name, or '-' for stdin. By default each line is one
+ * payload, as it is, and blank lines are skipped.
+ * <p>
+ * With the prefix 'pri:' (e.g. <code>pri:-</code>) each line is
+ * <code>{priority}\t{payload}</code> or <code>\t{payload}</code> for the
+ * default priority, so a payload that itself starts with digits and a tab is
+ * written with a leading tab.
+ * <p>
+ * With the prefix 'len:' (e.g. <code>len:-</code>) payloads may contain any
+ * bytes. Each is a header line <code>{length}[\t{priority}]</code> followed by
+ * exactly that many bytes and an optional newline.
+ */
+public class PayloadReader {
+
+    public static final String STDIN = "-";
+
+    public static final String LENGTH_DELIMITED_PREFIX = "len:";
+
+    public static final String LINE_PRIORITY_PREFIX = "pri:";
+
+    private final List<byte[]> data = new ArrayList<byte[]>();
+    private final List<Integer> priorities = new ArrayList<Integer>();
+
+    /**
+     * @param input the input spec, a file name or '-', optionally prefixed with 'len:' or 'pri:'
+     * @param defaultPriority the priority of payloads without one
+     * @throws IOException if the input could not be read or is malformed
+     */
+    public PayloadReader(String input, int defaultPriority) throws IOException {
+        this(input, defaultPriority, new Stdin(System.in));
+    }
+
+    /**
+     * @param stdin the stdin of the call, read for '-'
+     * @see #PayloadReader(String, int)
+     */
+    PayloadReader(String input, int defaultPriority, Stdin stdin) throws IOException {
+        boolean lengthDelimited = input.startsWith(LENGTH_DELIMITED_PREFIX);
+        boolean linePriorities = input.startsWith(LINE_PRIORITY_PREFIX);
+        if (lengthDelimited) {
+            input = input.substring(LENGTH_DELIMITED_PREFIX.length());
+        } else if (linePriorities) {
+            input = input.substring(LINE_PRIORITY_PREFIX.length());
+        }
+
+        InputStream in = new ByteArrayInputStream(input.equals(STDIN) ? stdin.readFully() : readFile(input));
+        if (lengthDelimited) {
+            readLengthDelimited(in, defaultPriority);
+        } else {
+            readLines(in, defaultPriority, linePriorities);
+        }
+    }
+
+    public List<byte[]> getData() {
+        return data;
+    }
+
+    public List<Integer> getPriorities() {
+        return priorities;
+    }
+
+    private static byte[] readFile(String input) throws IOException {
+        InputStream in = new FileInputStream(input);
+        try {
+            return readFully(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int numRead;
+        while ((numRead = in.read(buffer)) > -1) {
+            bytes.write(buffer, 0, numRead);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @param linePriorities each line starts with its priority or a tab
+     */
+    private void readLines(InputStream in, int defaultPriority, boolean linePriorities) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.length() == 0) {
+                continue;
+            }
+            int priority = defaultPriority;
+            if (linePriorities) {
+                int tab = line.indexOf(Zkrw.DEFAULT_LIST_DELIMITER);
+                if (tab < 0 || (tab > 0 && !isNumber(line.substring(0, tab)))) {
+                    throw new IOException("Malformed payload line, expected {priority}\\t{payload}: '" + line + "'");
+                }
+                if (tab > 0) {
+                    priority = Integer.parseInt(line.substring(0, tab));
+                }
+                line = line.substring(tab + 1);
+            }
+            data.add(line.getBytes());
+            priorities.add(priority);
+        }
+    }
+
+    private void readLengthDelimited(InputStream in, int defaultPriority) throws IOException {
+        String header;
+        while ((header = readHeader(in)) != null) {
+            String[] fields = header.split(Zkrw.DEFAULT_LIST_DELIMITER, 2);
+            if (!isNumber(fields[0]) || (fields.length > 1 && !isNumber(fields[1]))) {
+                throw new IOException("Malformed payload header: '" + header + "'");
+            }
+
+            byte[] payload = new byte[Integer.parseInt(fields[0])];
+            int offset = 0;
+            while (offset < payload.length) {
+                int numRead = in.read(payload, offset, payload.length - offset);
+                if (numRead < 0) {
+                    throw new EOFException("Input ended in the middle of a " + payload.length + " byte payload.");
+                }
+                offset += numRead;
+            }
+
+            data.add(payload);
+            priorities.add(fields.length > 1 ? Integer.parseInt(fields[1]) : defaultPriority);
+        }
+    }
+
+    /**
+     * Reads the next header line, skipping the newline after the last payload.
+     *
+     * @return the header, or null at the end of the input
+     */
+    private static String readHeader(InputStream in) throws IOException {
+        StringBuilder header = new StringBuilder();
+        int b;
+        while ((b = in.read()) > -1) {
+            if (b == '\n') {
+                if (header.length() == 0) {
+                    continue;
+                }
+                return header.toString();
+            }
+            header.append((char) b);
+        }
+        if (header.length() > 0) {
+            throw new EOFException("Input ended in the middle of a payload header.");
+        }
+        return null;
+    }
+
+    private static boolean isNumber(String value) {
+        if (value.length() == 0) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (!Character.isDigit(value.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,221 @@
+/**
+ * Project: Zkrw
+ * File: SessionFile.java
+ * Created on: Oct 17, 2026
+ * 2026 Federated Media, Inc.
+ */
+package net.fmpub.zkrw;
+
+import java.io.*;
+import java.nio.channels.FileLock;
+import java.util.Properties;
+
+import org.apache.log4j.Logger;
+
+/**
+ * File holding the id and password of a session left open by the last zkrw
+ * process, so the next one can reattach to it instead of creating a new
+ * session.
+ * <p>
+ * The file is only readable and writable by its owner. It is locked while in
+ * use, so concurrent processes never share a session: a process that cannot
+ * get the lock uses a session of its own.
+ */
+public class SessionFile {
+
+    private static Logger logger = Logger.getLogger(SessionFile.class);
+
+    private static final String HOSTS = "hosts";
+    private static final String SESSION_ID = "sessionId";
+    private static final String PASSWORD = "password";
+    private static final String EXPIRES_AT_MS = "expiresAtMs";
+
+    /**
+     * Fraction of the session timeout before the expiry when a session is no
+     * longer reattached, since the server may expire it a little early.
+     */
+    private static final int EXPIRY_MARGIN_DIVISOR = 10;
+
+    private final File file;
+
+    private RandomAccessFile openFile;
+
+    private FileLock lock;
+
+    /**
+     * A session read from the file.
+     */
+    public static class Session {
+        private final long id;
+        private final byte[] password;
+
+        Session(long id, byte[] password) {
+            this.id = id;
+            this.password = password;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public byte[] getPassword() {
+            return password;
+        }
+    }
+
+    public SessionFile(String fileName) {
+        this.file = new File(fileName);
+    }
+
+    /**
+     * Lock the file, creating it if needed.
+     *
+     * @return false if another process holds the lock
+     * @throws IOException if the file could not be created or opened
+     */
+    public synchronized boolean lock() throws IOException {
+        if (lock != null) {
+            return true;
+        }
+        if (file.createNewFile()) {
+            // before anything secret is written to it
+            restrictToOwner(file);
+        }
+        openFile = new RandomAccessFile(file, "rw");
+        lock = openFile.getChannel().tryLock();
+        if (lock == null) {
+            logger.info("Session file " + file + " is in use by another process.");
+            openFile.close();
+            openFile = null;
+            return false;
+        }
+        return true;
+    }
+
+    private static void restrictToOwner(File file) throws IOException {
+        boolean restricted = file.setReadable(false, false) && file.setReadable(true, true)
+                && file.setWritable(false, false) && file.setWritable(true, true)
+                && file.setExecutable(false, false);
+        if (!restricted) {
+            throw new IOException("Could not restrict the permissions of " + file);
+        }
+    }
+
+    /**
+     * Read the session saved for the hosts, if it has not expired yet.
+     *
+     * @param hosts the connect string the session must be for
+     * @return the session, or null if there is none
+     * @throws IOException if the file is not locked or could not be read
+     */
+    public synchronized Session read(String hosts) throws IOException {
+        checkLocked();
+        byte[] bytes = new byte[(int) openFile.length()];
+        openFile.seek(0);
+        openFile.readFully(bytes);
+
+        Properties props = new Properties();
+        props.load(new ByteArrayInputStream(bytes));
+        if (!hosts.equals(props.getProperty(HOSTS))) {
+            return null;
+        }
+        try {
+            long expiresAtMs = Long.parseLong(props.getProperty(EXPIRES_AT_MS));
+            if (System.currentTimeMillis() >= expiresAtMs) {
+                logger.debug("Saved session has expired.");
+                return null;
+            }
+            long id = Long.parseLong(props.getProperty(SESSION_ID));
+            return new Session(id, fromHex(props.getProperty(PASSWORD)));
+        }
+        catch (RuntimeException e) {
+            logger.warn("Ignoring malformed session file " + file + ": " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Save a session that is left open.
+     *
+     * @param hosts the connect string of the session
+     * @param sessionTimeoutMs the timeout negotiated with the server
+     * @throws IOException if the file is not locked or could not be written
+     */
+    public synchronized void write(String hosts, long sessionId, byte[] password, int sessionTimeoutMs)
+            throws IOException {
+        checkLocked();
+        // the server expires the session about a session timeout after this process exits
+        long expiresAtMs = System.currentTimeMillis() + sessionTimeoutMs - sessionTimeoutMs / EXPIRY_MARGIN_DIVISOR;
+
+        Properties props = new Properties();
+        props.setProperty(HOSTS, hosts);
+        props.setProperty(SESSION_ID, String.valueOf(sessionId));
+        props.setProperty(PASSWORD, toHex(password));
+        props.setProperty(EXPIRES_AT_MS, String.valueOf(expiresAtMs));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        props.store(bytes, null);
+
+        openFile.setLength(0);
+        openFile.seek(0);
+        openFile.write(bytes.toByteArray());
+    }
+
+    /**
+     * Forget the saved session.
+     *
+     * @throws IOException if the file is not locked or could not be written
+     */
+    public synchronized void clear() throws IOException {
+        checkLocked();
+        openFile.setLength(0);
+    }
+
+    /**
+     * Release the lock.
+     */
+    public synchronized void close() throws IOException {
+        if (openFile != null) {
+            // also releases the lock
+            openFile.close();
+            openFile = null;
+            lock = null;
+        }
+    }
+
+    public synchronized boolean isLocked() {
+        return lock != null;
+    }
+
+    private void checkLocked() throws IOException {
+        if (lock == null) {
+            throw new IOException("Session file " + file + " is not locked.");
+        }
+    }
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    static String toHex(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            hex[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
+    static byte[] fromHex(String hex) {
+        if (hex.length() % 2 != 0) {
+            throw new IllegalArgumentException("Odd length hex string");
+        }
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int high = Character.digit(hex.charAt(i * 2), 16);
+            int low = Character.digit(hex.charAt(i * 2 + 1), 16);
+            if (high < 0 || low < 0) {
+                throw new IllegalArgumentException("Invalid hex string");
+            }
+            bytes[i] = (byte) ((high << 4) | low);
+        }
+        return bytes;
+    }
+}
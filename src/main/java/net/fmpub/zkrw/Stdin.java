@@ -0,0 +1,91 @@
+/**
+ * Project: Zkrw
+ * File: Stdin.java
+ * Created on: Oct 17, 2026
+ * 2026 Federated Media, Inc.
+ */
+package net.fmpub.zkrw;
+
+import java.io.*;
+
+/**
+ * The stdin of one call. It can only be read once, so a command that streamed
+ * it can not be retried, and a command that reads it whole gets the same bytes
+ * again when it is retried. Each call gets its own, so neither is kept on a
+ * Zkrw shared by several calls (as in the daemon).
+ * <p>
+ * Calls in the daemon or in a batch have no stdin of their own (the process's
+ * stdin is another caller's, or the batch's commands), so they get one that
+ * can not be read.
+ */
+class Stdin {
+
+    private final InputStream in;
+
+    /**
+     * Why the input can not be read, or null if it can.
+     */
+    private final String unavailable;
+
+    private boolean streamed = false;
+
+    private byte[] bytes;
+
+    Stdin(InputStream in) {
+        this(in, null);
+    }
+
+    private Stdin(InputStream in, String unavailable) {
+        this.in = in;
+        this.unavailable = unavailable;
+    }
+
+    /**
+     * @param where the call has no stdin, e.g. "in the daemon"
+     * @return a stdin that fails when it is read
+     */
+    static Stdin unavailable(String where) {
+        return new Stdin(null, "stdin can not be read " + where);
+    }
+
+    /**
+     * @return the input, to be read once
+     * @throws IOException if it was already read
+     */
+    synchronized InputStream stream() throws IOException {
+        checkAvailable();
+        if (streamed || bytes != null) {
+            throw new IOException("stdin was already read");
+        }
+        streamed = true;
+        return in;
+    }
+
+    /**
+     * @return all of the input, the same every time
+     * @throws IOException if it could not be read, or was streamed
+     */
+    synchronized byte[] readFully() throws IOException {
+        if (bytes == null) {
+            checkAvailable();
+            if (streamed) {
+                throw new IOException("stdin was already read");
+            }
+            bytes = PayloadReader.readFully(in);
+        }
+        return bytes;
+    }
+
+    private void checkAvailable() throws IOException {
+        if (unavailable != null) {
+            throw new IOException(unavailable);
+        }
+    }
+
+    /**
+     * @return true if a command read the input, so it can not be retried
+     */
+    synchronized boolean isStreamed() {
+        return streamed;
+    }
+}
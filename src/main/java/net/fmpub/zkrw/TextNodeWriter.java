@@ -0,0 +1,48 @@
+/**
+ * Project: Zkrw
+ * File: TextNodeWriter.java
+ * Created on: Oct 17, 2026
+ * 2026 Federated Media, Inc.
+ */
+package net.fmpub.zkrw;
+
+import java.io.*;
+
+import net.fmpub.zk.util.ValueCodec;
+
+import org.apache.zookeeper.data.Stat;
+
+/**
+ * Writes {path}{delimiter}{value}{newline} lines. The value bytes are written
+ * as they are, without decoding them to a String, once decompressed if they
+ * were written with a ValueCodec.
+ */
+public class TextNodeWriter implements NodeWriter {
+
+    private final OutputStream out;
+    
+    private final byte[] delimiter = Zkrw.DEFAULT_LIST_DELIMITER.getBytes();
+    private final byte[] newline = Zkrw.NEWLINE.getBytes();
+    
+    /**
+     * @param out the output, which should be buffered
+     */
+    public TextNodeWriter(OutputStream out) {
+        this.out = out;
+    }
+    
+    @Override
+    public void node(String path, byte[] data, Stat stat) throws IOException {
+        out.write(path.getBytes());
+        out.write(delimiter);
+        if(data != null) {
+            out.write(ValueCodec.decode(data));
+        }
+        out.write(newline);
+    }
+    
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+}
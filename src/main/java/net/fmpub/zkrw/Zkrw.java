@@ -1,11 +1,34 @@
 package net.fmpub.zkrw;
 
 import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.regex.Pattern;
 
+import net.fmpub.zk.util.AsyncMultiReader;
+import net.fmpub.zk.util.AsyncTreeDeleter;
+import net.fmpub.zk.util.AsyncTreePruner;
+import net.fmpub.zk.util.AsyncTreeReader;
+import net.fmpub.zk.util.ChunkedValue;
+import net.fmpub.zk.util.ConnectionGate;
+import net.fmpub.zk.util.DistributedBarrier;
+import net.fmpub.zk.util.DistributedLatch;
+import net.fmpub.zk.util.InFlightWindow;
+import net.fmpub.zk.util.InstrumentedZooKeeper;
+import net.fmpub.zk.util.LatchWatcher;
+import net.fmpub.zk.util.NonRetryableException;
+import net.fmpub.zk.util.RetryPolicy;
+import net.fmpub.zk.util.ValueCodec;
+import net.fmpub.zk.util.ZkStats;
+import net.fmpub.zk.util.ZkUtils;
 import net.fmpub.zk.util.queue.*;
 
 import org.apache.log4j.*;
+import org.apache.zookeeper.AsyncCallback.StatCallback;
+import org.apache.zookeeper.AsyncCallback.StringCallback;
 import org.apache.zookeeper.AsyncCallback.VoidCallback;
 import org.apache.zookeeper.*;
 import org.apache.zookeeper.ZooDefs.Ids;
@@ -21,6 +44,37 @@ public class Zkrw implements Watcher
     private static Logger logger = Logger.getLogger(Zkrw.class);
     private final ZooKeeper zk;
     
+    /**
+     * Tracks the connection state of the session.
+     */
+    private final ConnectionGate connection = new ConnectionGate();
+    
+    /**
+     * How long to wait for the session to be connected before an attempt.
+     */
+    private final int connectTimeoutMs;
+    
+    /**
+     * Maximum outstanding asynchronous requests for the pipelined commands.
+     */
+    private int maxInFlight = Integer.getInteger(MAX_IN_FLIGHT_PROPERTY, InFlightWindow.DEFAULT_MAX_IN_FLIGHT);
+    
+    /**
+     * Queues kept between calls, each with a local index of its children, or
+     * null to create a queue per call.
+     */
+    private volatile Map<String, PriorityDistributedQueue<Long, Integer>> queues = null;
+    
+    /**
+     * Codec the written values are encoded with. Values read are always decoded.
+     */
+    private volatile ValueCodec codec = defaultCodec();
+    
+    /**
+     * Size of the chunks large values are split into.
+     */
+    private int chunkSize = Integer.getInteger(CHUNK_BYTES_PROPERTY, ChunkedValue.DEFAULT_CHUNK_SIZE);
+    
     
     public static final String TRUE_RETURN_VAL = "true";
     public static final String FALSE_RETURN_VAL = "false";
@@ -38,6 +92,67 @@ public class Zkrw implements Watcher
     
     public static final int DEFAULT_SESSION_MS = 3000;
     
+    /**
+     * System property for the maximum outstanding asynchronous requests, e.g. -Dzkrw.maxInFlight=500
+     */
+    public static final String MAX_IN_FLIGHT_PROPERTY = "zkrw.maxInFlight";
+    
+    /**
+     * System property for a file where the session is saved and left open, so the next call within the
+     * session timeout reattaches to it, e.g. -Dzkrw.sessionFile=/opt/zookeeper/conf/.zkrw-session
+     */
+    public static final String SESSION_FILE_PROPERTY = "zkrw.sessionFile";
+    
+    /**
+     * System property for the codec values are compressed with when written: plain (the default), gzip or deflate,
+     * e.g. -Dzkrw.codec=gzip. Compressed values are decompressed when read, whatever this is set to.
+     */
+    public static final String CODEC_PROPERTY = "zkrw.codec";
+    
+    /**
+     * System property for the smallest value that is compressed, in bytes, e.g. -Dzkrw.codec.minBytes=1024
+     */
+    public static final String CODEC_MIN_BYTES_PROPERTY = "zkrw.codec.minBytes";
+    
+    /**
+     * System property for the size of the chunks setLarge splits values into, in bytes, e.g. -Dzkrw.chunkBytes=262144
+     */
+    public static final String CHUNK_BYTES_PROPERTY = "zkrw.chunkBytes";
+    
+    /**
+     * Separates the paths of mget and mstat in the path argument. Control characters are not allowed in
+     * znode paths, so it can not be part of one.
+     */
+    public static final String PATH_LIST_DELIMITER = "\n";
+    
+    /**
+     * Prefix of the expected version for waitForChange, e.g. "version:3".
+     */
+    public static final String VERSION_PREFIX = "version:";
+    
+    public static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+    
+    /**
+     * Option for the output format of the FORMAT_COMMANDS, e.g. --format=ndjson.
+     * It is only taken right after the command, so data starting with it is left alone.
+     */
+    public static final String FORMAT_OPTION = "--format=";
+    
+    /**
+     * The commands that take FORMAT_OPTION.
+     */
+    private static final String[] FORMAT_COMMANDS = { "get", "getAll", "getChildren", "getChildrenOnly", "mget", "mstat" };
+    
+    /**
+     * {path}{delimiter}{value} lines, or only the value for get.
+     */
+    public static final String FORMAT_TEXT = "text";
+    
+    /**
+     * One JSON object per node and line, with the value and the stat, see NdjsonNodeWriter.
+     */
+    public static final String FORMAT_NDJSON = "ndjson";
+    
     
     /**
      * program initialization.
@@ -46,11 +161,22 @@ public class Zkrw implements Watcher
      */
     public static void main(String[] args)
     {
-
+        long mainStartMs = System.currentTimeMillis();
         
-            
         // parse and verify parameters
         
+        String format = FORMAT_TEXT;
+        try {
+            List<String> argList = new ArrayList<String>(Arrays.asList(args));
+            format = extractFormat(argList, 5);
+            joinPaths(argList, 5);
+            args = argList.toArray(new String[argList.size()]);
+        }
+        catch(IllegalArgumentException e) {
+            logger.fatal(e.getMessage());
+            printUsageAndExit();
+        }
+        
         if (args.length < 5)
         {
             printUsageAndExit();
@@ -95,7 +221,30 @@ public class Zkrw implements Watcher
         }
         
         
-        int exitVal = run(hosts, sessionTimeOutMs, maxNumRetries, retryDelayMinInMS, retryDelayRangeInMS, command, path, dataOrSec, priority);
+        if (command.equalsIgnoreCase("daemon")) {
+            // long-lived mode, the path argument is the loopback port to listen on
+            try {
+                ZkrwDaemon daemon = new ZkrwDaemon(hosts, sessionTimeOutMs, maxNumRetries, retryDelayMinInMS, retryDelayRangeInMS, Integer.valueOf(path));
+                daemon.serve();
+                return;
+            }
+            catch(Exception e) {
+                logger.fatal("Daemon failed", e);
+                System.err.println("Daemon failed: " + e.getMessage());
+                System.exit(1);
+            }
+        }
+        
+        if (command.equalsIgnoreCase("batch")) {
+            // one session for all commands, the path argument is the file of commands or '-' for stdin
+            int maxInFlight = (dataOrSec == null || dataOrSec.length() == 0) ? Integer.getInteger(MAX_IN_FLIGHT_PROPERTY, InFlightWindow.DEFAULT_MAX_IN_FLIGHT) : Integer.valueOf(dataOrSec);
+            int exitVal = runBatch(hosts, sessionTimeOutMs, path, maxInFlight);
+            logStats(mainStartMs);
+            System.exit(exitVal);
+        }
+        
+        int exitVal = run(hosts, sessionTimeOutMs, maxNumRetries, retryDelayMinInMS, retryDelayRangeInMS, command, path, dataOrSec, priority, format);
+        logStats(mainStartMs);
         
         if(exitVal != 0) {
             System.exit(exitVal);
@@ -104,7 +253,6 @@ public class Zkrw implements Watcher
 
     /**
      * 
-     * @param rand
      * @param hosts
      * @param sessionTimeOutMs
      * @param maxNumRetries
@@ -115,165 +263,333 @@ public class Zkrw implements Watcher
      * @param dataOrSec
      * @param priority
      */
-    public static int run(String hosts, int sessionTimeOutMs,
+    public static int run(final String hosts, final int sessionTimeOutMs,
             int maxNumRetries, int retryDelayMinInMS, int retryDelayRangeInMS, String command,
             String path, String dataOrSec, String priority) {
+        return run(hosts, sessionTimeOutMs, maxNumRetries, retryDelayMinInMS, retryDelayRangeInMS, command, path, dataOrSec, priority, FORMAT_TEXT);
+    }
+    
+    /**
+     * 
+     * @param format the output format, FORMAT_TEXT or FORMAT_NDJSON
+     * @see #run(String, int, int, int, int, String, String, String, String)
+     */
+    public static int run(final String hosts, final int sessionTimeOutMs,
+            int maxNumRetries, int retryDelayMinInMS, int retryDelayRangeInMS, String command,
+            String path, String dataOrSec, String priority, String format) {
         
-        Random rand = new Random();
-        
-        Zkrw rw = null;
+        String sessionFileName = System.getProperty(SESSION_FILE_PROPERTY);
+        Connector connector;
+        if(sessionFileName != null && sessionFileName.length() > 0) {
+            connector = new ResumingConnector(hosts, sessionTimeOutMs, new SessionFile(sessionFileName));
+        }
+        else {
+            // a new session whenever the previous one is gone
+            connector = new Connector() {
+                
+                @Override
+                public Zkrw connect() throws IOException {
+                    return new Zkrw(hosts,sessionTimeOutMs);
+                }
+                
+                @Override
+                public void release(Zkrw rw) throws InterruptedException {
+                    rw.close();
+                }
+            };
+        }
         
+        String settings = settingsToString(hosts, sessionTimeOutMs, maxNumRetries, retryDelayMinInMS, retryDelayRangeInMS);
         
+        // buffered, since listings are written a line at a time
+        PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), OUTPUT_BUFFER_SIZE), false);
+        try {
+            return run(connector, settings, maxNumRetries, retryDelayMinInMS, retryDelayRangeInMS, command, path, dataOrSec, priority, format, out, System.err);
+        }
+        finally {
+            out.flush();
+        }
+    }
+    
+    /**
+     * Logs the time the JVM took to start, the time since main() started and
+     * the ZooKeeper operation stats, on one line.
+     * 
+     * @param mainStartMs when main() started
+     */
+    private static void logStats(long mainStartMs) {
         if(logger.isInfoEnabled()) {
-            logger.info("Processing " + commandsToString(hosts,sessionTimeOutMs,maxNumRetries,retryDelayMinInMS,retryDelayRangeInMS,command,path,dataOrSec,priority));
+            long jvmStartupMs = mainStartMs - ManagementFactory.getRuntimeMXBean().getStartTime();
+            logger.info("Stats: jvm startup ms=" + jvmStartupMs + ", run ms=" + (System.currentTimeMillis() - mainStartMs) + ", " + ZkStats.getDefault().getSummary());
         }
+    }
+    
+    /**
+     * Runs the commands in the file (or stdin for '-') over one session.
+     * 
+     * @param hosts
+     * @param sessionTimeOutMs
+     * @param fileName the file of commands, or '-' for stdin
+     * @param maxInFlight the maximum number of outstanding requests
+     * @return the exit value, 0 if all commands succeeded
+     */
+    public static int runBatch(String hosts, int sessionTimeOutMs, String fileName, int maxInFlight) {
         
-        List<Exception> exceptionList = new ArrayList<Exception>();
+        if(logger.isInfoEnabled()) {
+            logger.info("Processing batch " + fileName + " (hosts='" + hosts + "', session timeout ms=" + sessionTimeOutMs + ", max in flight=" + maxInFlight + ")");
+        }
         
-        boolean success = false;
-        for(int attNum=0; !success && attNum < maxNumRetries; attNum++) {
-            
-            
-            try
-            {
-                rw = new Zkrw(hosts,sessionTimeOutMs);
-                
-                // TODO: Strings will be supported in a switch statement in Java 7, due in July 2011
+        PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)), false);
+        Zkrw rw = null;
+        try {
+            BufferedReader in = new BufferedReader("-".equals(fileName) ? new InputStreamReader(System.in) : new FileReader(fileName));
+            try {
+                rw = new Zkrw(hosts, sessionTimeOutMs);
+                rw.awaitConnected();
                 
-                if (command.equalsIgnoreCase("help") || command.equalsIgnoreCase("-h")) {
-                	printUsage();
-                	return 1;
+                int numFailed = new BatchRunner(rw, maxInFlight, out).run(in);
+                if(numFailed > 0) {
+                    logger.info("Batch finished with " + numFailed + " failed commands.");
                 }
-                else if (command.equalsIgnoreCase("create"))
-                {
-                    rw.create(path, dataOrSec);
-                }
-                else if (command.equalsIgnoreCase("createIfNotExists"))
-                {
-                    rw.createIfNotExists(path, dataOrSec);
-                }
-                else if (command.equalsIgnoreCase("createOrSet"))
-                {
-                    rw.createOrSet(path, dataOrSec);
-                }
-                else if (command.equalsIgnoreCase("createIfNotExistsWithParents"))
-                {
-                    rw.createIfNotExistsWithParents(path, dataOrSec);
-                }
-                else if (command.equalsIgnoreCase("createOrSetWithParents"))
-                {
-                    rw.createOrSetWithParents(path, dataOrSec);
-                }
-                else if (command.equalsIgnoreCase("delete"))
-                {
-                    rw.delete(path);
-                }
-                else if (command.equalsIgnoreCase("deleteAll"))
-                {
-                    rw.deleteAll(path);
-                }
-                else if (command.equalsIgnoreCase("exists")) 
-                {
-                	System.out.println(rw.exists(path));
-                }
-                else if (command.equalsIgnoreCase("get"))
-                {
-                    System.out.println(rw.get(path));
-                }
-                else if (command.equalsIgnoreCase("getAll")) 
-                {
-                	System.out.println(rw.getAll(path));
-                }
-                else if (command.equalsIgnoreCase("getChildren")) 
-                {
-                	System.out.println(rw.getChildren(path));
-                }
-                else if (command.equalsIgnoreCase("getChildrenOnly")) 
-                {
-                    System.out.println(rw.getChildrenOnly(path));
-                }
-                else if (command.equalsIgnoreCase("getCTime")) 
-                {
-                    System.out.println(rw.getCTime(path));
-                }
-                else if (command.equalsIgnoreCase("getMTime")) 
-                {
-                    System.out.println(rw.getMTime(path));
-                }
-                else if (command.equalsIgnoreCase("getNumChildren")) 
-                {
-                    System.out.println(rw.getNumChildren(path));
-                }
-                else if (command.equalsIgnoreCase("qAdd")) 
-                {
-                	int priorityNum = ( priority == null || priority.length() == 0 ? SimplePriorityKeyHandler.HIGHEST_PRIORITY : Integer.valueOf(priority) );
-                	System.out.println(rw.queueAdd(path,dataOrSec,priorityNum));
-                }
-                else if (command.equalsIgnoreCase("qPoll")) 
-                {
-                	System.out.println(dataOrSec == null || dataOrSec.length() == 0 ? rw.queuePoll(path) : rw.queuePoll(path, Integer.valueOf(dataOrSec)));
-                }
-                else if (command.equalsIgnoreCase("set"))
-                {
-                    rw.set(path, dataOrSec);
+                return (numFailed == 0 ? 0 : 1);
+            }
+            finally {
+                in.close();
+                if(rw != null) {
+                    rw.close();
                 }
-                else {
-                    String msg = "could not find command named: '" + command + "' for " + commandsToString(hosts, sessionTimeOutMs,maxNumRetries, retryDelayMinInMS, retryDelayRangeInMS, command, path, dataOrSec, priority);    
-                	logger.fatal(msg);
-                	System.err.println(msg);
-                	printUsage();
-                	return 1;
+            }
+        }
+        catch (Exception e) {
+            String msg = "Batch failed: " + e.getMessage();
+            logger.fatal(msg, e);
+            System.err.println(msg);
+            return 1;
+        }
+        finally {
+            out.flush();
+        }
+    }
+    
+    /**
+     * Provides the Zkrw (session) used for each attempt of a command.
+     */
+    interface Connector {
+        
+        /**
+         * @return the Zkrw to run the next attempts with
+         * @throws IOException if zookeeper could not be initialized
+         */
+        Zkrw connect() throws IOException;
+        
+        /**
+         * Called with the Zkrw returned by connect() once no more attempts will use it.
+         * @param rw the Zkrw used for the attempts
+         * @throws InterruptedException
+         */
+        void release(Zkrw rw) throws InterruptedException;
+    }
+    
+    /**
+     * Reattaches to the session saved in the session file, if it has not
+     * expired, and leaves the session open and saved in the file when done.
+     */
+    static class ResumingConnector implements Connector {
+        
+        private final String hosts;
+        private final int sessionTimeOutMs;
+        private final SessionFile sessionFile;
+        
+        /**
+         * Only the first session may be a saved one.
+         */
+        private boolean resume = true;
+        
+        ResumingConnector(String hosts, int sessionTimeOutMs, SessionFile sessionFile) {
+            this.hosts = hosts;
+            this.sessionTimeOutMs = sessionTimeOutMs;
+            this.sessionFile = sessionFile;
+        }
+        
+        @Override
+        public Zkrw connect() throws IOException {
+            boolean first = resume;
+            resume = false;
+            if(first && sessionFile.lock()) {
+                SessionFile.Session session = sessionFile.read(hosts);
+                if(session != null) {
+                    logger.debug("Reattaching to session 0x" + Long.toHexString(session.getId()));
+                    return new Zkrw(hosts, sessionTimeOutMs, session.getId(), session.getPassword());
                 }
-                success = true;
-                
             }
-            catch (IOException ex)
-            {
-                exceptionList.add(new RuntimeException("could not initialize zookeeper",ex));
-                
+            return new Zkrw(hosts, sessionTimeOutMs);
+        }
+        
+        @Override
+        public void release(Zkrw rw) throws InterruptedException {
+            boolean saved = false;
+            try {
+                // unless another process is using the file
+                if(sessionFile.lock()) {
+                    if(rw.isConnected()) {
+                        sessionFile.write(hosts, rw.getSessionId(), rw.getSessionPassword(), rw.getSessionTimeout());
+                        saved = true;
+                    }
+                    else {
+                        sessionFile.clear();
+                    }
+                }
             }
-            catch (Exception ex)
-            {
-                exceptionList.add(ex);
-                
+            catch(IOException e) {
+                logger.warn("could not save session", e);
             }
             finally {
-            	try {
-    				if(rw != null) {
-    				    rw.close();
-    				}
-    				
-    			} catch (InterruptedException e) {
-    			    exceptionList.add(new RuntimeException("could not close zookeeper",e));
-    			}
-    			
-
+                try {
+                    sessionFile.close();
+                }
+                catch(IOException e) {
+                    logger.warn("could not close session file", e);
+                }
             }
             
-            if(!success) {
+            if(!saved) {
+                rw.close();
+            }
+        }
+    }
+    
+    /**
+     * Runs the command with retries, writing results to out and errors to err.
+     * Only connection and session failures are retried (see RetryPolicy), with
+     * exponential backoff from the min to the max delay. The session is kept
+     * between attempts unless it expired.
+     * 
+     * @param connector provides the session for each attempt
+     * @param settings description of the connection settings for logging
+     * @return the exit value, 0 for success
+     */
+    static int run(Connector connector, String settings,
+            int maxNumRetries, int retryDelayMinInMS, int retryDelayRangeInMS, String command,
+            String path, String dataOrSec, String priority, PrintStream resultOut, PrintStream err) {
+        return run(connector, settings, maxNumRetries, retryDelayMinInMS, retryDelayRangeInMS, command, path, dataOrSec, priority, FORMAT_TEXT, resultOut, err);
+    }
+    
+    /**
+     * @param format the output format, FORMAT_TEXT or FORMAT_NDJSON
+     * @see #run(Connector, String, int, int, int, String, String, String, String, PrintStream, PrintStream)
+     */
+    static int run(Connector connector, String settings,
+            int maxNumRetries, int retryDelayMinInMS, int retryDelayRangeInMS, String command,
+            String path, String dataOrSec, String priority, String format, PrintStream resultOut, PrintStream err) {
+        return run(connector, settings, maxNumRetries, retryDelayMinInMS, retryDelayRangeInMS, command, path, dataOrSec, priority, format, new Stdin(System.in), resultOut, err);
+    }
+    
+    /**
+     * @param format the output format, FORMAT_TEXT or FORMAT_NDJSON
+     * @param stdin the stdin of the call, read at most once by all the attempts
+     * @see #run(Connector, String, int, int, int, String, String, String, String, PrintStream, PrintStream)
+     */
+    static int run(Connector connector, String settings,
+            int maxNumRetries, int retryDelayMinInMS, int retryDelayRangeInMS, String command,
+            String path, String dataOrSec, String priority, String format, Stdin stdin, PrintStream resultOut, PrintStream err) {
+        
+        // results are streamed, so an attempt that already wrote output is not repeated
+        CountingOutputStream outCount = new CountingOutputStream(resultOut);
+        PrintStream out = new PrintStream(outCount, false);
+        
+        Zkrw rw = null;
+        
+        if(logger.isInfoEnabled()) {
+            logger.info("Processing " + commandsToString(settings,command,path,dataOrSec,priority));
+        }
+        
+        if (command.equalsIgnoreCase("help") || command.equalsIgnoreCase("-h")) {
+            printUsage(out);
+            return 1;
+        }
+        
+        RetryPolicy retryPolicy = new RetryPolicy(maxNumRetries, retryDelayMinInMS, retryDelayMinInMS + Math.max(retryDelayRangeInMS, 0));
+        
+        List<Exception> exceptionList = new ArrayList<Exception>();
+        
+        boolean success = false;
+        try {
+            for(int attNum=0; !success && attNum < retryPolicy.getMaxAttempts(); attNum++) {
                 
+                if(attNum > 0) {
+                    ZkStats.getDefault().recordRetry();
+                    
+                    // pause before next attempt
+                    try {
+                        retryPolicy.pause(attNum - 1);
+                    } catch (InterruptedException e) {
+                        // do nothing
+                    }
+                }
                 
-                // pause before next attempt
-                try {
-                    int delay = retryDelayMinInMS;
-                    if(retryDelayRangeInMS > 0) {
-                        delay += rand.nextInt(retryDelayRangeInMS);
+                // the session is kept between attempts, unless it is gone
+                if(rw == null) {
+                    try {
+                        rw = connector.connect();
+                    }
+                    catch (IOException ex) {
+                        exceptionList.add(new RuntimeException("could not initialize zookeeper",ex));
+                        continue;
                     }
-                    Thread.sleep(delay);
-                } catch (InterruptedException e) {
-                    // do nothing
                 }
                 
+                try
+                {
+                    if(!rw.execute(command, path, dataOrSec, priority, format, stdin, out)) {
+                        String msg = "could not find command named: '" + command + "' for " + commandsToString(settings, command, path, dataOrSec, priority);    
+                    	logger.fatal(msg);
+                    	err.println(msg);
+                    	printUsage(out);
+                    	return 1;
+                    }
+                    success = true;
+                    
+                }
+                catch (Exception ex)
+                {
+                    exceptionList.add(ex);
+                    
+                    if(outCount.getCount() > 0) {
+                        logger.info("Not retrying after partial output.");
+                        break;
+                    }
+                    
+                    if(stdin.isStreamed()) {
+                        logger.info("Not retrying after reading stdin.");
+                        break;
+                    }
+                    
+                    if(!RetryPolicy.isRetryable(ex)) {
+                        logger.info("Not retrying terminal failure: " + ex);
+                        break;
+                    }
+                    
+                    if(RetryPolicy.needsNewSession(ex) || !rw.isAlive()) {
+                        release(connector, rw, exceptionList);
+                        rw = null;
+                    }
+                }
+                
+            } // end for loop
+        }
+        finally {
+            if(rw != null) {
+                release(connector, rw, exceptionList);
             }
-            
-            
-        } // end for loop
+        }
+        
+        out.flush();
         
         if(!success) {
-            String msg = "Quit after " + maxNumRetries + " failures. " + commandsToString(hosts,sessionTimeOutMs,maxNumRetries,retryDelayMinInMS,retryDelayRangeInMS,command,path,dataOrSec,priority);
+            String msg = "Quit after " + exceptionList.size() + " failures. " + commandsToString(settings,command,path,dataOrSec,priority);
             logger.fatal(msg);
             logExceptions(logger,exceptionList);
-            System.err.println(msg);
+            err.println(msg);
             
         }
         else if(exceptionList.size() > 0) {
@@ -284,6 +600,208 @@ public class Zkrw implements Watcher
         return (success ? 0 : 1);
     }
     
+    /**
+     * Runs one attempt of the command on this session.
+     * 
+     * @param format the output format, FORMAT_TEXT or FORMAT_NDJSON
+     * @param out where the results are printed
+     * @return false if there is no command with the given name
+     * @throws Exception any failure of the command
+     */
+    boolean execute(String command, String path, String dataOrSec, String priority, String format, PrintStream out) throws Exception {
+        return execute(command, path, dataOrSec, priority, format, new Stdin(System.in), out);
+    }
+    
+    /**
+     * @param stdin the stdin of the call, read by commands given '-' as their input
+     * @see #execute(String, String, String, String, String, PrintStream)
+     */
+    boolean execute(String command, String path, String dataOrSec, String priority, String format, Stdin stdin, PrintStream out) throws Exception {
+        
+        // rather than racing the handshake or a reconnect
+        awaitConnected();
+        
+        // TODO: Strings will be supported in a switch statement in Java 7, due in July 2011
+        
+        if (command.equalsIgnoreCase("create"))
+        {
+            create(path, dataOrSec);
+        }
+        else if (command.equalsIgnoreCase("barrierEnter") || command.equalsIgnoreCase("barrierLeave"))
+        {
+            int numParties = parseCount(dataOrSec);
+            int timeoutSec = ( priority == null || priority.length() == 0 ? -1 : Integer.valueOf(priority) );
+            boolean entering = command.equalsIgnoreCase("barrierEnter");
+            if(!(entering ? barrierEnter(path, numParties, timeoutSec) : barrierLeave(path, numParties, timeoutSec))) {
+                throw new RuntimeException("Not all " + numParties + " parties " + (entering ? "entered " : "left ") + path + " after waiting " + timeoutSec + " sec");
+            }
+        }
+        else if (command.equalsIgnoreCase("createIfNotExists"))
+        {
+            createIfNotExists(path, dataOrSec);
+        }
+        else if (command.equalsIgnoreCase("createOrSet"))
+        {
+            createOrSet(path, dataOrSec);
+        }
+        else if (command.equalsIgnoreCase("createIfNotExistsWithParents"))
+        {
+            createIfNotExistsWithParents(path, dataOrSec);
+        }
+        else if (command.equalsIgnoreCase("createOrSetWithParents"))
+        {
+            createOrSetWithParents(path, dataOrSec);
+        }
+        else if (command.equalsIgnoreCase("delete"))
+        {
+            delete(path);
+        }
+        else if (command.equalsIgnoreCase("deleteAll"))
+        {
+            deleteAll(path);
+        }
+        else if (command.equalsIgnoreCase("exists")) 
+        {
+            out.println(exists(path));
+        }
+        else if (command.equalsIgnoreCase("get") && FORMAT_NDJSON.equals(format))
+        {
+            NodeWriter writer = newNodeWriter(format, out);
+            writeNode(path, writer);
+            writer.flush();
+        }
+        else if (command.equalsIgnoreCase("get"))
+        {
+            out.println(get(path));
+        }
+        else if (command.equalsIgnoreCase("getAll")) 
+        {
+            NodeWriter writer = newNodeWriter(format, out);
+            getAll(path, writer);
+            writer.flush();
+        }
+        else if (command.equalsIgnoreCase("getLarge")) 
+        {
+            getLarge(path, out);
+        }
+        else if (command.equalsIgnoreCase("getChildren")) 
+        {
+            NodeWriter writer = newNodeWriter(format, out);
+            getChildren(path, writer);
+            writer.flush();
+        }
+        else if (command.equalsIgnoreCase("getChildrenOnly")) 
+        {
+            NodeWriter writer = newNodeWriter(format, out);
+            getChildrenOnly(path, writer);
+            writer.flush();
+        }
+        else if (command.equalsIgnoreCase("getCTime")) 
+        {
+            out.println(getCTime(path));
+        }
+        else if (command.equalsIgnoreCase("getMTime")) 
+        {
+            out.println(getMTime(path));
+        }
+        else if (command.equalsIgnoreCase("getNumChildren")) 
+        {
+            out.println(getNumChildren(path));
+        }
+        else if (command.equalsIgnoreCase("latchAwait"))
+        {
+            int count = parseCount(dataOrSec);
+            int timeoutSec = ( priority == null || priority.length() == 0 ? -1 : Integer.valueOf(priority) );
+            if(!latchAwait(path, count, timeoutSec)) {
+                throw new RuntimeException("Latch " + path + " not counted down " + count + " times after waiting " + timeoutSec + " sec");
+            }
+        }
+        else if (command.equalsIgnoreCase("latchCountDown"))
+        {
+            out.println(latchCountDown(path));
+        }
+        else if (command.equalsIgnoreCase("mget") || command.equalsIgnoreCase("mstat")) 
+        {
+            List<String> paths = Arrays.asList(path.split(PATH_LIST_DELIMITER));
+            boolean withValues = command.equalsIgnoreCase("mget");
+            MultiResultWriter writer = new MultiResultWriter(format, withValues, out);
+            int numFailed = withValues ? mget(paths, writer) : mstat(paths, writer);
+            writer.flush();
+            if(numFailed > 0) {
+                throw new RuntimeException(numFailed + " of " + paths.size() + " paths could not be read");
+            }
+        }
+        else if (command.equalsIgnoreCase("pruneOlder") || command.equalsIgnoreCase("pruneOlderDryRun")) 
+        {
+            boolean dryRun = command.equalsIgnoreCase("pruneOlderDryRun");
+            for (Map.Entry<String, Integer> pruned : pruneOlder(path, parseCutoffMs(dataOrSec), priority, dryRun).entrySet()) {
+                out.println(pruned.getKey() + DEFAULT_LIST_DELIMITER + pruned.getValue());
+            }
+        }
+        else if (command.equalsIgnoreCase("qAdd")) 
+        {
+            int priorityNum = ( priority == null || priority.length() == 0 ? SimplePriorityKeyHandler.HIGHEST_PRIORITY : Integer.valueOf(priority) );
+            out.println(queueAdd(path,dataOrSec,priorityNum));
+        }
+        else if (command.equalsIgnoreCase("qAddBatch")) 
+        {
+            int priorityNum = ( priority == null || priority.length() == 0 ? SimplePriorityKeyHandler.HIGHEST_PRIORITY : Integer.valueOf(priority) );
+            String input = ( dataOrSec == null || dataOrSec.length() == 0 ? PayloadReader.STDIN : dataOrSec );
+            PayloadReader payloads = new PayloadReader(input, priorityNum, stdin);
+            String[] names = new String[payloads.getData().size()];
+            try {
+                queueAddBatch(path, payloads, names);
+            }
+            finally {
+                // also the items added before a failure
+                for (String name : names) {
+                    if(name != null) {
+                        out.println(name);
+                    }
+                }
+            }
+        }
+        else if (command.equalsIgnoreCase("qPoll")) 
+        {
+            out.println(dataOrSec == null || dataOrSec.length() == 0 ? queuePoll(path) : queuePoll(path, Integer.valueOf(dataOrSec)));
+        }
+        else if (command.equalsIgnoreCase("qPollBatch")) 
+        {
+            int max = parseMax(dataOrSec);
+            int numSeconds = ( priority == null || priority.length() == 0 ? 0 : Integer.valueOf(priority) );
+            for (String value : queuePollBatch(path, max, numSeconds)) {
+                out.println(value);
+            }
+        }
+        else if (command.equalsIgnoreCase("set"))
+        {
+            set(path, dataOrSec);
+        }
+        else if (command.equalsIgnoreCase("setLarge"))
+        {
+            String input = ( dataOrSec == null || dataOrSec.length() == 0 ? PayloadReader.STDIN : dataOrSec );
+            if(input.equals(PayloadReader.STDIN)) {
+                setLarge(path, stdin.stream());
+            }
+            else {
+                setLarge(path, input);
+            }
+        }
+        else if (command.equalsIgnoreCase("waitForChange"))
+        {
+            int timeoutSec = ( dataOrSec == null || dataOrSec.length() == 0 ? -1 : Integer.valueOf(dataOrSec) );
+            String value = waitForChange(path, timeoutSec, priority);
+            if(value == null) {
+                throw new RuntimeException("No change to " + path + " after waiting " + timeoutSec + " sec");
+            }
+            out.println(value);
+        }
+        else {
+            return false;
+        }
+        return true;
+    }
+    
     /*
      *         String hosts = null;
         int maxNumRetries = 0;
@@ -293,11 +811,119 @@ public class Zkrw implements Watcher
         String dataOrSec = null;
         String priority = null;
      */
-    private static String commandsToString(String hosts, int sessionTimeOutMs, int maxNumRetries, int retryDelayMinInMS, int retryDelayRangeInMS,
-            String command, String path, String dataOrSec, String priority) {
-        return String.format("Command: (hosts='%s', session timeout ms=%d, max retries=%d, retry min delay in ms=%d, retry max delay in ms=%d) %s %s %s %s",hosts,sessionTimeOutMs,maxNumRetries,retryDelayMinInMS,(retryDelayMinInMS+retryDelayRangeInMS),command,path,dataOrSec,priority);
+    /**
+     * @return the writer for the listings in the format
+     */
+    private static NodeWriter newNodeWriter(String format, OutputStream out) {
+        return FORMAT_NDJSON.equals(format) ? new NdjsonNodeWriter(out) : new TextNodeWriter(out);
+    }
+    
+    /**
+     * Removes the --format option from the arguments, if it is right after a
+     * command that takes it. Anywhere else it is an ordinary argument.
+     * 
+     * @param args the arguments, without the option when done
+     * @param commandIndex the index of the command
+     * @return the format, FORMAT_TEXT if there is no option
+     * @throws IllegalArgumentException if the format is unknown
+     */
+    static String extractFormat(List<String> args, int commandIndex) {
+        if(args.size() <= commandIndex + 1 || !isFormatCommand(args.get(commandIndex))) {
+            return FORMAT_TEXT;
+        }
+        String arg = args.get(commandIndex + 1);
+        if(arg == null || !arg.startsWith(FORMAT_OPTION)) {
+            return FORMAT_TEXT;
+        }
+        String format = arg.substring(FORMAT_OPTION.length());
+        if(!format.equals(FORMAT_TEXT) && !format.equals(FORMAT_NDJSON)) {
+            throw new IllegalArgumentException("Unknown format: '" + format + "'. Use " + FORMAT_TEXT + " or " + FORMAT_NDJSON + ".");
+        }
+        args.remove(commandIndex + 1);
+        return format;
+    }
+    
+    private static boolean isFormatCommand(String command) {
+        for(String formatCommand : FORMAT_COMMANDS) {
+            if(formatCommand.equalsIgnoreCase(command)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Joins the paths of a command that takes many, mget or mstat, into one path argument.
+     * 
+     * @param args the arguments, with one path argument when done
+     * @param commandIndex the index of the command, followed by the paths
+     */
+    static void joinPaths(List<String> args, int commandIndex) {
+        if(args.size() <= commandIndex + 2) {
+            return;
+        }
+        String command = args.get(commandIndex);
+        if(!command.equalsIgnoreCase("mget") && !command.equalsIgnoreCase("mstat")) {
+            return;
+        }
+        List<String> paths = args.subList(commandIndex + 1, args.size());
+        StringBuilder joined = new StringBuilder();
+        for(String path : paths) {
+            if(joined.length() > 0) {
+                joined.append(PATH_LIST_DELIMITER);
+            }
+            joined.append(path);
+        }
+        paths.clear();
+        args.add(joined.toString());
+    }
+    
+    static String settingsToString(String hosts, int sessionTimeOutMs, int maxNumRetries, int retryDelayMinInMS, int retryDelayRangeInMS) {
+        return String.format("hosts='%s', session timeout ms=%d, max retries=%d, retry min delay in ms=%d, retry max delay in ms=%d",hosts,sessionTimeOutMs,maxNumRetries,retryDelayMinInMS,(retryDelayMinInMS+retryDelayRangeInMS));
+    }
+    
+    private static String commandsToString(String settings, String command, String path, String dataOrSec, String priority) {
+        // the paths of mget and mstat on one line
+        String paths = (path == null ? null : path.replace(PATH_LIST_DELIMITER, " "));
+        return String.format("Command: (%s) %s %s %s %s",settings,command,paths,dataOrSec,priority);
     }
 
+    /**
+     * Counts the bytes written through it.
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+        
+        private long count = 0;
+        
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+        
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+        
+        long getCount() {
+            return count;
+        }
+    }
+    
+    private static void release(Connector connector, Zkrw rw, List<Exception> exceptionList) {
+        try {
+            connector.release(rw);
+        } catch (InterruptedException e) {
+            exceptionList.add(new RuntimeException("could not close zookeeper",e));
+        }
+    }
+    
     private static void logExceptions(Logger logger, List<Exception> exceptionList) {
         int exNum = 1;
         for(Exception ex : exceptionList) {
@@ -318,8 +944,24 @@ public class Zkrw implements Watcher
      * 
      */
     private static void printUsage() {
+        printUsage(System.out);
+    }
+    
+    private static void printUsage(PrintStream out) {
         logger.info("Malformed command. Printing usage and exiting.");
-        System.out.println("Usage: java -jar Zkrw.jar <host> create|createIfNotExists|createIfNotExistsWithParents|createOrSet|createOrSetWithParents|delete|deleteAll|exists|get|getAll|getChildren|getChildrenOnly|getCTime|getMTime|getNumChildren|qAdd|qPoll|set <path> [data or wait in sec] [priority]");
+        out.println("Usage: java -jar Zkrw.jar <host> create|createIfNotExists|createIfNotExistsWithParents|createOrSet|createOrSetWithParents|delete|deleteAll|exists|get|getAll|getChildren|getChildrenOnly|getCTime|getMTime|getNumChildren|qAdd|qPoll|set <path> [data or wait in sec] [priority]");
+        out.println("       java -jar Zkrw.jar <host> qAddBatch <path> [[len:|pri:]file or -] [priority]");
+        out.println("       java -jar Zkrw.jar <host> qPollBatch <path> <max> [wait in sec]");
+        out.println("       java -jar Zkrw.jar <host> setLarge <path> [file or -]");
+        out.println("       java -jar Zkrw.jar <host> getLarge <path>");
+        out.println("       java -jar Zkrw.jar <host> mget|mstat [--format=text|ndjson] <path> [path ...]");
+        out.println("       java -jar Zkrw.jar <host> waitForChange <path> [timeout in sec] [old value or version:N]");
+        out.println("       java -jar Zkrw.jar <host> barrierEnter|barrierLeave|latchAwait <path> <count> [timeout in sec]");
+        out.println("       java -jar Zkrw.jar <host> latchCountDown <path>");
+        out.println("       java -jar Zkrw.jar <host> pruneOlder|pruneOlderDryRun <path> <cutoff in sec or yyyy-MM-dd[ HH:mm:ss]> [regex]");
+        out.println("       java -jar Zkrw.jar <host> get|getAll|getChildren|getChildrenOnly --format=text|ndjson <path>");
+        out.println("       java -jar Zkrw.jar <host> batch <file or -> [max in flight]");
+        out.println("       java -jar Zkrw.jar <host> daemon <port>");
         
     }
 
@@ -329,93 +971,349 @@ public class Zkrw implements Watcher
      * @param zkHosts ZooKeeper hosts string (server1:port,server2:port)
      * @throws IOException
      */
-    public Zkrw(String zkHosts) throws IOException
+    public Zkrw(String zkHosts) throws IOException
+    {
+        this(zkHosts, DEFAULT_SESSION_MS);
+        
+    }
+    
+    /**
+     * Initialize and connect to ZooKeeper
+     * 
+     * @param zkHosts ZooKeeper hosts string (server1:port,server2:port)
+     * @throws IOException
+     */
+    public Zkrw(String zkHosts, int sessionTimeoutMs) throws IOException
+    {
+        zk = new InstrumentedZooKeeper(zkHosts, sessionTimeoutMs, this, ZkStats.getDefault());
+        connectTimeoutMs = sessionTimeoutMs;
+        
+    }
+
+    /**
+     * Reattach to an open session.
+     * 
+     * @param zkHosts ZooKeeper hosts string (server1:port,server2:port)
+     * @param sessionId the id of the session
+     * @param sessionPassword the password of the session
+     * @throws IOException
+     */
+    public Zkrw(String zkHosts, int sessionTimeoutMs, long sessionId, byte[] sessionPassword) throws IOException
+    {
+        zk = new InstrumentedZooKeeper(zkHosts, sessionTimeoutMs, this, sessionId, sessionPassword, ZkStats.getDefault());
+        connectTimeoutMs = sessionTimeoutMs;
+    }
+
+    /**
+     * Tracks the connection state for awaitConnected(). There is nothing else
+     * to do during the callback because we do everything with zk returns
+     * @param we the session event
+     */
+    @Override
+    public void process(WatchedEvent we)
+    {
+        connection.process(we);
+    }
+    
+    /**
+     * Wait until the session is connected, for up to the session timeout.
+     * 
+     * @throws KeeperException.ConnectionLossException if it is still not connected
+     * @throws KeeperException.SessionExpiredException if the session expired
+     * @throws InterruptedException
+     */
+    public void awaitConnected() throws KeeperException, InterruptedException
+    {
+        connection.awaitConnected(connectTimeoutMs);
+    }
+    
+    public void syncPath(String path) {
+    	VoidCallback callback = new VoidCallback() {
+			
+			@Override
+			public void processResult(int rc, String path, Object ctx) {
+				System.out.println("sync callback: " + rc + ", path = " + path);
+				
+			}
+		};
+    	zk.sync(path, callback, null);
+    }
+    
+    /**
+     * get the string representation of the data for a given path
+     * 
+     * @param path ZooKeeper key path
+     * @return value of the key
+     * @throws KeeperException
+     * @throws InterruptedException
+     */
+    public String get(String path) throws KeeperException, InterruptedException
+    {
+        return new String(ValueCodec.decode(zk.getData(path, false, null)));
+    }
+    
+    /**
+     * Wait until the value of the path changes, and return the new value. A data watch is set with
+     * each read, so the change is seen as soon as the server sends it, without polling.
+     * <p>
+     * The value has changed when it differs from the expected value, or from the value read
+     * first if there is none. With "version:N", it has changed when its version is not N, even if
+     * it was set to the same value. If it has already changed, it is returned without waiting.
+     * 
+     * @param path ZooKeeper key path
+     * @param timeoutSec the longest time to wait in seconds, or a negative number to wait forever
+     * @param expected the old value, "version:N" for the old version, or null or empty for the current value
+     * @return the new value, or null if it did not change in time
+     * @throws KeeperException.NoNodeException if the key does not exist or is deleted
+     * @throws KeeperException
+     * @throws InterruptedException
+     */
+    public String waitForChange(String path, int timeoutSec, String expected) throws KeeperException, InterruptedException
+    {
+        long deadlineMs = timeoutSec < 0 ? 0 : System.currentTimeMillis() + timeoutSec * 1000L;
+        
+        Integer expectedVersion = null;
+        if(expected != null && expected.startsWith(VERSION_PREFIX)) {
+            expectedVersion = Integer.valueOf(expected.substring(VERSION_PREFIX.length()));
+            expected = null;
+        }
+        
+        while(true) {
+            LatchWatcher watcher = new LatchWatcher();
+            Stat stat = new Stat();
+            String value = new String(ValueCodec.decode(zk.getData(path, watcher, stat)));
+            
+            if(expectedVersion == null && expected == null) {
+                // the value to compare with from now on
+                expected = value;
+            }
+            if(expectedVersion != null ? stat.getVersion() != expectedVersion : !value.equals(expected)) {
+                return value;
+            }
+            
+            if(!watcher.await(deadlineMs)) {
+                return null;
+            }
+            if(watcher.getEvent().getType() == Watcher.Event.EventType.None) {
+                // disconnected, the watch is set again when reading after the reconnect
+                connection.awaitConnected(deadlineMs == 0 ? connectTimeoutMs : Math.max(deadlineMs - System.currentTimeMillis(), 1));
+            }
+        }
+    }
+    
+    /**
+     * Wait until numParties parties have entered the barrier at the path, creating it if needed.
+     * Each party waits on a watch, and all of them are released together.
+     * 
+     * @param path ZooKeeper key path of the barrier
+     * @param numParties the number of parties
+     * @param timeoutSec the longest time to wait in seconds, or a negative number to wait forever
+     * @return false if the parties did not all enter in time
+     * @throws KeeperException
+     * @throws InterruptedException
+     * @throws NonRetryableException if it failed after joining, and could not leave again
+     * @see DistributedBarrier
+     */
+    public boolean barrierEnter(String path, int numParties, int timeoutSec) throws KeeperException, InterruptedException
+    {
+        return newBarrier(path, numParties).enter(timeoutSec * 1000L);
+    }
+    
+    /**
+     * Wait until numParties parties have left the barrier at the path, after entering it.
+     * 
+     * @return false if the parties did not all leave in time
+     * @see #barrierEnter(String, int, int)
+     */
+    public boolean barrierLeave(String path, int numParties, int timeoutSec) throws KeeperException, InterruptedException
+    {
+        return newBarrier(path, numParties).leave(timeoutSec * 1000L);
+    }
+    
+    private DistributedBarrier newBarrier(String path, int numParties) throws KeeperException, InterruptedException {
+        if(zk.exists(path, false) == null) {
+            createIfNotExistsWithParents(path, "");
+        }
+        return new DistributedBarrier(zk, connection, path, numParties);
+    }
+    
+    /**
+     * Wait until the latch at the path has been counted down count times. The latch does not have to
+     * exist yet.
+     * 
+     * @param path ZooKeeper key path of the latch
+     * @param count the number of count downs to wait for
+     * @param timeoutSec the longest time to wait in seconds, or a negative number to wait forever
+     * @return false if the count was not reached in time
+     * @throws KeeperException
+     * @throws InterruptedException
+     * @see DistributedLatch
+     */
+    public boolean latchAwait(String path, int count, int timeoutSec) throws KeeperException, InterruptedException
+    {
+        return new DistributedLatch(zk, connection, path).await(count, timeoutSec * 1000L);
+    }
+    
+    /**
+     * Count down the latch at the path, creating it if needed. Count downs are persistent, so delete the
+     * latch to use it again.
+     * 
+     * @param path ZooKeeper key path of the latch
+     * @return the number of count downs so far
+     * @throws KeeperException
+     * @throws InterruptedException
+     */
+    public int latchCountDown(String path) throws KeeperException, InterruptedException
+    {
+        DistributedLatch latch = new DistributedLatch(zk, connection, path);
+        try {
+            latch.countDown();
+        }
+        catch(KeeperException.NoNodeException e) {
+            createIfNotExistsWithParents(path, "");
+            latch.countDown();
+        }
+        return latch.getCount();
+    }
+    
+    /**
+     * Gets the value for the path and all its child paths, recursively.
+     * The tree is read with pipelined asynchronous requests, and the lines are
+     * in depth first order with children sorted by name.
+     * @param path
+     * @return a String with {path} {value}{newline}, with the default delimiter.
+     * @throws KeeperException
+     * @throws InterruptedException
+     */
+    public String getAll(String path) throws KeeperException, InterruptedException
     {
-        zk = new ZooKeeper(zkHosts, DEFAULT_SESSION_MS, this);
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try {
+            getAll(path, new TextNodeWriter(buffer));
+        }
+        catch(IOException e) {
+            throw new RuntimeException("could not buffer output", e);
+        }
         
+        return buffer.toString();
     }
     
     /**
-     * Initialize and connect to ZooKeeper
-     * 
-     * @param zkHosts ZooKeeper hosts string (server1:port,server2:port)
+     * Writes the path and all its child paths, recursively, as each one is read.
+     * The tree is read with pipelined asynchronous requests, in depth first 
+     * order with children sorted by name.
+     * @param path
+     * @param writer receives each node
+     * @throws KeeperException
+     * @throws InterruptedException
      * @throws IOException
      */
-    public Zkrw(String zkHosts, int sessionTimeoutMs) throws IOException
+    public void getAll(String path, NodeWriter writer) throws KeeperException, InterruptedException, IOException
     {
-        zk = new ZooKeeper(zkHosts, sessionTimeoutMs, this);
-        
+        try {
+            new AsyncTreeReader(zk, maxInFlight).read(path, writer);
+        }
+        catch(KeeperException e) {
+            throw e;
+        }
+        catch(InterruptedException e) {
+            throw e;
+        }
+        catch(IOException e) {
+            throw e;
+        }
+        catch(RuntimeException e) {
+            throw e;
+        }
+        catch(Exception e) {
+            // a NodeWriter only throws IOException
+            throw new RuntimeException(e);
+        }
     }
-
+    
     /**
-     * There is nothing to do during the callback because we do everything with
-     * zk returns
-     * @param we unused
+     * Store a value of any size, read from the file or stdin ('-'), as chunk children of the path.
+     * The path holds a manifest of the chunks, which is only updated once all of them are written.
+     * @param path ZooKeeper key path of the manifest
+     * @param input a file name, or '-' for stdin
+     * @return the size of the value
+     * @throws KeeperException.BadVersionException if another value was stored in the meantime
+     * @throws KeeperException
+     * @throws IOException if the input could not be read
+     * @throws InterruptedException
      */
-    @Override
-    public void process(WatchedEvent we)
+    public long setLarge(String path, String input) throws KeeperException, IOException, InterruptedException
     {
-        // do nothing
+        if(input.equals(PayloadReader.STDIN)) {
+            return setLarge(path, System.in);
+        }
+        InputStream in = new FileInputStream(input);
+        try {
+            return setLarge(path, in);
+        }
+        finally {
+            in.close();
+        }
     }
     
-    public void syncPath(String path) {
-    	VoidCallback callback = new VoidCallback() {
-			
-			@Override
-			public void processResult(int rc, String path, Object ctx) {
-				System.out.println("sync callback: " + rc + ", path = " + path);
-				
-			}
-		};
-    	zk.sync(path, callback, null);
+    /**
+     * Store a value of any size, streamed from in, as chunk children of the path.
+     * @see #setLarge(String, String)
+     */
+    public long setLarge(String path, InputStream in) throws KeeperException, IOException, InterruptedException
+    {
+        return new ChunkedValue(zk, chunkSize, ChunkedValue.DEFAULT_MAX_IN_FLIGHT, codec).write(path, in);
     }
     
     /**
-     * get the string representation of the data for a given path
-     * 
-     * @param path ZooKeeper key path
-     * @return value of the key
+     * Write a value stored with setLarge, as it is, streaming the chunks as they are read.
+     * @param path ZooKeeper key path of the manifest
+     * @param out receives the value
+     * @return the size of the value
+     * @throws IllegalArgumentException if the path does not hold a value stored with setLarge
      * @throws KeeperException
+     * @throws IOException if out could not be written
      * @throws InterruptedException
      */
-    public String get(String path) throws KeeperException, InterruptedException
+    public long getLarge(String path, OutputStream out) throws KeeperException, IOException, InterruptedException
     {
-        return new String(zk.getData(path, false, null));
+        return new ChunkedValue(zk, chunkSize, ChunkedValue.DEFAULT_MAX_IN_FLIGHT, codec).read(path, out);
     }
     
     /**
-     * Gets the value for the path and all its child paths, recursively.
+     * Gets the value for the path and all its immediate child paths.specsworksm4
+     * 
      * @param path
      * @return a String with {path} {value}{newline}, with the default delimiter.
      * @throws KeeperException
      * @throws InterruptedException
      */
-    public String getAll(String path) throws KeeperException, InterruptedException
+    public String getChildren(String path) throws KeeperException, InterruptedException
     {
-    	
-    	return getChildrenRec(path, new StringBuffer()).toString();
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try {
+            getChildren(path, new TextNodeWriter(buffer));
+        }
+        catch(IOException e) {
+            throw new RuntimeException("could not buffer output", e);
+        }
+
+    	return buffer.toString();
     }
     
     /**
-     * Gets the value for the path and all its immediate child paths.specsworksm4
+     * Writes the path and all its immediate child paths as each one is read.
      * 
      * @param path
-     * @return a String with {path} {value}{newline}, with the default delimiter.
+     * @param writer receives each node
      * @throws KeeperException
      * @throws InterruptedException
+     * @throws IOException
      */
-    public String getChildren(String path) throws KeeperException, InterruptedException
+    public void getChildren(String path, NodeWriter writer) throws KeeperException, InterruptedException, IOException
     {
-    	StringBuffer sbuff = new StringBuffer();
-    	addGetLine(path,sbuff);
-        for(String childName : zk.getChildren(path, false)) {
-            String childPath = path + "/" + childName; 
-            
-            addGetLine(childPath,sbuff);
-            
-        }
-
-    	return sbuff.toString();
+        writeNode(path, writer);
+        getChildrenOnly(path, writer);
     }
     
     /**
@@ -428,32 +1326,37 @@ public class Zkrw implements Watcher
      */
     public String getChildrenOnly(String path) throws KeeperException, InterruptedException
     {
-        StringBuffer sbuff = new StringBuffer();
-        
-        for(String childName : zk.getChildren(path, false)) {
-            String childPath = path + "/" + childName; 
-            
-            addGetLine(childPath,sbuff);
-            
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try {
+            getChildrenOnly(path, new TextNodeWriter(buffer));
+        }
+        catch(IOException e) {
+            throw new RuntimeException("could not buffer output", e);
         }
 
-        return sbuff.toString();
+        return buffer.toString();
     }
     
-    private StringBuffer getChildrenRec(String parentPath, StringBuffer sbuff) throws KeeperException, InterruptedException {
-    	//System.out.println("getChildrenData for parentPath: " + parentPath);
-    	addGetLine(parentPath,sbuff);
-    	for(String childName : zk.getChildren(parentPath, false)) {
-    		String childPath = parentPath + "/" + childName; 
-    		getChildrenRec(childPath, sbuff);
-    		
-    	}
-    	return sbuff;
+    /**
+     * Writes the path's immediate child paths only, as each one is read.
+     * 
+     * @param path
+     * @param writer receives each node
+     * @throws KeeperException
+     * @throws InterruptedException
+     * @throws IOException
+     */
+    public void getChildrenOnly(String path, NodeWriter writer) throws KeeperException, InterruptedException, IOException
+    {
+        for(String childName : zk.getChildren(path, false)) {
+            writeNode(ZkUtils.getChildPath(path, childName), writer);
+        }
     }
     
-    private StringBuffer addGetLine(String path, StringBuffer sbuff) throws KeeperException, InterruptedException {
-    	sbuff.append(path).append(DEFAULT_LIST_DELIMITER).append(new String(zk.getData(path, false, null))).append(NEWLINE);
-    	return sbuff;
+    private void writeNode(String path, NodeWriter writer) throws KeeperException, InterruptedException, IOException {
+        Stat stat = new Stat();
+        byte[] data = zk.getData(path, false, stat);
+        writer.node(path, data, stat);
     }
     
     /**
@@ -466,7 +1369,7 @@ public class Zkrw implements Watcher
      */
     public void set(String path, String data) throws KeeperException, InterruptedException
     {
-        zk.setData(path, data.getBytes(), -1);
+        zk.setData(path, encode(data), -1);
     }
     
     /**
@@ -485,7 +1388,7 @@ public class Zkrw implements Watcher
     	if(path == null) {
     		throw new IllegalArgumentException("path cannot be null");
     	}
-        zk.create(path, data.getBytes(), Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        zk.create(path, encode(data), Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
     }
     
     /**
@@ -516,43 +1419,94 @@ public class Zkrw implements Watcher
     
     /**
      * delete the key specified by path, and all children.
+     * The subtree is listed and deleted bottom up with pipelined asynchronous requests.
      * 
      * @param path ZooKeeper key path
+     * @return the number of keys deleted
      * @throws KeeperException
      * @throws InterruptedException
      */
-    public void deleteAll(String path) throws KeeperException, InterruptedException
+    public int deleteAll(String path) throws KeeperException, InterruptedException
     {
+        long startMs = System.currentTimeMillis();
+        
+        int numDeleted = new AsyncTreeDeleter(zk, maxInFlight).deleteAll(path);
         
-        deleteRec(path);
-           
+        logger.info("Deleted " + numDeleted + " nodes from " + path + " in " + (System.currentTimeMillis() - startMs) + " ms");
+        return numDeleted;
     }
     
-    private void deleteRec(String parentPath) throws KeeperException, InterruptedException
+    /**
+     * Gets the values of many keys with pipelined asynchronous requests. A key that can not be read is
+     * handed over as an error, and the others are still read.
+     * 
+     * @param paths ZooKeeper key paths
+     * @param handler receives the value and stat, or the error, of each key in the order of the paths
+     * @return the number of keys that could not be read
+     * @throws Exception thrown by the handler
+     */
+    public int mget(List<String> paths, AsyncMultiReader.ResultHandler handler) throws Exception
     {
-    	for(String childName : zk.getChildren(parentPath, false)) {
-    		String childPath = parentPath + "/" + childName; 
-    		
-    		deleteRec(childPath);
-    		
-    	}
-    	
-    	// delete this node
-    	try {
-    	    zk.delete(parentPath, -1);
-    	
-    	}
-        catch(KeeperException ke) {
-            // do nothing if the node does not exist
-            
-            if(ke.code().equals(KeeperException.Code.NONODE)) {
-                logger.debug("Attempted deleteRec but node does not exist: " + parentPath);
-            }
-            else {
-                
-                throw ke;
+        return new AsyncMultiReader(zk, maxInFlight, true).read(paths, handler);
+    }
+    
+    /**
+     * Gets the stats of many keys with pipelined asynchronous exists requests, so their values are not
+     * sent. The data handed over is null.
+     * 
+     * @see #mget(List, AsyncMultiReader.ResultHandler)
+     */
+    public int mstat(List<String> paths, AsyncMultiReader.ResultHandler handler) throws Exception
+    {
+        return new AsyncMultiReader(zk, maxInFlight, false).read(paths, handler);
+    }
+    
+    /**
+     * delete the children of path, recursively, that were last modified before the cutoff and
+     * whose {path}{tab}{value} line, as getAll prints it, matches the regex, then the parents below
+     * path that are left empty and are older than the cutoff. The tree is read once, fetching only
+     * the stat of each key unless there is a regex, and the subtrees are deleted bottom up with
+     * pipelined asynchronous requests. The path itself is never deleted.
+     * 
+     * @param path ZooKeeper key path
+     * @param cutoffMs keys with a modified time before this are deleted, in milliseconds
+     * @param regex only keys whose path or value contains a match are deleted, ignoring case, or null or empty for all
+     * @param dryRun true to only list what would be deleted
+     * @return the roots of the deleted subtrees, then the deleted parents, in order, each with the number of keys deleted
+     * @throws KeeperException
+     * @throws InterruptedException
+     */
+    public Map<String, Integer> pruneOlder(String path, long cutoffMs, String regex, boolean dryRun) throws KeeperException, InterruptedException
+    {
+        Pattern pattern = (regex == null || regex.length() == 0) ? null : Pattern.compile(regex, Pattern.CASE_INSENSITIVE);
+        
+        return new AsyncTreePruner(zk, maxInFlight).prune(path, cutoffMs, pattern, dryRun);
+    }
+    
+    /**
+     * Parses a cutoff given in seconds since the epoch, or as a local date and time.
+     * 
+     * @param cutoff seconds since the epoch, "yyyy-MM-dd HH:mm:ss" or "yyyy-MM-dd"
+     * @return the cutoff in milliseconds since the epoch
+     * @throws IllegalArgumentException if the cutoff can not be parsed
+     */
+    static long parseCutoffMs(String cutoff) {
+        if(cutoff == null || cutoff.length() == 0) {
+            throw new IllegalArgumentException("A cutoff is required");
+        }
+        if(cutoff.matches("[0-9]+")) {
+            return Long.parseLong(cutoff) * 1000;
+        }
+        for(String datePattern : new String[] { "yyyy-MM-dd HH:mm:ss", "yyyy-MM-dd" }) {
+            SimpleDateFormat dateFormat = new SimpleDateFormat(datePattern);
+            dateFormat.setLenient(false);
+            ParsePosition position = new ParsePosition(0);
+            Date date = dateFormat.parse(cutoff, position);
+            if(date != null && position.getIndex() == cutoff.length()) {
+                return date.getTime();
             }
         }
+        throw new IllegalArgumentException("Invalid cutoff: '" + cutoff + "'. Use seconds since the epoch, yyyy-MM-dd HH:mm:ss or yyyy-MM-dd.");
     }
     
     /**
@@ -583,18 +1537,30 @@ public class Zkrw implements Watcher
     /**
      * Operates only on the last key in the path. Creates the key if it doesn't exist, 
      * otherwise just sets it.
+     * The key usually exists, so it is set first, in one round trip, and only created if 
+     * that fails with NoNode. If another client creates it in between, it is set again.
      * @param path
      * @param data
      * @throws KeeperException
      * @throws InterruptedException
      */
     private void createOrSetEnd(String path, String data) throws KeeperException, InterruptedException {
-    	if(zk.exists(path, false) == null) {
-        	create(path,data);
-        }
-        else {
-        	set(path,data);
-        }
+    	if(data == null) {
+    		throw new IllegalArgumentException("data cannot be null");
+    	}
+    	try {
+    		set(path,data);
+    		return;
+    	}
+    	catch(KeeperException.NoNodeException e) {
+    		// create it below
+    	}
+    	try {
+    		create(path,data);
+    	}
+    	catch(KeeperException.NodeExistsException e) {
+    		set(path,data);
+    	}
     }
     
     /**
@@ -607,12 +1573,10 @@ public class Zkrw implements Watcher
      */
     public void createOrSetWithParents(String path, String data) throws KeeperException, InterruptedException
     {
-        
-        for(String subPath : getAllSubPaths(path)) {
-        	//System.out.println("createOrSet for " + subPath);
-        	createOrSetEnd(subPath, data);
-        	
+        if(data == null) {
+            throw new IllegalArgumentException("data cannot be null");
         }
+        createAll(getAllSubPaths(path), data, true);
     }
     
     /**
@@ -642,11 +1606,62 @@ public class Zkrw implements Watcher
 	public void createIfNotExistsWithParents(String path, String data)
 			throws KeeperException, InterruptedException {
 		
-		for (String subPath : getAllSubPaths(path)) {
-			//System.out.println("createIfNotExists for " + subPath);
-
-			createIfNotExistsEnd(subPath, data);
-			
+		if (data == null) {
+			for (String subPath : getAllSubPaths(path)) {
+				createIfNotExistsEnd(subPath, data);
+			}
+			return;
+		}
+		createAll(getAllSubPaths(path), data, false);
+	}
+	
+	/**
+	 * Create each path in order with pipelined asynchronous creates on this session,
+	 * so the whole chain takes about one round trip. The server handles the requests of
+	 * a session in order, so each parent exists before its child is created.
+	 * @param paths the paths to create, each parent before its children
+	 * @param data ZooKeeper data to store in each key
+	 * @param setExisting true to set the keys that already exist, false to leave them as they are
+	 * @throws KeeperException the first failure in path order
+	 * @throws InterruptedException
+	 */
+	private void createAll(List<String> paths, String data, final boolean setExisting)
+			throws KeeperException, InterruptedException {
+		final int[] results = new int[paths.size()];
+		final CountDownLatch done = new CountDownLatch(paths.size());
+		final byte[] bytes = encode(data);
+		
+		for (int i = 0; i < paths.size(); i++) {
+			zk.create(paths.get(i), bytes, Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT, new StringCallback() {
+				
+				public void processResult(int rc, String path, final Object ctx, String name) {
+					if (rc == KeeperException.Code.NODEEXISTS.intValue()) {
+						if (!setExisting) {
+							rc = KeeperException.Code.OK.intValue();
+						}
+						else {
+							// only the keys that exist cost a second round trip
+							zk.setData(path, bytes, -1, new StatCallback() {
+								
+								public void processResult(int rc, String path, Object unused, Stat stat) {
+									results[(Integer) ctx] = rc;
+									done.countDown();
+								}
+							}, null);
+							return;
+						}
+					}
+					results[(Integer) ctx] = rc;
+					done.countDown();
+				}
+			}, i);
+		}
+		done.await();
+		
+		for (int i = 0; i < results.length; i++) {
+			if (results[i] != KeeperException.Code.OK.intValue()) {
+				throw KeeperException.create(KeeperException.Code.get(results[i]), paths.get(i));
+			}
 		}
 	}
 	
@@ -680,6 +1695,7 @@ public class Zkrw implements Watcher
     
     /**
      * Operates only on the last key in the path. If the key does not exist, create it and set the value, otherwise do nothing.
+     * The create is tried first, in one round trip, and NodeExists is ignored.
      * @param path ZooKeeper key path
      * @param data ZooKeeper data to store in key
      * @throws KeeperException
@@ -687,10 +1703,19 @@ public class Zkrw implements Watcher
      */
     private void createIfNotExistsEnd(String path, String data) throws KeeperException, InterruptedException
     {
-    	
-        if(zk.exists(path, false) == null) {
-        	create(path,data);
-        }
+    	if(data == null) {
+    		// nothing to create with, which is only an error if the key does not exist
+    		if(zk.exists(path, false) == null) {
+    			create(path,data);
+    		}
+    		return;
+    	}
+    	try {
+    		create(path,data);
+    	}
+    	catch(KeeperException.NodeExistsException e) {
+    		// already exists
+    	}
     }
     
     
@@ -700,7 +1725,7 @@ public class Zkrw implements Watcher
     }
     
     public String queuePoll(String path, int numSeconds) throws KeeperException, InterruptedException {
-    	PriorityDistributedQueue<String, Integer> queue = initQueue(path);
+    	PriorityDistributedQueue<Long, Integer> queue = initQueue(path);
     	byte[] value = queue.poll(numSeconds);
     	
     	if(value == null) {
@@ -710,8 +1735,80 @@ public class Zkrw implements Watcher
     	
     }
     
+    /**
+     * Remove up to max items from the queue, waiting up to numSeconds if it is empty.
+     * 
+     * @return the items, highest priority first
+     * @throws RuntimeException if the queue is still empty after waiting
+     */
+    public List<String> queuePollBatch(String path, int max, int numSeconds) throws KeeperException, InterruptedException {
+    	PriorityDistributedQueue<Long, Integer> queue = initQueue(path);
+    	List<byte[]> values = queue.pollBatch(max, numSeconds * 1000L);
+    	
+    	if(values.isEmpty()) {
+    		throw new RuntimeException("Queue still empty after waiting " + numSeconds + " sec");
+    	}
+    	List<String> result = new ArrayList<String>(values.size());
+    	for (byte[] value : values) {
+    		result.add(new String(value));
+    	}
+    	return result;
+    }
+    
+    private static int parseMax(String max) {
+        if (max == null || max.length() == 0) {
+            throw new IllegalArgumentException("Argument 'max' is required.");
+        }
+        return Integer.valueOf(max);
+    }
+    
+    private static int parseCount(String count) {
+        if (count == null || count.length() == 0) {
+            throw new IllegalArgumentException("Argument 'count' is required.");
+        }
+        return Integer.valueOf(count);
+    }
+    
+    /**
+     * Add all the payloads to the queue with pipelined creates.
+     * 
+     * @return the paths of the created nodes, in input order
+     * @see #queueAddBatch(String, PayloadReader, String[])
+     */
+    public List<String> queueAddBatch(String path, PayloadReader payloads) throws InterruptedException {
+    	return queueAddBatch(path, payloads, new String[payloads.getData().size()]);
+    }
+    
+    /**
+     * Add all the payloads to the queue with pipelined creates. Once they are
+     * sent a failure is not retried, since a create whose reply was lost with
+     * the connection may still have added its item, and a retry would add the
+     * items again.
+     * 
+     * @param names receives the path of each node as it is created, in input order
+     * @return the paths of the created nodes, in input order
+     * @throws NonRetryableException if any create failed, with the KeeperException as the cause
+     */
+    public List<String> queueAddBatch(String path, PayloadReader payloads, String[] names) throws InterruptedException {
+    	PriorityDistributedQueue<Long, Integer> queue = initQueue(path);
+    	
+    	try {
+    		return queue.offerAll(payloads.getData(), payloads.getPriorities(), names);
+    	}
+    	catch(KeeperException e) {
+    		int numAdded = 0;
+    		for (String name : names) {
+    			if(name != null) {
+    				numAdded++;
+    			}
+    		}
+    		throw new NonRetryableException("Added " + numAdded + " of " + names.length + " items to " + path
+    				+ " before failing, not retrying: " + e.getMessage(), e);
+    	}
+    }
+    
     public String queueAdd(String path, String data, int priority) throws KeeperException, InterruptedException {
-    	PriorityDistributedQueue<String, Integer> queue = initQueue(path);
+    	PriorityDistributedQueue<Long, Integer> queue = initQueue(path);
     	
     	return queue.offer(data.getBytes(), priority) ? TRUE_RETURN_VAL : FALSE_RETURN_VAL;
     	
@@ -764,15 +1861,135 @@ public class Zkrw implements Watcher
      * @throws KeeperException
      */
     private Stat getStat(String path) throws InterruptedException, KeeperException {
-        Stat stat = new Stat();
-        zk.getData(path, false, stat);
-            
+        // exists, so the value is not sent just for its stat
+        Stat stat = zk.exists(path, false);
+        if(stat == null) {
+            throw KeeperException.create(KeeperException.Code.NONODE, path);
+        }
         return stat;
         
     }
     
-    private PriorityDistributedQueue<String, Integer> initQueue(String path) {
-    	return new PriorityDistributedQueue<String, Integer>(zk, path, new SimplePriorityKeyHandler());
+    private PriorityDistributedQueue<Long, Integer> initQueue(String path) {
+    	Map<String, PriorityDistributedQueue<Long, Integer>> kept = queues;
+    	if(kept == null) {
+    		PriorityDistributedQueue<Long, Integer> queue = new PriorityDistributedQueue<Long, Integer>(zk, path, new PackedPriorityKeyHandler());
+    		queue.setValueCodec(codec);
+    		return queue;
+    	}
+    	synchronized (kept) {
+    		PriorityDistributedQueue<Long, Integer> queue = kept.get(path);
+    		if(queue == null) {
+    			queue = new PriorityDistributedQueue<Long, Integer>(zk, path, new PackedPriorityKeyHandler());
+    			queue.setLocalIndex(true);
+    			kept.put(path, queue);
+    		}
+    		// in case it changed since the queue was kept
+    		queue.setValueCodec(codec);
+    		return queue;
+    	}
+    }
+    
+    /**
+     * @param maxInFlight maximum outstanding asynchronous requests for the pipelined commands
+     */
+    public void setMaxInFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+    
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+    
+    /**
+     * Keep each queue between calls, with a local index of its children that
+     * is updated from child watches. For long-lived instances such as the
+     * daemon.
+     * 
+     * @param keepQueues
+     */
+    public synchronized void setKeepQueues(boolean keepQueues) {
+        if(!keepQueues) {
+            queues = null;
+        } else if(queues == null) {
+            queues = new HashMap<String, PriorityDistributedQueue<Long, Integer>>();
+        }
+    }
+    
+    ZooKeeper getZooKeeper() {
+        return zk;
+    }
+    
+    /**
+     * @param codec the codec written values are compressed with, or ValueCodec.PLAIN to write them as they are
+     */
+    public void setCodec(ValueCodec codec) {
+        if(codec == null) {
+            throw new IllegalArgumentException("codec cannot be null");
+        }
+        this.codec = codec;
+    }
+    
+    public ValueCodec getCodec() {
+        return codec;
+    }
+    
+    /**
+     * @param chunkSize the size of the chunks setLarge splits values into
+     */
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+    
+    /**
+     * @return the bytes of the data, compressed with the codec
+     */
+    byte[] encode(String data) {
+        return codec.encode(data.getBytes());
+    }
+    
+    /**
+     * @return the codec named by the zkrw.codec system property
+     * @throws IllegalArgumentException if there is no codec with that name
+     */
+    static ValueCodec defaultCodec() {
+        return ValueCodec.forName(System.getProperty(CODEC_PROPERTY), Integer.getInteger(CODEC_MIN_BYTES_PROPERTY, ValueCodec.DEFAULT_MIN_SIZE));
+    }
+    
+    /**
+     * @return the latencies and error counts of the ZooKeeper operations, shared by all sessions in this JVM
+     */
+    public ZkStats getStats() {
+        return ZkStats.getDefault();
+    }
+    
+    public long getSessionId() {
+        return zk.getSessionId();
+    }
+    
+    public byte[] getSessionPassword() {
+        return zk.getSessionPasswd();
+    }
+    
+    /**
+     * @return the session timeout negotiated with the server
+     */
+    public int getSessionTimeout() {
+        return zk.getSessionTimeout();
+    }
+    
+    /**
+     * @return true if the session is connected
+     */
+    public boolean isConnected() {
+        return connection.isConnected();
+    }
+    
+    /**
+     * @return true if the session has not been closed or expired
+     */
+    public boolean isAlive() {
+        return !connection.isExpired() && zk.getState().isAlive();
     }
     
     /**
@@ -787,7 +2004,7 @@ public class Zkrw implements Watcher
         }
     }
     
-    private static String parseArg(String[] args, int index, String argName, boolean isRequired, boolean allowEmpty) throws IllegalArgumentException, RuntimeException {
+    static String parseArg(String[] args, int index, String argName, boolean isRequired, boolean allowEmpty) throws IllegalArgumentException, RuntimeException {
     	
     	if(args.length <= index || args[index] == null) {
     		if(isRequired) {
@@ -0,0 +1,374 @@
+/**
+ * Project: Zkrw
+ * File: ZkrwDaemon.java
+ * Created on: Oct 17, 2026
+ * 2026 Federated Media, Inc.
+ */
+package net.fmpub.zkrw;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import javax.management.JMException;
+
+import net.fmpub.zk.util.ZkStats;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Long-lived zkrw that keeps one warm ZooKeeper session and runs commands sent
+ * over a loopback socket, so the zk script does not pay for a JVM and a session
+ * per command.
+ * <p>
+ * Request: <code>&lt;argc&gt;\0&lt;command&gt;\0&lt;path&gt;\0[data]\0[priority]\0</code><br>
+ * Response: <code>&lt;stdout&gt;\0&lt;stderr&gt;\0&lt;exit value&gt;\n</code>
+ * <p>
+ * Both are easily written and read with bash's /dev/tcp (see scripts/zk).
+ * In stdout and stderr a NUL is sent as <code>\0000</code> and a backslash as
+ * <code>\\</code>, which the script's <code>printf %b</code> turns back into
+ * the original bytes, so values containing NUL are not cut off. The commands
+ * that read stdin or write binary output are refused, since the daemon's stdin
+ * is not the caller's.
+ * <p>
+ * Each connection has its own thread, so commands that wait, such as qPoll or
+ * barrierEnter, do not hold up the others. At most DEFAULT_MAX_CONNECTIONS are
+ * served at once, further ones wait to be accepted, and a client that does not
+ * send its request within REQUEST_TIMEOUT_MS is dropped.
+ * <p>
+ * The latencies and error counts of the ZooKeeper operations are exposed over
+ * JMX as the MBean net.fmpub.zk.util:type=ZkStats.
+ */
+public class ZkrwDaemon {
+
+    private static Logger logger = Logger.getLogger(ZkrwDaemon.class);
+
+    public static final int DEFAULT_MAX_CONNECTIONS = 256;
+
+    public static final int REQUEST_TIMEOUT_MS = 10000;
+
+    private static final String CHARSET = "UTF-8";
+
+    private static final char ARG_DELIMITER = '\0';
+
+    private static final char ESCAPE = '\\';
+
+    /**
+     * Commands that must run in their own process.
+     */
+    private static final String[] OWN_PROCESS_COMMANDS = { "daemon", "batch", "qAddBatch", "setLarge", "getLarge" };
+
+    private final String hosts;
+    private final int sessionTimeOutMs;
+    private final int maxNumRetries;
+    private final int retryDelayMinInMS;
+    private final int retryDelayRangeInMS;
+    private final int port;
+
+    private final String settings;
+
+    private Zkrw rw;
+
+    private ServerSocket serverSocket;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private final Semaphore connections = new Semaphore(DEFAULT_MAX_CONNECTIONS);
+
+    /**
+     * How long to wait for a client's request, settable by tests.
+     */
+    volatile int requestTimeoutMs = REQUEST_TIMEOUT_MS;
+
+    public ZkrwDaemon(String hosts, int sessionTimeOutMs, int maxNumRetries, int retryDelayMinInMS,
+            int retryDelayRangeInMS, int port) {
+        this.hosts = hosts;
+        this.sessionTimeOutMs = sessionTimeOutMs;
+        this.maxNumRetries = maxNumRetries;
+        this.retryDelayMinInMS = retryDelayMinInMS;
+        this.retryDelayRangeInMS = retryDelayRangeInMS;
+        this.port = port;
+        this.settings = Zkrw.settingsToString(hosts, sessionTimeOutMs, maxNumRetries, retryDelayMinInMS,
+                retryDelayRangeInMS);
+    }
+
+    /**
+     * Listen on the loopback port and run commands until the process is
+     * stopped.
+     *
+     * @throws IOException if the port could not be opened
+     */
+    public void serve() throws IOException {
+        open();
+        acceptAll();
+    }
+
+    /**
+     * Open the loopback port.
+     *
+     * @return the port, chosen by the system if 0 was given
+     * @throws IOException if the port could not be opened
+     */
+    int open() throws IOException {
+
+        serverSocket = new ServerSocket(port, 50, InetAddress.getByName("127.0.0.1"));
+
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                shutdown();
+            }
+        });
+
+        try {
+            ZkStats.getDefault().register();
+        } catch (JMException e) {
+            logger.warn("could not register stats MBean", e);
+        }
+
+        logger.info("Daemon listening on 127.0.0.1:" + serverSocket.getLocalPort() + " (" + settings + ")");
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Run the commands sent to the open port until shutdown() is called.
+     */
+    void acceptAll() throws IOException {
+        while (!serverSocket.isClosed()) {
+            try {
+                // the clients beyond the limit wait in the backlog
+                connections.acquire();
+            } catch (InterruptedException e) {
+                break;
+            }
+
+            final Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (SocketException e) {
+                // closed by shutdown()
+                connections.release();
+                break;
+            }
+
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            handle(socket);
+                        } finally {
+                            connections.release();
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // shut down in the meantime
+                connections.release();
+                socket.close();
+            }
+        }
+    }
+
+    /**
+     * Stop accepting commands and close the session.
+     */
+    public void shutdown() {
+        logger.info("Daemon shutting down. Stats: " + ZkStats.getDefault().getSummary());
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            logger.warn("could not close server socket", e);
+        }
+        executor.shutdown();
+
+        synchronized (this) {
+            try {
+                if (rw != null) {
+                    rw.close();
+                    rw = null;
+                }
+            } catch (InterruptedException e) {
+                logger.warn("could not close zookeeper", e);
+            }
+        }
+    }
+
+    /**
+     * Returns the shared session, replacing it if it is no longer alive.
+     */
+    private synchronized Zkrw getSession() throws IOException {
+        if (rw != null && !rw.isAlive()) {
+            logger.info("Replacing session that is no longer alive.");
+            try {
+                rw.close();
+            } catch (InterruptedException e) {
+                logger.warn("could not close zookeeper", e);
+            }
+            rw = null;
+        }
+        if (rw == null) {
+            rw = new Zkrw(hosts, sessionTimeOutMs);
+            rw.setKeepQueues(true);
+        }
+        return rw;
+    }
+
+    private void handle(Socket socket) {
+        try {
+            try {
+                // an idle client must not hold a connection forever
+                socket.setSoTimeout(requestTimeoutMs);
+                InputStream in = new BufferedInputStream(socket.getInputStream());
+                OutputStream socketOut = new BufferedOutputStream(socket.getOutputStream());
+
+                List<String> args = readRequest(in);
+
+                PrintStream out = new PrintStream(new EscapingOutputStream(socketOut), false, CHARSET);
+                ByteArrayOutputStream errBuffer = new ByteArrayOutputStream();
+                PrintStream err = new PrintStream(errBuffer, true, CHARSET);
+
+                int exitVal = process(args, out, err);
+
+                out.flush();
+                socketOut.write(ARG_DELIMITER);
+                new EscapingOutputStream(socketOut).write(errBuffer.toByteArray());
+                socketOut.write(ARG_DELIMITER);
+                socketOut.write((exitVal + "\n").getBytes(CHARSET));
+                socketOut.flush();
+            } finally {
+                socket.close();
+            }
+        } catch (SocketTimeoutException e) {
+            logger.warn("Dropped a client that sent no request within " + requestTimeoutMs + " ms");
+        } catch (IOException e) {
+            logger.warn("Failed handling daemon request", e);
+        }
+    }
+
+    private int process(List<String> args, PrintStream out, PrintStream err) {
+
+        String command = null;
+        String path = null;
+        String dataOrSec = null;
+        String priority = null;
+        String format = null;
+        try {
+            format = Zkrw.extractFormat(args, 0);
+            Zkrw.joinPaths(args, 0);
+            String[] argArray = args.toArray(new String[args.size()]);
+            command = Zkrw.parseArg(argArray, 0, "command", true, false);
+            path = Zkrw.parseArg(argArray, 1, "path", true, false);
+            dataOrSec = Zkrw.parseArg(argArray, 2, "dataOrSeconds", false, true);
+            priority = Zkrw.parseArg(argArray, 3, "priority", false, true);
+        } catch (Exception e) {
+            // any problem here means it will never succeed
+            logger.warn(e.getMessage());
+            err.println(e.getMessage());
+            return 1;
+        }
+
+        if (needsOwnProcess(command)) {
+            String msg = "'" + command + "' reads stdin or writes binary output, so it can not run in the daemon.";
+            logger.warn(msg);
+            err.println(msg);
+            return 1;
+        }
+
+        // the warm session is shared by all attempts and commands
+        Zkrw.Connector connector = new Zkrw.Connector() {
+
+            @Override
+            public Zkrw connect() throws IOException {
+                return getSession();
+            }
+
+            @Override
+            public void release(Zkrw rw) {
+                // keep the session open
+            }
+        };
+
+        return Zkrw.run(connector, settings, maxNumRetries, retryDelayMinInMS, retryDelayRangeInMS, command, path,
+                dataOrSec, priority, format, Stdin.unavailable("in the daemon"), out, err);
+    }
+
+    /**
+     * @return true if the command reads stdin or writes binary output
+     */
+    static boolean needsOwnProcess(String command) {
+        for (String ownProcessCommand : OWN_PROCESS_COMMANDS) {
+            if (ownProcessCommand.equalsIgnoreCase(command)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads the argument count followed by that many NUL terminated arguments.
+     */
+    static List<String> readRequest(InputStream in) throws IOException {
+        int argc = Integer.parseInt(readArg(in));
+        List<String> args = new ArrayList<String>(argc);
+        for (int i = 0; i < argc; i++) {
+            args.add(readArg(in));
+        }
+        return args;
+    }
+
+    private static String readArg(InputStream in) throws IOException {
+        ByteArrayOutputStream arg = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != ARG_DELIMITER) {
+            if (b < 0) {
+                throw new EOFException("Request ended in the middle of an argument.");
+            }
+            arg.write(b);
+        }
+        return arg.toString(CHARSET);
+    }
+
+    /**
+     * Escapes NUL and backslash the way printf %b reads them, so that the NUL
+     * delimiters of the response stay unambiguous. In UTF-8 neither byte is
+     * part of a multi-byte character.
+     */
+    static class EscapingOutputStream extends FilterOutputStream {
+
+        private static final byte[] ESCAPED_NUL = { ESCAPE, '0', '0', '0', '0' };
+
+        private static final byte[] ESCAPED_ESCAPE = { ESCAPE, ESCAPE };
+
+        EscapingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (b == 0) {
+                out.write(ESCAPED_NUL);
+            } else if (b == ESCAPE) {
+                out.write(ESCAPED_ESCAPE);
+            } else {
+                out.write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            int start = off;
+            for (int i = off; i < off + len; i++) {
+                if (b[i] == 0 || b[i] == ESCAPE) {
+                    out.write(b, start, i - start);
+                    write(b[i]);
+                    start = i + 1;
+                }
+            }
+            out.write(b, start, off + len - start);
+        }
+    }
+}
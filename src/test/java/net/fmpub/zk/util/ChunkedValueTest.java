@@ -0,0 +1,125 @@
+/**
+ * Project: Zkrw
+ * File: ChunkedValueTest.java
+ * Created on: Oct 17, 2026
+ * 2026 Federated Media, Inc.
+ */
+package net.fmpub.zk.util;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.util.*;
+
+import org.apache.log4j.PropertyConfigurator;
+import org.apache.zookeeper.*;
+import org.junit.*;
+
+public class ChunkedValueTest {
+
+	static {
+		PropertyConfigurator.configure("src/main/resources/log4j.test.properties");
+	}
+
+	static final String PATH = ZkTestServer.TEST_ROOT_NODE + "/large";
+
+	ZooKeeper zk;
+
+	@Before
+	public void init() throws Exception {
+		ConnectionGate gate = new ConnectionGate();
+		zk = new ZooKeeper(ZkTestServer.newChroot(), 3000, gate);
+		gate.awaitConnected(10000);
+	}
+
+	@After
+	public void close() throws InterruptedException {
+		zk.close();
+	}
+
+	private static byte[] value(int size, int seed) {
+		byte[] value = new byte[size];
+		new Random(seed).nextBytes(value);
+		return value;
+	}
+
+	private byte[] read(ChunkedValue chunked) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		chunked.read(PATH, out);
+		return out.toByteArray();
+	}
+
+	private List<String> chunkNames() throws Exception {
+		List<String> names = zk.getChildren(PATH, false);
+		Collections.sort(names);
+		return names;
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		ChunkedValue chunked = new ChunkedValue(zk, 1000, 3, ValueCodec.PLAIN);
+
+		byte[] value = value(10500, 1);
+		assertEquals(value.length, chunked.write(PATH, new ByteArrayInputStream(value)));
+		assertEquals(11, chunkNames().size());
+		assertArrayEquals(value, read(chunked));
+
+		// exact multiple of the chunk size, and empty
+		value = value(3000, 2);
+		chunked.write(PATH, new ByteArrayInputStream(value));
+		assertArrayEquals(value, read(chunked));
+		chunked.write(PATH, new ByteArrayInputStream(new byte[0]));
+		assertEquals(0, read(chunked).length);
+	}
+
+	@Test
+	public void testOldGenerationsDeleted() throws Exception {
+		ChunkedValue chunked = new ChunkedValue(zk, 1000, 8, ValueCodec.PLAIN);
+
+		chunked.write(PATH, new ByteArrayInputStream(value(2500, 1)));
+		List<String> first = chunkNames();
+		assertEquals(3, first.size());
+
+		// the previous generation is kept for reads in progress
+		chunked.write(PATH, new ByteArrayInputStream(value(1500, 2)));
+		assertEquals(5, chunkNames().size());
+		assertTrue(chunkNames().containsAll(first));
+
+		chunked.write(PATH, new ByteArrayInputStream(value(500, 3)));
+		List<String> names = chunkNames();
+		assertEquals(3, names.size());
+		names.retainAll(first);
+		assertTrue(names.isEmpty());
+	}
+
+	@Test
+	public void testCompressedChunks() throws Exception {
+		ChunkedValue chunked = new ChunkedValue(zk, 4096, 8, ValueCodec.forName("deflate", 0));
+
+		byte[] value = new byte[100000];
+		Arrays.fill(value, (byte) 'x');
+		chunked.write(PATH, new ByteArrayInputStream(value));
+		String chunk = ZkUtils.getChildPath(PATH, chunkNames().get(0));
+		assertTrue(zk.getData(chunk, false, null).length < 4096);
+		assertArrayEquals(value, read(chunked));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNotChunked() throws Exception {
+		zk.create(PATH, "plain".getBytes(), ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+		read(new ChunkedValue(zk, 1000, 8, ValueCodec.PLAIN));
+	}
+
+	@Test
+	public void testMissingChunk() throws Exception {
+		ChunkedValue chunked = new ChunkedValue(zk, 1000, 2, ValueCodec.PLAIN);
+		chunked.write(PATH, new ByteArrayInputStream(value(5000, 1)));
+		zk.delete(ZkUtils.getChildPath(PATH, chunkNames().get(3)), -1);
+		try {
+			read(chunked);
+			fail("expected NoNodeException");
+		} catch (KeeperException.NoNodeException e) {
+			// expected
+		}
+	}
+}
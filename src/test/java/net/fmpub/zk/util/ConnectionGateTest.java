@@ -0,0 +1,90 @@
+/**
+ * Project: Zkrw
+ * File: ConnectionGateTest.java
+ * Created on: Oct 17, 2026
+ * 2026 Federated Media, Inc.
+ */
+package net.fmpub.zk.util;
+
+import static org.junit.Assert.*;
+
+import org.apache.log4j.PropertyConfigurator;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher.Event.EventType;
+import org.apache.zookeeper.Watcher.Event.KeeperState;
+import org.junit.Test;
+
+public class ConnectionGateTest {
+
+	static {
+		PropertyConfigurator.configure("src/main/resources/log4j.test.properties");
+	}
+
+	ConnectionGate gate = new ConnectionGate();
+
+	private void send(KeeperState state) {
+		gate.process(new WatchedEvent(EventType.None, state, null));
+	}
+
+	@Test
+	public void testTimeout() throws Exception {
+		long start = System.currentTimeMillis();
+		try {
+			gate.awaitConnected(100);
+			fail("expected ConnectionLossException");
+		} catch (KeeperException.ConnectionLossException e) {
+			// expected
+		}
+		assertTrue(System.currentTimeMillis() - start >= 100);
+	}
+
+	@Test
+	public void testOpensOnConnect() throws Exception {
+		Thread connector = new Thread() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(100);
+				} catch (InterruptedException e) {
+					// connect now
+				}
+				send(KeeperState.SyncConnected);
+			}
+		};
+		connector.start();
+
+		long start = System.currentTimeMillis();
+		gate.awaitConnected(10000);
+		assertTrue(System.currentTimeMillis() - start < 5000);
+		assertTrue(gate.isConnected());
+		connector.join();
+
+		// closed again while disconnected
+		send(KeeperState.Disconnected);
+		assertFalse(gate.isConnected());
+		try {
+			gate.awaitConnected(10);
+			fail("expected ConnectionLossException");
+		} catch (KeeperException.ConnectionLossException e) {
+			// expected
+		}
+		send(KeeperState.SyncConnected);
+		gate.awaitConnected(10);
+	}
+
+	@Test
+	public void testExpired() throws Exception {
+		send(KeeperState.SyncConnected);
+		send(KeeperState.Expired);
+		// stays expired
+		send(KeeperState.SyncConnected);
+		assertTrue(gate.isExpired());
+		try {
+			gate.awaitConnected(10000);
+			fail("expected SessionExpiredException");
+		} catch (KeeperException.SessionExpiredException e) {
+			// expected
+		}
+	}
+}
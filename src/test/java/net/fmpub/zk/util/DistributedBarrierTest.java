@@ -0,0 +1,194 @@
+/**
+ * Project: Zkrw
+ * File: DistributedBarrierTest.java
+ * Created on: Oct 17, 2026
+ * 2026 Federated Media, Inc.
+ */
+package net.fmpub.zk.util;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.apache.log4j.PropertyConfigurator;
+import org.apache.zookeeper.*;
+import org.junit.*;
+
+public class DistributedBarrierTest {
+
+	static {
+		PropertyConfigurator.configure("src/main/resources/log4j.test.properties");
+	}
+
+	static final String PATH = ZkTestServer.TEST_ROOT_NODE + "/barrier";
+
+	static final int NUM_PARTIES = 3;
+
+	final List<ZooKeeper> sessions = new ArrayList<ZooKeeper>();
+	final List<ConnectionGate> gates = new ArrayList<ConnectionGate>();
+
+	ExecutorService executor;
+
+	String connectString;
+
+	@Before
+	public void init() throws Exception {
+		connectString = ZkTestServer.newChroot();
+		for (int i = 0; i < NUM_PARTIES; i++) {
+			ConnectionGate gate = new ConnectionGate();
+			sessions.add(new ZooKeeper(connectString, 3000, gate));
+			gate.awaitConnected(10000);
+			gates.add(gate);
+		}
+		sessions.get(0).create(PATH, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+		executor = Executors.newFixedThreadPool(NUM_PARTIES);
+	}
+
+	@After
+	public void close() throws InterruptedException {
+		executor.shutdownNow();
+		for (ZooKeeper zk : sessions) {
+			zk.close();
+		}
+	}
+
+	private DistributedBarrier barrier(int party) {
+		return new DistributedBarrier(sessions.get(party), gates.get(party), PATH, NUM_PARTIES);
+	}
+
+	private Future<Boolean> enter(final int party) {
+		return executor.submit(new Callable<Boolean>() {
+
+			public Boolean call() throws Exception {
+				return barrier(party).enter(10000);
+			}
+		});
+	}
+
+	@Test
+	public void testReleasedTogether() throws Exception {
+		Future<Boolean> first = enter(0);
+		Future<Boolean> second = enter(1);
+		try {
+			first.get(300, TimeUnit.MILLISECONDS);
+			fail("released before all parties entered");
+		} catch (TimeoutException e) {
+			// expected
+		}
+		assertFalse(second.isDone());
+
+		assertTrue(enter(2).get(10, TimeUnit.SECONDS));
+		assertTrue(first.get(10, TimeUnit.SECONDS));
+		assertTrue(second.get(10, TimeUnit.SECONDS));
+		assertEquals(1, barrier(0).getGeneration());
+
+		// every party deleted its child, and the barrier can be left the same way
+		assertTrue(sessions.get(0).getChildren(PATH, false).isEmpty());
+		List<Future<Boolean>> leaving = new ArrayList<Future<Boolean>>();
+		for (int party = 0; party < NUM_PARTIES; party++) {
+			final int p = party;
+			leaving.add(executor.submit(new Callable<Boolean>() {
+
+				public Boolean call() throws Exception {
+					return barrier(p).leave(10000);
+				}
+			}));
+		}
+		for (Future<Boolean> left : leaving) {
+			assertTrue(left.get(10, TimeUnit.SECONDS));
+		}
+		assertEquals(2, barrier(0).getGeneration());
+	}
+
+	@Test
+	public void testTimeout() throws Exception {
+		assertFalse(barrier(0).enter(200));
+		// not counted after timing out
+		assertTrue(sessions.get(0).getChildren(PATH, false).isEmpty());
+		assertEquals(0, barrier(0).getGeneration());
+	}
+
+	/**
+	 * A session that fails to read the children of the barrier, and to
+	 * delete while failDelete is set.
+	 */
+	static class FailingZooKeeper extends ZooKeeper {
+
+		volatile boolean failDelete = true;
+
+		FailingZooKeeper(String connectString, Watcher watcher) throws IOException {
+			super(connectString, 3000, watcher);
+		}
+
+		@Override
+		public List<String> getChildren(String path, Watcher watcher) throws KeeperException {
+			throw new KeeperException.OperationTimeoutException();
+		}
+
+		@Override
+		public void delete(String path, int version) throws KeeperException, InterruptedException {
+			if (failDelete) {
+				throw new KeeperException.ConnectionLossException();
+			}
+			super.delete(path, version);
+		}
+	}
+
+	/**
+	 * A failure that leaves the child of the party behind must not be
+	 * retried, since the retry would count the party twice.
+	 */
+	@Test
+	public void testNotRetriedWhileJoined() throws Exception {
+		ConnectionGate gate = new ConnectionGate();
+		FailingZooKeeper failing = new FailingZooKeeper(connectString, gate);
+		sessions.add(failing);
+		gate.awaitConnected(10000);
+		DistributedBarrier barrier = new DistributedBarrier(failing, gate, PATH, NUM_PARTIES);
+
+		try {
+			barrier.enter(10000);
+			fail("expected NonRetryableException");
+		} catch (NonRetryableException e) {
+			assertTrue(e.getCause() instanceof KeeperException.OperationTimeoutException);
+			assertFalse(RetryPolicy.isRetryable(e));
+		}
+		assertEquals(1, sessions.get(0).getChildren(PATH, false).size());
+
+		// retryable once the child is deleted
+		failing.failDelete = false;
+		try {
+			barrier.enter(10000);
+			fail("expected OperationTimeoutException");
+		} catch (KeeperException.OperationTimeoutException e) {
+			assertTrue(RetryPolicy.isRetryable(e));
+		}
+		assertEquals(1, sessions.get(0).getChildren(PATH, false).size());
+	}
+
+	@Test
+	public void testLatch() throws Exception {
+		final String latchPath = PATH + "/latch";
+		DistributedLatch latch = new DistributedLatch(sessions.get(0), gates.get(0), latchPath);
+		// the latch does not exist yet
+		assertFalse(latch.await(2, 200));
+
+		sessions.get(1).create(latchPath, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+		new DistributedLatch(sessions.get(1), gates.get(1), latchPath).countDown();
+		Future<Boolean> awaited = executor.submit(new Callable<Boolean>() {
+
+			public Boolean call() throws Exception {
+				return new DistributedLatch(sessions.get(2), gates.get(2), latchPath).await(2, 10000);
+			}
+		});
+		assertFalse(awaited.isDone());
+
+		// counts after the session that counted down is gone
+		sessions.get(1).close();
+		latch.countDown();
+		assertTrue(awaited.get(10, TimeUnit.SECONDS));
+		assertEquals(2, latch.getCount());
+	}
+}
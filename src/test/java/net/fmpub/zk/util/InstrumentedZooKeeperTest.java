@@ -0,0 +1,134 @@
+/**
+ * Project: Zkrw
+ * File: InstrumentedZooKeeperTest.java
+ * Created on: Oct 17, 2026
+ * 2026 Federated Media, Inc.
+ */
+package net.fmpub.zk.util;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.PropertyConfigurator;
+import org.apache.zookeeper.*;
+import org.apache.zookeeper.AsyncCallback.DataCallback;
+import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.Watcher.Event.KeeperState;
+import org.apache.zookeeper.ZooDefs.Ids;
+import org.apache.zookeeper.data.Stat;
+import org.junit.*;
+
+public class InstrumentedZooKeeperTest implements Watcher {
+
+	static {
+		PropertyConfigurator.configure("src/main/resources/log4j.test.properties");
+	}
+
+	ZkStats stats;
+	ZooKeeper zk;
+
+	CountDownLatch connected = new CountDownLatch(1);
+
+	@Before
+	public void init() throws Exception {
+		stats = new ZkStats();
+		zk = new InstrumentedZooKeeper(ZkTestServer.newChroot(), 3000, this,
+				stats);
+		assertTrue(connected.await(10, TimeUnit.SECONDS));
+	}
+
+	@After
+	public void close() throws InterruptedException {
+		zk.close();
+	}
+
+	public void process(WatchedEvent event) {
+		if (event.getState() == KeeperState.SyncConnected) {
+			connected.countDown();
+		}
+	}
+
+	@Test
+	public void testHistogram() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getPercentileMicros(50));
+
+		for (int i = 0; i < 98; i++) {
+			histogram.record(100);
+		}
+		histogram.record(5000);
+		histogram.record(9000);
+
+		assertEquals(100, histogram.getCount());
+		assertEquals(98 * 100 + 5000 + 9000, histogram.getTotalMicros());
+		assertEquals(9000, histogram.getMaxMicros());
+		// 100 is in the bucket from 64 to 127
+		assertEquals(127, histogram.getPercentileMicros(50));
+		assertEquals(8191, histogram.getPercentileMicros(99));
+		// capped at the max
+		assertEquals(9000, histogram.getPercentileMicros(100));
+
+		histogram.reset();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getMaxMicros());
+	}
+
+	@Test
+	public void testSyncOperations() throws Exception {
+		assertEquals(1, stats.getLatency(InstrumentedZooKeeper.CONNECT)
+				.getCount());
+
+		zk.create(ZkTestServer.TEST_ROOT_NODE + "/a", "a".getBytes(),
+				Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+		assertEquals("a", new String(zk.getData(ZkTestServer.TEST_ROOT_NODE
+				+ "/a", false, null)));
+		assertNull(zk.exists(ZkTestServer.TEST_ROOT_NODE + "/b", false));
+		try {
+			zk.getData(ZkTestServer.TEST_ROOT_NODE + "/b", false, null);
+			fail("expected NoNodeException");
+		} catch (KeeperException.NoNodeException e) {
+			// expected
+		}
+
+		assertEquals(1, stats.getLatency("create").getCount());
+		assertEquals(2, stats.getLatency("getData").getCount());
+		// the boolean watch overload is counted once
+		assertEquals(1, stats.getLatency("exists").getCount());
+		assertEquals(1, stats.getErrors());
+		assertEquals(1, stats.getErrorCount(Code.NONODE));
+		assertEquals(5, stats.getOperations());
+	}
+
+	@Test
+	public void testAsyncOperations() throws Exception {
+		final CountDownLatch done = new CountDownLatch(2);
+		final int[] codes = new int[2];
+		DataCallback callback = new DataCallback() {
+			public void processResult(int rc, String path, Object ctx,
+					byte[] data, Stat stat) {
+				codes[(Integer) ctx] = rc;
+				done.countDown();
+			}
+		};
+		zk.getData(ZkTestServer.TEST_ROOT_NODE, false, callback, 0);
+		zk.getData(ZkTestServer.TEST_ROOT_NODE + "/b", false, callback, 1);
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+
+		// the callbacks still get the result codes
+		assertEquals(Code.OK.intValue(), codes[0]);
+		assertEquals(Code.NONODE.intValue(), codes[1]);
+
+		assertEquals(2, stats.getLatency("getData").getCount());
+		assertEquals(1, stats.getErrorCount(Code.NONODE));
+
+		String summary = stats.getSummary();
+		assertTrue(summary, summary.startsWith("ops=3 retries=0 errors=1 [NONODE=1]"));
+		assertTrue(summary, summary.contains("; getData n=2 "));
+
+		stats.reset();
+		assertEquals(0, stats.getOperations());
+		assertEquals(0, stats.getErrors());
+	}
+}
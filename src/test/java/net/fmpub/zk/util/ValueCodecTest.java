@@ -0,0 +1,103 @@
+/**
+ * Project: Zkrw
+ * File: ValueCodecTest.java
+ * Created on: Oct 17, 2026
+ * 2026 Federated Media, Inc.
+ */
+package net.fmpub.zk.util;
+
+import static org.junit.Assert.*;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.log4j.PropertyConfigurator;
+import org.junit.Test;
+
+public class ValueCodecTest {
+
+	static {
+		PropertyConfigurator.configure("src/main/resources/log4j.test.properties");
+	}
+
+	private static byte[] json(int numEntries) {
+		StringBuilder json = new StringBuilder("{");
+		for (int i = 0; i < numEntries; i++) {
+			json.append("\"key").append(i).append("\":\"value").append(i % 7).append("\",");
+		}
+		return json.append("\"end\":true}").toString().getBytes();
+	}
+
+	private static void assertRoundTrip(ValueCodec codec) {
+		byte[] value = json(1000);
+		byte[] encoded = codec.encode(value);
+		assertTrue(ValueCodec.isEncoded(encoded));
+		assertTrue(codec + " should compress", encoded.length < value.length / 4);
+		assertArrayEquals(value, ValueCodec.decode(encoded));
+	}
+
+	@Test
+	public void testRoundTrip() {
+		assertRoundTrip(ValueCodec.forName("gzip", 0));
+		assertRoundTrip(ValueCodec.forName("deflate", 0));
+	}
+
+	@Test
+	public void testPlain() {
+		byte[] value = json(1000);
+		assertSame(value, ValueCodec.forName(null, 0).encode(value));
+		assertSame(value, ValueCodec.forName("plain", 0).encode(value));
+		assertSame(value, ValueCodec.decode(value));
+		assertNull(ValueCodec.decode(null));
+		assertEquals(0, ValueCodec.decode(new byte[0]).length);
+	}
+
+	@Test
+	public void testSmallValuesStayPlain() {
+		byte[] value = json(1);
+		ValueCodec codec = ValueCodec.forName("gzip", value.length + 1);
+		assertSame(value, codec.encode(value));
+
+		// larger when compressed
+		byte[] random = new byte[2048];
+		new Random(1).nextBytes(random);
+		random[0] = 'x';
+		assertSame(random, ValueCodec.forName("deflate", 0).encode(random));
+	}
+
+	@Test
+	public void testCorruptValuesReturnedAsIs() {
+		byte[] encoded = ValueCodec.forName("gzip", 0).encode(json(100));
+		byte[] truncated = Arrays.copyOf(encoded, encoded.length / 2);
+		assertSame(truncated, ValueCodec.decode(truncated));
+
+		byte[] unknownCodec = encoded.clone();
+		unknownCodec[3] = (byte) 200;
+		assertSame(unknownCodec, ValueCodec.decode(unknownCodec));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownName() {
+		ValueCodec.forName("lzma", 0);
+	}
+
+	/**
+	 * Id 0 is the header-less plain value.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testPlainIdReserved() {
+		new ValueCodec.CompressingCodec("none", 0, 0) {
+
+			@Override
+			protected void compress(byte[] value, OutputStream out) {
+			}
+
+			@Override
+			protected InputStream decompress(InputStream in) {
+				return in;
+			}
+		};
+	}
+}
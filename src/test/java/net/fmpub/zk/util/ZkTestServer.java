@@ -0,0 +1,157 @@
+/**
+ * Project: Zkrw
+ * File: ZkTestServer.java
+ * Created on: Oct 17, 2026
+ * 2026 Federated Media, Inc.
+ */
+package net.fmpub.zk.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+import org.apache.zookeeper.*;
+import org.apache.zookeeper.Watcher.Event.KeeperState;
+import org.apache.zookeeper.ZooDefs.Ids;
+import org.apache.zookeeper.server.NIOServerCnxn;
+import org.apache.zookeeper.server.ZooKeeperServer;
+
+/**
+ * In-process ZooKeeper server for the tests, on an ephemeral loopback port
+ * with a temporary data directory. It is started on first use and stopped
+ * when the JVM exits.
+ * <p>
+ * Each test gets its own chroot from newChroot(), so tests never see each
+ * other's nodes and nothing has to be reset between them.
+ * <p>
+ * Set the system property zkrw.test.servers (e.g. 127.0.0.1:2181) to run the
+ * tests against an external server instead, still with a chroot per test.
+ */
+public class ZkTestServer {
+
+	private static final Logger LOGGER = Logger.getLogger(ZkTestServer.class);
+
+	public static final String SERVERS_PROPERTY = "zkrw.test.servers";
+
+	/**
+	 * Node created in every chroot, where the tests keep their nodes.
+	 */
+	public static final String TEST_ROOT_NODE = "/DS-test";
+
+	private static final String CHROOT_PREFIX = "/zkrw-test-";
+
+	private static final int TICK_TIME = 2000;
+
+	private static final int CONNECT_TIMEOUT_MS = 10000;
+
+	private static final AtomicInteger chrootCount = new AtomicInteger();
+
+	private static String servers;
+
+	private static String chrootBase;
+
+	private ZkTestServer() {
+	}
+
+	/**
+	 * @return the host:port list of the server, starting it if needed
+	 */
+	public static synchronized String getServers() throws IOException,
+			InterruptedException {
+		if (servers == null) {
+			String external = System.getProperty(SERVERS_PROPERTY);
+			if (external != null && external.length() > 0) {
+				servers = external;
+				// separate runs against the same server
+				chrootBase = CHROOT_PREFIX + System.currentTimeMillis() + "-";
+			} else {
+				servers = start();
+				chrootBase = CHROOT_PREFIX;
+			}
+		}
+		return servers;
+	}
+
+	/**
+	 * Creates a new empty chroot containing TEST_ROOT_NODE.
+	 *
+	 * @return a connect string for the chroot
+	 */
+	public static String newChroot() throws IOException, InterruptedException,
+			KeeperException {
+		String hosts = getServers();
+		String chroot = chrootBase + chrootCount.incrementAndGet();
+
+		ZooKeeper zk = connect(hosts);
+		try {
+			zk.create(chroot, new byte[0], Ids.OPEN_ACL_UNSAFE,
+					CreateMode.PERSISTENT);
+			zk.create(chroot + TEST_ROOT_NODE, new byte[0],
+					Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+		} finally {
+			zk.close();
+		}
+		return hosts + chroot;
+	}
+
+	/**
+	 * Opens a session and waits until it is connected.
+	 */
+	public static ZooKeeper connect(String connectString) throws IOException,
+			InterruptedException {
+		final CountDownLatch connected = new CountDownLatch(1);
+		ZooKeeper zk = new ZooKeeper(connectString, TICK_TIME * 2,
+				new Watcher() {
+					public void process(WatchedEvent event) {
+						if (event.getState() == KeeperState.SyncConnected) {
+							connected.countDown();
+						}
+					}
+				});
+		if (!connected.await(CONNECT_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+			zk.close();
+			throw new IOException("Could not connect to " + connectString);
+		}
+		return zk;
+	}
+
+	private static String start() throws IOException, InterruptedException {
+		final File dataDir = File.createTempFile("zkrw-test", "");
+		if (!dataDir.delete() || !dataDir.mkdir()) {
+			throw new IOException("Could not create " + dataDir);
+		}
+
+		final ZooKeeperServer server = new ZooKeeperServer(dataDir, dataDir,
+				TICK_TIME);
+		// no limit on connections per client address
+		final NIOServerCnxn.Factory factory = new NIOServerCnxn.Factory(
+				new InetSocketAddress("127.0.0.1", 0), 0);
+		factory.startup(server);
+
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				factory.shutdown();
+				delete(dataDir);
+			}
+		});
+
+		String hosts = "127.0.0.1:" + factory.getLocalPort();
+		LOGGER.info("Started test server on " + hosts + " in " + dataDir);
+		return hosts;
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+}
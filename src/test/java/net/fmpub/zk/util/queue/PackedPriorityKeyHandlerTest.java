@@ -0,0 +1,123 @@
+/**
+ * Project: Zkrw
+ * File: PackedPriorityKeyHandlerTest.java
+ * Created on: Oct 17, 2026
+ * 2026 Federated Media, Inc.
+ */
+package net.fmpub.zk.util.queue;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.apache.log4j.PropertyConfigurator;
+import org.junit.*;
+
+public class PackedPriorityKeyHandlerTest {
+
+	PackedPriorityKeyHandler keyHandler;
+	SimplePriorityKeyHandler simpleKeyHandler;
+	Integer priorityNum;
+	
+	// assumes the priority part is length 3
+	String childNamePrefix;
+	String childName;
+	
+	@Before
+	public void init() {
+	    PropertyConfigurator.configure("src/main/resources/log4j.test.properties");
+	    
+		keyHandler = new PackedPriorityKeyHandler();
+		simpleKeyHandler = new SimplePriorityKeyHandler();
+		priorityNum = 1;
+		
+		// assumes the priority part is length 3
+		childNamePrefix = SimplePriorityKeyHandler.PREFIX + "00" + priorityNum + SimplePriorityKeyHandler.CHILD_NAME_DELIM;
+		childName = childNamePrefix + "0000001";
+	}
+	
+	@Test
+	public void testGenerateChildNamePrefix() {
+		
+		assertEquals(childNamePrefix, keyHandler.generateChildNamePrefix(1));
+		
+		for (int priority = SimplePriorityKeyHandler.MIN_PRIORITY; priority <= SimplePriorityKeyHandler.MAX_PRIORITY; priority++) {
+			assertEquals(simpleKeyHandler.generateChildNamePrefix(priority), keyHandler.generateChildNamePrefix(priority));
+		}
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testGenerateChildNamePrefixTooLow() {
+		keyHandler.generateChildNamePrefix(-1);
+	}
+
+	@Test
+	public void testGenerateKeyString() {
+		
+		long key = keyHandler.generateKey(childName);
+		assertEquals(1, PackedPriorityKeyHandler.getPriority(key));
+		assertEquals(1L, PackedPriorityKeyHandler.getSequence(key));
+		
+		key = keyHandler.generateKey(SimplePriorityKeyHandler.PREFIX + "999" + SimplePriorityKeyHandler.CHILD_NAME_DELIM + "4294967295");
+		assertEquals(999, PackedPriorityKeyHandler.getPriority(key));
+		assertEquals(4294967295L, PackedPriorityKeyHandler.getSequence(key));
+		
+		assertEquals(keyHandler.generateKey(childName),keyHandler.generateKey(childName,null));
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testGenerateKeyInvalid() {
+		keyHandler.generateKey("020" + SimplePriorityKeyHandler.CHILD_NAME_DELIM + "000000002");
+	}
+
+	@Test
+	public void testHasValidName() {
+		assertTrue(keyHandler.hasValidName(childName));
+		
+		assertTrue(keyHandler.hasValidName(SimplePriorityKeyHandler.PREFIX + "020" + SimplePriorityKeyHandler.CHILD_NAME_DELIM + "000000002"));
+		assertTrue(keyHandler.hasValidName(SimplePriorityKeyHandler.PREFIX + "999" + SimplePriorityKeyHandler.CHILD_NAME_DELIM + "000000002"));
+		assertTrue(keyHandler.hasValidName("Q-001-0000000002"));
+		
+		assertFalse(keyHandler.hasValidName(null));
+		assertFalse(keyHandler.hasValidName(""));
+		assertFalse(keyHandler.hasValidName(SimplePriorityKeyHandler.PREFIX + "-1" + SimplePriorityKeyHandler.CHILD_NAME_DELIM + "000000002"));
+		assertFalse(keyHandler.hasValidName("020" + SimplePriorityKeyHandler.CHILD_NAME_DELIM + "000000002"));
+		assertFalse(keyHandler.hasValidName(SimplePriorityKeyHandler.PREFIX + "999000000002"));
+		assertFalse(keyHandler.hasValidName(SimplePriorityKeyHandler.PREFIX + "001" + SimplePriorityKeyHandler.CHILD_NAME_DELIM));
+		assertFalse(keyHandler.hasValidName(SimplePriorityKeyHandler.PREFIX + "001" + SimplePriorityKeyHandler.CHILD_NAME_DELIM + "00000a0002"));
+		
+		// does not fit in the low 32 bits
+		assertFalse(keyHandler.hasValidName(SimplePriorityKeyHandler.PREFIX + "001" + SimplePriorityKeyHandler.CHILD_NAME_DELIM + "4294967296"));
+	}
+
+	@Test
+	public void testGetPriority() {
+		assertEquals(priorityNum,keyHandler.getPriority(childName));
+		assertEquals(Integer.valueOf(20),keyHandler.getPriority("/DS-test/test-queue/" + SimplePriorityKeyHandler.PREFIX + "020" + SimplePriorityKeyHandler.CHILD_NAME_DELIM + "000000002"));
+		
+		assertNull(keyHandler.getPriority(SimplePriorityKeyHandler.PREFIX + "-1" + SimplePriorityKeyHandler.CHILD_NAME_DELIM + "000000002"));
+		assertNull(keyHandler.getPriority("/DS-test/test-queue"));
+	}
+
+	@Test
+	public void testOrderChildNames() {
+		List<String> childNames = new ArrayList<String>();
+		Random rand = new Random(17);
+		for (int seq = 0; seq < 10000; seq++) {
+			childNames.add(keyHandler.generateChildNamePrefix(rand.nextInt(5)) + String.format("%010d", seq));
+		}
+		childNames.add("not-a-queue-item");
+		Collections.shuffle(childNames, rand);
+		
+		// the same order as SimplePriorityKeyHandler keys
+		List<String> expected = new ArrayList<String>();
+		for (String name : childNames) {
+			if (simpleKeyHandler.hasValidName(name)) {
+				expected.add(simpleKeyHandler.generateKey(name));
+			}
+		}
+		Collections.sort(expected);
+		
+		assertEquals(expected, keyHandler.orderChildNames(childNames));
+	}
+}
@@ -9,8 +9,15 @@ package net.fmpub.zk.util.queue;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
+import net.fmpub.zk.util.InFlightWindow;
+import net.fmpub.zk.util.ZkTestServer;
 import net.fmpub.zkrw.Zkrw;
 
 import org.apache.log4j.PropertyConfigurator;
@@ -28,7 +35,10 @@ public class PriorityDistributedQueueTest implements Watcher {
         PropertyConfigurator.configure("src/main/resources/log4j.test.properties");
     }
     
-	public static final String ZK_SERVERS = "127.0.0.1:2181";
+	/**
+	 * Connect string for this test's chroot on the test server.
+	 */
+	String zkServers;
 	
 	SimplePriorityKeyHandler keyHandler;
 	PriorityDistributedQueue<String, Integer> queueStrInt;
@@ -51,10 +61,11 @@ public class PriorityDistributedQueueTest implements Watcher {
 	    
 	    
 		try {
-			zk = new ZooKeeper(ZK_SERVERS, 3000, this);
+			zkServers = ZkTestServer.newChroot();
+			zk = new ZooKeeper(zkServers, 3000, this);
 			
 			// delete queue node and all children
-			zkApp = new Zkrw(ZK_SERVERS);
+			zkApp = new Zkrw(zkServers);
 			if(zkApp.exists(TEST_ZK_Q_NODE).equals(Zkrw.TRUE_RETURN_VAL)) {
 				System.out.println("Deleting queue node: " + TEST_ZK_Q_NODE);
 				zkApp.deleteAll(TEST_ZK_Q_NODE);
@@ -90,6 +101,20 @@ public class PriorityDistributedQueueTest implements Watcher {
 		
 	}
 	
+	/**
+	 * Wait until the watch events already queued on the session are
+	 * delivered: the sync callback runs on the event thread after them.
+	 */
+	private void awaitEvents() throws InterruptedException {
+		final CountDownLatch synced = new CountDownLatch(1);
+		zk.sync(TEST_ZK_Q_NODE, new AsyncCallback.VoidCallback() {
+			public void processResult(int rc, String path, Object ctx) {
+				synced.countDown();
+			}
+		}, null);
+		assertTrue(synced.await(10, TimeUnit.SECONDS));
+	}
+
 	private void handleKeeperException(KeeperException e) {
 		if(e.code() == KeeperException.Code.CONNECTIONLOSS) {
 			System.err.println("Proceeding after connection loss...\n");
@@ -147,6 +172,200 @@ public class PriorityDistributedQueueTest implements Watcher {
 		}
 	}
 
+	@Test
+	public void testPollWakesOnOffer() {
+		try {
+			String val = "offer-value-6";
+
+			Thread offerThread = new Thread(new OfferRunnable<String, Integer>(queueStrInt,val,1,1));
+			offerThread.start();
+
+			// the poll should return as soon as the offer lands, not at the end of the wait
+			long start = System.currentTimeMillis();
+			assertEquals(val,new String( queueStrInt.poll(10)));
+			long elapsed = System.currentTimeMillis() - start;
+			System.out.println("poll(int) returned after " + elapsed + " ms");
+			assertTrue(elapsed < 3000);
+
+			offerThread.join();
+
+			// times out on an empty queue
+			start = System.currentTimeMillis();
+			assertNull(queueStrInt.poll(1));
+			assertTrue(System.currentTimeMillis() - start >= 1000);
+
+		} catch (KeeperException e) {
+
+			handleKeeperException(e);
+		} catch (InterruptedException e) {
+
+			e.printStackTrace();
+			fail();
+		}
+	}
+
+	@Test
+	public void testPollBatch() {
+		try {
+			assertTrue(queueStrInt.pollBatch(5, 0).isEmpty());
+
+			assertTrue(queueStrInt.offer("batch-3".getBytes(), 3));
+			assertTrue(queueStrInt.offer("batch-1a".getBytes(), 1));
+			assertTrue(queueStrInt.offer("batch-2".getBytes(), 2));
+			assertTrue(queueStrInt.offer("batch-1b".getBytes(), 1));
+
+			List<byte[]> values = queueStrInt.pollBatch(3, 0);
+			assertEquals(3, values.size());
+			assertEquals("batch-1a", new String(values.get(0)));
+			assertEquals("batch-1b", new String(values.get(1)));
+			assertEquals("batch-2", new String(values.get(2)));
+
+			// returns fewer than max when the queue runs out
+			values = queueStrInt.pollBatch(3, 0);
+			assertEquals(1, values.size());
+			assertEquals("batch-3", new String(values.get(0)));
+
+			assertNull(queueStrInt.poll());
+
+		} catch (KeeperException e) {
+
+			handleKeeperException(e);
+		} catch (InterruptedException e) {
+
+			e.printStackTrace();
+			fail();
+		}
+	}
+
+	/**
+	 * More elements than requests in flight at a time.
+	 */
+	@Test
+	public void testPollBatchLarge() {
+		try {
+			int numElements = InFlightWindow.DEFAULT_MAX_IN_FLIGHT + 44;
+			List<byte[]> data = new ArrayList<byte[]>();
+			for (int i = 0; i < numElements; i++) {
+				data.add(("large-" + i).getBytes());
+			}
+			queueStrInt.offerAll(data, 2);
+
+			List<byte[]> values = queueStrInt.pollBatch(numElements + 10, 0);
+			assertEquals(numElements, values.size());
+			for (int i = 0; i < numElements; i++) {
+				assertEquals("large-" + i, new String(values.get(i)));
+			}
+			assertNull(queueStrInt.poll());
+
+		} catch (KeeperException e) {
+
+			handleKeeperException(e);
+		} catch (InterruptedException e) {
+
+			e.printStackTrace();
+			fail();
+		}
+	}
+
+	@Test
+	public void testOfferAll() {
+		try {
+			List<byte[]> values = new ArrayList<byte[]>();
+			for (int i = 0; i < 500; i++) {
+				values.add(("all-" + i).getBytes());
+			}
+
+			List<String> names = queueStrInt.offerAll(values, 2);
+			assertEquals(500, names.size());
+			assertTrue(names.get(0).startsWith(TEST_ZK_Q_NODE + "/" + SimplePriorityKeyHandler.PREFIX));
+
+			// a higher priority goes first
+			names = queueStrInt.offerAll(Arrays.asList("all-high".getBytes(), "all-low".getBytes()), Arrays.asList(1, 3));
+			assertEquals(2, names.size());
+
+			assertEquals("all-high", new String(queueStrInt.poll()));
+			for (int i = 0; i < 500; i++) {
+				assertEquals("all-" + i, new String(queueStrInt.poll()));
+			}
+			assertEquals("all-low", new String(queueStrInt.poll()));
+			assertNull(queueStrInt.poll());
+
+		} catch (KeeperException e) {
+
+			handleKeeperException(e);
+		} catch (InterruptedException e) {
+
+			e.printStackTrace();
+			fail();
+		}
+	}
+
+	@Test
+	public void testLocalIndex() {
+		try {
+			PriorityDistributedQueue<String, Integer> indexed = new PriorityDistributedQueue<String, Integer>(zk,TEST_ZK_Q_NODE,keyHandler);
+			indexed.setLocalIndex(true);
+			assertTrue(indexed.hasLocalIndex());
+
+			assertNull(indexed.poll());
+
+			assertTrue(queueStrInt.offer("index-2a".getBytes(), 2));
+			assertTrue(queueStrInt.offer("index-2b".getBytes(), 2));
+			assertTrue(queueStrInt.offer("index-2c".getBytes(), 2));
+			assertEquals("index-2a", new String(indexed.poll()));
+
+			// changes made by other clients after the index was built
+			assertTrue(queueStrInt.offer("index-1".getBytes(), 1));
+			awaitEvents();
+			assertEquals("index-1", new String(indexed.poll()));
+			assertEquals("index-2b", new String(queueStrInt.poll()));
+			assertEquals("index-2c", new String(indexed.poll()));
+
+			assertNull(indexed.poll());
+
+			// wakes on an offer while waiting
+			Thread offerThread = new Thread(new OfferRunnable<String, Integer>(queueStrInt,"index-3",3,1));
+			offerThread.start();
+			assertEquals("index-3", new String(indexed.poll(10)));
+			offerThread.join();
+
+			assertTrue(indexed.pollBatch(5, 0).isEmpty());
+
+		} catch (KeeperException e) {
+
+			handleKeeperException(e);
+		} catch (InterruptedException e) {
+
+			e.printStackTrace();
+			fail();
+		}
+	}
+
+	@Test
+	public void testPackedKeys() {
+		try {
+			PriorityDistributedQueue<Long, Integer> packed = new PriorityDistributedQueue<Long, Integer>(zk,TEST_ZK_Q_NODE,new PackedPriorityKeyHandler());
+
+			assertTrue(packed.offer("packed-2".getBytes(), 2));
+			assertTrue(queueStrInt.offer("packed-0".getBytes(), 0));
+			assertTrue(packed.offer("packed-1".getBytes(), 1));
+
+			assertEquals("packed-0", new String(packed.peek()));
+			assertEquals("packed-0", new String(packed.poll()));
+			assertEquals("packed-1", new String(queueStrInt.poll()));
+			assertEquals("packed-2", new String(packed.poll()));
+			assertNull(packed.poll());
+
+		} catch (KeeperException e) {
+
+			handleKeeperException(e);
+		} catch (InterruptedException e) {
+
+			e.printStackTrace();
+			fail();
+		}
+	}
+
 	@Test
 	public void testPeek() {
 		try {
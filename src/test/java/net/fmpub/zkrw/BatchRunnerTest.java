@@ -0,0 +1,151 @@
+/**
+ * Project: Zkrw
+ * File: BatchRunnerTest.java
+ * Created on: Oct 17, 2026
+ * 2026 Federated Media, Inc.
+ */
+package net.fmpub.zkrw;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+
+import net.fmpub.zk.util.ZkTestServer;
+
+import org.apache.log4j.PropertyConfigurator;
+import org.junit.*;
+
+public class BatchRunnerTest {
+
+    static {
+        PropertyConfigurator.configure("src/main/resources/log4j.test.properties");
+    }
+
+    static final String BASE = ZkTestServer.TEST_ROOT_NODE + "/batch";
+
+    String zkServers;
+
+    Zkrw app;
+
+    @Before
+    public void setUp() throws Exception {
+        zkServers = ZkTestServer.newChroot();
+        app = new Zkrw(zkServers);
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        app.close();
+    }
+
+    private String[] run(String script) throws Exception {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(buffer);
+        new BatchRunner(app, 16, out).run(new BufferedReader(new StringReader(script)));
+        return buffer.toString().split(Zkrw.NEWLINE);
+    }
+
+    @Test
+    public void testResultsInInputOrder() throws Exception {
+        String[] lines = run("createIfNotExists " + BASE + " 0\n"
+                + "# a comment\n"
+                + "create " + BASE + "/a 1\n"
+                + "get " + BASE + "/a\n"
+                + "\n"
+                + "get " + BASE + "/missing\n"
+                + "createOrSetWithParents\t" + BASE + "/b/c\t two words \n"
+                + "get\t" + BASE + "/b/c\n"
+                + "getChildren " + BASE + "\n");
+
+        assertEquals(7, lines.length);
+        assertEquals("1\t0\t", lines[0]);
+        assertEquals("3\t0\t", lines[1]);
+        assertEquals("4\t0\t1", lines[2]);
+        assertTrue(lines[3], lines[3].startsWith("6\t1\t"));
+        assertEquals("7\t0\t", lines[4]);
+        assertEquals("8\t0\t two words ", lines[5]);
+        // a line per child, escaped to stay on one line
+        assertTrue(lines[6], lines[6].startsWith("9\t0\t" + BASE + "\t two words \\n" + BASE + "/"));
+    }
+
+    @Test
+    public void testEscape() throws Exception {
+        assertEquals("plain", BatchRunner.escape("plain"));
+        assertEquals("a\\nb\\rc\\\\n", BatchRunner.escape("a\nb\rc\\n"));
+
+        app.createIfNotExists(BASE, "0");
+        app.create(BASE + "/multi", "line 1\nline 2");
+        String[] lines = run("get " + BASE + "/multi\n");
+        assertEquals(1, lines.length);
+        assertEquals("1\t0\tline 1\\nline 2", lines[0]);
+    }
+
+    /**
+     * A command that reads stdin would take the rest of the batch as its
+     * input, so it fails on its own line and the next commands still run.
+     */
+    @Test
+    public void testOwnProcessCommandsRejected() throws Exception {
+        String[] lines = run("createIfNotExists " + BASE + " 0\n"
+                + "setLarge " + BASE + "/large\n"
+                + "create " + BASE + "/a 1\n"
+                + "QADDBATCH " + BASE + "/queue -\n"
+                + "getLarge " + BASE + "/large\n"
+                + "get " + BASE + "/a\n");
+
+        assertEquals(6, lines.length);
+        assertEquals("1\t0\t", lines[0]);
+        assertTrue(lines[1], lines[1].startsWith("2\t1\t"));
+        assertTrue(lines[1], lines[1].contains("can not run in a batch"));
+        assertEquals("3\t0\t", lines[2]);
+        assertTrue(lines[3], lines[3].startsWith("4\t1\t"));
+        assertTrue(lines[4], lines[4].startsWith("5\t1\t"));
+        assertEquals("6\t0\t1", lines[5]);
+        assertEquals(Zkrw.FALSE_RETURN_VAL, app.exists(BASE + "/large"));
+    }
+
+    /**
+     * A command on a parent path waits for every earlier command below it,
+     * not only the first one, while the earlier results are being printed.
+     */
+    @Test
+    public void testOverlappingPathsWait() throws Exception {
+        final String lastQueue = BASE + "/last";
+        app.createIfNotExists(BASE, "0");
+        StringBuilder script = new StringBuilder();
+        for (int i = 0; i < 6; i++) {
+            script.append("qPoll " + BASE + "/empty" + i + " 1\n");
+        }
+        script.append("qPoll " + lastQueue + " 5\n");
+        script.append("deleteAll " + BASE + "\n");
+
+        Thread adder = new Thread() {
+            public void run() {
+                try {
+                    Thread.sleep(2000);
+                    Zkrw other = new Zkrw(zkServers);
+                    try {
+                        other.queueAdd(lastQueue, "late", 1);
+                    } finally {
+                        other.close();
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+        adder.start();
+
+        // the empty queues give up first, the last one gets an item after them
+        String[] lines = run(script.toString());
+        adder.join();
+
+        assertEquals(8, lines.length);
+        for (int i = 0; i < 6; i++) {
+            assertTrue(lines[i], lines[i].startsWith((i + 1) + "\t1\t"));
+        }
+        assertEquals("7\t0\tlate", lines[6]);
+        assertEquals("8\t0\t", lines[7]);
+        assertEquals(Zkrw.FALSE_RETURN_VAL, app.exists(BASE));
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * Project: Zkrw
+ * File: NdjsonNodeWriterTest.java
+ * Created on: Oct 17, 2026
+ * 2026 Federated Media, Inc.
+ */
+package net.fmpub.zkrw;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.util.*;
+
+import net.fmpub.zk.util.ValueCodec;
+
+import org.apache.zookeeper.data.Stat;
+import org.junit.Test;
+
+public class NdjsonNodeWriterTest {
+
+    private static String write(String path, byte[] data) throws Exception {
+        Stat stat = new Stat(1, 2, 1000, 2000, 3, 0, 0, 0, data == null ? 0 : data.length, 4, 5);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        NdjsonNodeWriter writer = new NdjsonNodeWriter(out);
+        writer.node(path, data, stat);
+        writer.flush();
+        return out.toString("UTF-8");
+    }
+
+    private static String base64(byte[] bytes) {
+        StringBuilder out = new StringBuilder();
+        NdjsonNodeWriter.appendBase64(out, bytes);
+        return out.toString();
+    }
+
+    @Test
+    public void testRecord() throws Exception {
+        assertEquals("{\"path\":\"/a\",\"value\":\"v\",\"ctime\":1000,\"mtime\":2000,\"version\":3,\"dataLength\":1,\"numChildren\":4}\n",
+                write("/a", "v".getBytes()));
+        assertTrue(write("/a", null).contains(",\"value\":null,"));
+    }
+
+    @Test
+    public void testEscapes() throws Exception {
+        String line = write("/a\"b", "tab\there\nnew \"quoted\" back\\slash \u0001 \u2028 caf\u00e9".getBytes("UTF-8"));
+        assertTrue(line, line.startsWith("{\"path\":\"/a\\\"b\",\"value\":\"tab\\there\\nnew \\\"quoted\\\" back\\\\slash \\u0001 \\u2028 caf\u00e9\","));
+        // one record per line
+        assertEquals(line.length() - 1, line.indexOf('\n'));
+    }
+
+    @Test
+    public void testBinaryValue() throws Exception {
+        byte[] binary = { (byte) 0xff, 0, (byte) 0xfe };
+        assertTrue(write("/a", binary).contains(",\"valueBase64\":\"/wD+\","));
+    }
+
+    @Test
+    public void testCompressedValue() throws Exception {
+        byte[] value = new byte[2000];
+        Arrays.fill(value, (byte) 'x');
+        byte[] encoded = ValueCodec.forName("gzip", 0).encode(value);
+        assertTrue(write("/a", encoded).contains(",\"value\":\"" + new String(value) + "\","));
+    }
+
+    @Test
+    public void testBase64() {
+        // RFC 4648 test vectors
+        assertEquals("", base64("".getBytes()));
+        assertEquals("Zg==", base64("f".getBytes()));
+        assertEquals("Zm8=", base64("fo".getBytes()));
+        assertEquals("Zm9v", base64("foo".getBytes()));
+        assertEquals("Zm9vYg==", base64("foob".getBytes()));
+        assertEquals("Zm9vYmE=", base64("fooba".getBytes()));
+        assertEquals("Zm9vYmFy", base64("foobar".getBytes()));
+    }
+
+    @Test
+    public void testExtractFormat() {
+        List<String> args = new ArrayList<String>(Arrays.asList("getAll", "--format=ndjson", "/a"));
+        assertEquals(Zkrw.FORMAT_NDJSON, Zkrw.extractFormat(args, 0));
+        assertEquals(Arrays.asList("getAll", "/a"), args);
+        assertEquals(Zkrw.FORMAT_TEXT, Zkrw.extractFormat(args, 0));
+
+        // after the connection settings
+        args = new ArrayList<String>(Arrays.asList("host", "", "", "", "", "MGET", "--format=text", "/a", "/b"));
+        assertEquals(Zkrw.FORMAT_TEXT, Zkrw.extractFormat(args, 5));
+        assertEquals(Arrays.asList("host", "", "", "", "", "MGET", "/a", "/b"), args);
+
+        // anywhere else, or for other commands, it is data
+        for (List<String> dataArgs : Arrays.asList(Arrays.asList("set", "/cfg", "--format=x"),
+                Arrays.asList("qAdd", "/q", "--format=ndjson"), Arrays.asList("get", "/a", "--format=ndjson"),
+                Arrays.asList("create", "--format=ndjson"))) {
+            args = new ArrayList<String>(dataArgs);
+            assertEquals(Zkrw.FORMAT_TEXT, Zkrw.extractFormat(args, 0));
+            assertEquals(dataArgs, args);
+        }
+
+        try {
+            Zkrw.extractFormat(new ArrayList<String>(Arrays.asList("get", "--format=xml", "/a")), 0);
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
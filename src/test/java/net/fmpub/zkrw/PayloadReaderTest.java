@@ -0,0 +1,139 @@
+/**
+ * Project: Zkrw
+ * File: PayloadReaderTest.java
+ * Created on: Oct 17, 2026
+ * 2026 Federated Media, Inc.
+ */
+package net.fmpub.zkrw;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.util.*;
+
+import org.junit.*;
+
+public class PayloadReaderTest {
+
+    private static Stdin stdin(String input) throws UnsupportedEncodingException {
+        return new Stdin(new ByteArrayInputStream(input.getBytes("UTF-8")));
+    }
+
+    private static PayloadReader read(String spec, String input) throws IOException {
+        return new PayloadReader(spec, 7, stdin(input));
+    }
+
+    private static List<String> values(PayloadReader payloads) {
+        List<String> values = new ArrayList<String>();
+        for (byte[] value : payloads.getData()) {
+            values.add(new String(value));
+        }
+        return values;
+    }
+
+    @Test
+    public void testLines() throws IOException {
+        // each line as it is, even if it starts with digits and a tab
+        PayloadReader payloads = read(PayloadReader.STDIN, "a\n\n3\tb c\nx\ty\n");
+        assertEquals(Arrays.asList("a", "3\tb c", "x\ty"), values(payloads));
+        assertEquals(Arrays.asList(7, 7, 7), payloads.getPriorities());
+    }
+
+    @Test
+    public void testLinePriorities() throws IOException {
+        PayloadReader payloads = read("pri:-", "3\tb c\n\n\t4\tx\n0\ty\tz\n");
+        // a leading tab keeps the default priority
+        assertEquals(Arrays.asList("b c", "4\tx", "y\tz"), values(payloads));
+        assertEquals(Arrays.asList(3, 7, 0), payloads.getPriorities());
+
+        for (String input : new String[] { "a\n", "x\ty\n", "-1\tz\n" }) {
+            try {
+                read("pri:-", input);
+                fail("malformed line: " + input);
+            } catch (IOException e) {
+                assertTrue(e.getMessage(), e.getMessage().startsWith("Malformed payload line"));
+            }
+        }
+    }
+
+    @Test
+    public void testLengthDelimited() throws IOException {
+        PayloadReader payloads = read("len:-", "3\nabc\n5\t2\nx\ny\tz\n\n0\n");
+        assertEquals(Arrays.asList("abc", "x\ny\tz", ""), values(payloads));
+        assertEquals(Arrays.asList(7, 2, 7), payloads.getPriorities());
+
+        // the newline after a payload is optional
+        payloads = read("len:-", "2\nab1\nc");
+        assertEquals(Arrays.asList("ab", "c"), values(payloads));
+    }
+
+    @Test
+    public void testMalformed() throws IOException {
+        for (String input : new String[] { "abc\nabc\n", "3\tx\nabc\n", "-3\nabc\n", "3\t1\t2\nabc\n" }) {
+            try {
+                read("len:-", input);
+                fail("malformed header: " + input);
+            } catch (IOException e) {
+                assertTrue(e.getMessage(), e.getMessage().startsWith("Malformed payload header"));
+            }
+        }
+        for (String input : new String[] { "5\nabc", "3\nabc\n4" }) {
+            try {
+                read("len:-", input);
+                fail("truncated: " + input);
+            } catch (EOFException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testFile() throws IOException {
+        File file = File.createTempFile("zkrw-payloads", "");
+        try {
+            Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+            writer.write("1\ta\n\tb\n");
+            writer.close();
+            PayloadReader payloads = new PayloadReader("pri:" + file.getPath(), 7);
+            assertEquals(Arrays.asList("a", "b"), values(payloads));
+            assertEquals(Arrays.asList(1, 7), payloads.getPriorities());
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * A retry of the call reads the same stdin again, and another call its
+     * own.
+     */
+    @Test
+    public void testStdinPerCall() throws IOException {
+        Stdin first = stdin("a\nb\n");
+        assertEquals(Arrays.asList("a", "b"), values(new PayloadReader(PayloadReader.STDIN, 7, first)));
+        assertEquals(Arrays.asList("a", "b"), values(new PayloadReader(PayloadReader.STDIN, 7, first)));
+        assertFalse(first.isStreamed());
+
+        assertEquals(Arrays.asList("c"), values(new PayloadReader(PayloadReader.STDIN, 7, stdin("c\n"))));
+    }
+
+    /**
+     * A call in the daemon or a batch has no stdin to read.
+     */
+    @Test
+    public void testStdinUnavailable() throws IOException {
+        Stdin stdin = Stdin.unavailable("in a batch");
+        try {
+            new PayloadReader(PayloadReader.STDIN, 7, stdin);
+            fail("read an unavailable stdin");
+        } catch (IOException e) {
+            assertEquals("stdin can not be read in a batch", e.getMessage());
+        }
+        try {
+            stdin.stream();
+            fail("streamed an unavailable stdin");
+        } catch (IOException e) {
+            // expected
+        }
+        assertFalse(stdin.isStreamed());
+    }
+}
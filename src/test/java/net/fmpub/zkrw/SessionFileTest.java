@@ -0,0 +1,115 @@
+/**
+ * Project: Zkrw
+ * File: SessionFileTest.java
+ * Created on: Oct 17, 2026
+ * 2026 Federated Media, Inc.
+ */
+package net.fmpub.zkrw;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+
+import net.fmpub.zk.util.ZkTestServer;
+
+import org.apache.log4j.PropertyConfigurator;
+import org.junit.*;
+
+public class SessionFileTest {
+
+    static {
+        PropertyConfigurator.configure("src/main/resources/log4j.test.properties");
+    }
+
+    String zkServers;
+
+    File file;
+
+    @Before
+    public void setUp() throws Exception {
+        zkServers = ZkTestServer.newChroot();
+        file = File.createTempFile("zkrw-session", "");
+        file.delete();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        // close the session left open by the last run
+        SessionFile sessionFile = new SessionFile(file.getPath());
+        assertTrue(sessionFile.lock());
+        SessionFile.Session session = sessionFile.read(zkServers);
+        sessionFile.close();
+        if (session != null) {
+            new Zkrw(zkServers, 3000, session.getId(), session.getPassword()).close();
+        }
+        file.delete();
+    }
+
+    private SessionFile.Session readSession() throws IOException {
+        SessionFile sessionFile = new SessionFile(file.getPath());
+        try {
+            assertTrue(sessionFile.lock());
+            return sessionFile.read(zkServers);
+        } finally {
+            sessionFile.close();
+        }
+    }
+
+    private int run(String command, String path, String data) {
+        Zkrw.Connector connector = new Zkrw.ResumingConnector(zkServers, 3000, new SessionFile(file.getPath()));
+        return Zkrw.run(connector, "test", 3, 10, 100, command, path, data, "", new PrintStream(new ByteArrayOutputStream()),
+                System.err);
+    }
+
+    @Test
+    public void testReadWrite() throws IOException {
+        byte[] password = new byte[] { 0, 1, (byte) 0xab, (byte) 0xff };
+
+        SessionFile sessionFile = new SessionFile(file.getPath());
+        assertTrue(sessionFile.lock());
+        assertNull(sessionFile.read(zkServers));
+        sessionFile.write(zkServers, -42, password, 3000);
+        sessionFile.close();
+
+        SessionFile.Session session = readSession();
+        assertEquals(-42, session.getId());
+        assertArrayEquals(password, session.getPassword());
+
+        sessionFile = new SessionFile(file.getPath());
+        assertTrue(sessionFile.lock());
+        // saved for other hosts
+        assertNull(sessionFile.read(zkServers + "/other"));
+        // expired
+        sessionFile.write(zkServers, -42, password, 0);
+        assertNull(sessionFile.read(zkServers));
+        sessionFile.close();
+    }
+
+    @Test
+    public void testResume() throws Exception {
+        assertEquals(0, run("create", ZkTestServer.TEST_ROOT_NODE + "/resumed", "1"));
+        SessionFile.Session first = readSession();
+        assertNotNull(first);
+
+        assertEquals(0, run("get", ZkTestServer.TEST_ROOT_NODE + "/resumed", ""));
+        assertEquals(first.getId(), readSession().getId());
+
+        // a terminal failure keeps the session too
+        assertEquals(1, run("get", ZkTestServer.TEST_ROOT_NODE + "/missing", ""));
+        assertEquals(first.getId(), readSession().getId());
+    }
+
+    @Test
+    public void testUnknownSession() throws Exception {
+        SessionFile sessionFile = new SessionFile(file.getPath());
+        assertTrue(sessionFile.lock());
+        sessionFile.write(zkServers, 12345, new byte[16], 60000);
+        sessionFile.close();
+
+        // the server expires the unknown session, and a new one is used
+        assertEquals(0, run("exists", ZkTestServer.TEST_ROOT_NODE, ""));
+        SessionFile.Session session = readSession();
+        assertNotNull(session);
+        assertFalse(session.getId() == 12345);
+    }
+}
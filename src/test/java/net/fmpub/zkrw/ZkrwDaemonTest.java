@@ -0,0 +1,303 @@
+/**
+ * Project: Zkrw
+ * File: ZkrwDaemonTest.java
+ * Created on: Oct 17, 2026
+ * 2026 Federated Media, Inc.
+ */
+package net.fmpub.zkrw;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import net.fmpub.zk.util.ZkTestServer;
+
+import org.apache.log4j.PropertyConfigurator;
+import org.junit.*;
+
+/**
+ * Runs a daemon on a loopback port and sends it requests the way scripts/zk
+ * does.
+ */
+public class ZkrwDaemonTest {
+
+    static {
+        PropertyConfigurator.configure("src/main/resources/log4j.test.properties");
+    }
+
+    static final String BASE = ZkTestServer.TEST_ROOT_NODE + "/daemon";
+
+    static final String CHARSET = "UTF-8";
+
+    String zkServers;
+
+    ZkrwDaemon daemon;
+
+    int port;
+
+    Thread acceptor;
+
+    @Before
+    public void setUp() throws Exception {
+        zkServers = ZkTestServer.newChroot();
+        daemon = new ZkrwDaemon(zkServers, 3000, 3, 10, 100, 0);
+        port = daemon.open();
+        acceptor = new Thread() {
+            public void run() {
+                try {
+                    daemon.acceptAll();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+        acceptor.start();
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        daemon.shutdown();
+        acceptor.join(10000);
+    }
+
+    static class Response {
+        String out;
+        String err;
+        int exitVal;
+    }
+
+    private Response send(String... args) throws IOException {
+        Socket socket = new Socket(InetAddress.getByName("127.0.0.1"), port);
+        try {
+            OutputStream out = socket.getOutputStream();
+            out.write((args.length + "\0").getBytes(CHARSET));
+            for (String arg : args) {
+                out.write((arg + "\0").getBytes(CHARSET));
+            }
+            out.flush();
+
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            Response response = new Response();
+            response.out = unescape(readUntil(in, '\0'));
+            response.err = unescape(readUntil(in, '\0'));
+            response.exitVal = Integer.parseInt(readUntil(in, '\n'));
+            assertEquals("nothing after the exit value", -1, in.read());
+            return response;
+        } finally {
+            socket.close();
+        }
+    }
+
+    private static String readUntil(InputStream in, char end) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != end) {
+            assertTrue("response ended early", b > -1);
+            bytes.write(b);
+        }
+        return bytes.toString(CHARSET);
+    }
+
+    /**
+     * Undo the escapes of NUL and backslash, as printf %b does in scripts/zk.
+     */
+    private static String unescape(String escaped) {
+        StringBuilder text = new StringBuilder(escaped.length());
+        for (int i = 0; i < escaped.length(); i++) {
+            char c = escaped.charAt(i);
+            if (c == '\\' && escaped.startsWith("\\0000", i)) {
+                text.append('\0');
+                i += 4;
+            } else if (c == '\\') {
+                assertTrue("escaped backslash", escaped.startsWith("\\\\", i));
+                text.append(c);
+                i++;
+            } else {
+                text.append(c);
+            }
+        }
+        return text.toString();
+    }
+
+    @Test
+    public void testEscapingOutputStream() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        OutputStream out = new ZkrwDaemon.EscapingOutputStream(bytes);
+        out.write("a\0b\\0".getBytes(CHARSET));
+        out.write(0);
+        out.write('c');
+        assertEquals("a\\0000b\\\\0\\0000c", bytes.toString(CHARSET));
+    }
+
+    @Test
+    public void testReadRequest() throws IOException {
+        byte[] request = "4\0get\0/a b\0\0\u00e9t\u00e9\0".getBytes(CHARSET);
+        List<String> args = ZkrwDaemon.readRequest(new ByteArrayInputStream(request));
+        assertEquals(Arrays.asList("get", "/a b", "", "\u00e9t\u00e9"), args);
+
+        try {
+            ZkrwDaemon.readRequest(new ByteArrayInputStream("2\0get\0/a".getBytes(CHARSET)));
+            fail("truncated request");
+        } catch (EOFException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testCommands() throws Exception {
+        Response response = send("createIfNotExists", BASE, "0");
+        assertEquals("", response.out);
+        assertEquals("", response.err);
+        assertEquals(0, response.exitVal);
+
+        // data with spaces, a newline and a tab
+        String value = "two words\nand\ta tab";
+        assertEquals(0, send("create", BASE + "/a", value).exitVal);
+        response = send("get", BASE + "/a");
+        assertEquals(value + Zkrw.NEWLINE, response.out);
+        assertEquals("", response.err);
+        assertEquals(0, response.exitVal);
+
+        response = send("get", BASE + "/missing");
+        assertEquals("", response.out);
+        assertTrue(response.err, response.err.startsWith("Quit after 1 failures."));
+        assertEquals(1, response.exitVal);
+
+        response = send("noSuchCommand", BASE);
+        assertTrue(response.err, response.err.startsWith("could not find command named: 'noSuchCommand'"));
+        assertEquals(1, response.exitVal);
+
+        response = send("get");
+        assertEquals(1, response.exitVal);
+        assertTrue(response.err, response.err.length() > 0);
+    }
+
+    /**
+     * A value containing NUL is escaped rather than cut off at the delimiter.
+     */
+    @Test
+    public void testNulInValue() throws Exception {
+        Zkrw app = new Zkrw(zkServers);
+        try {
+            app.createIfNotExists(BASE, "0");
+            app.create(BASE + "/nul", "before\0after\\0");
+        } finally {
+            app.close();
+        }
+        Response response = send("get", BASE + "/nul");
+        assertEquals(0, response.exitVal);
+        assertEquals("before\0after\\0" + Zkrw.NEWLINE, response.out);
+    }
+
+    /**
+     * More waiting calls than there used to be threads do not hold up another
+     * call.
+     */
+    @Test
+    public void testManyWaitingCommands() throws Exception {
+        assertEquals(0, send("createIfNotExists", BASE, "0").exitVal);
+        int numWaiting = 24;
+        ExecutorService executor = Executors.newFixedThreadPool(numWaiting);
+        try {
+            List<Future<Response>> polls = new ArrayList<Future<Response>>();
+            for (int i = 0; i < numWaiting; i++) {
+                final String queue = BASE + "/queue" + i;
+                polls.add(executor.submit(new Callable<Response>() {
+                    public Response call() throws Exception {
+                        return send("qPoll", queue, "8");
+                    }
+                }));
+            }
+            Thread.sleep(1000);
+
+            long startMs = System.currentTimeMillis();
+            Response response = send("get", BASE);
+            assertEquals(response.err, 0, response.exitVal);
+            assertTrue("waited for the polls", System.currentTimeMillis() - startMs < 4000);
+            for (Future<Response> poll : polls) {
+                assertFalse("still waiting for an item", poll.isDone());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * A client that never sends its request is dropped.
+     */
+    @Test
+    public void testIdleClientDropped() throws Exception {
+        daemon.requestTimeoutMs = 500;
+        Socket socket = new Socket(InetAddress.getByName("127.0.0.1"), port);
+        try {
+            socket.setSoTimeout(5000);
+            assertEquals("closed by the daemon", -1, socket.getInputStream().read());
+        } finally {
+            socket.close();
+        }
+        assertEquals(0, send("createIfNotExists", BASE, "0").exitVal);
+    }
+
+    /**
+     * The daemon's stdin is not the caller's, so commands that read stdin are
+     * refused, whatever the case of their name.
+     */
+    @Test
+    public void testOwnProcessCommandsRefused() throws Exception {
+        assertEquals(0, send("createIfNotExists", BASE, "value").exitVal);
+
+        for (String command : new String[] { "setlarge", "setLarge", "QADDBATCH", "getLarge", "batch" }) {
+            Response response = send(command, BASE);
+            assertEquals(command, 1, response.exitVal);
+            assertTrue(response.err, response.err.contains("can not run in the daemon"));
+        }
+        assertEquals("value" + Zkrw.NEWLINE, send("get", BASE).out);
+    }
+
+    /**
+     * A command waiting on the shared session does not hold up the others.
+     */
+    @Test
+    public void testConcurrentCommands() throws Exception {
+        final String queue = BASE + "/queue";
+        assertEquals(0, send("createIfNotExists", BASE, "0").exitVal);
+        assertEquals(0, send("createIfNotExists", queue, "0").exitVal);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            Future<Response> poll = executor.submit(new Callable<Response>() {
+                public Response call() throws Exception {
+                    return send("qPoll", queue, "10");
+                }
+            });
+
+            List<Future<Response>> gets = new ArrayList<Future<Response>>();
+            for (int i = 0; i < 40; i++) {
+                final String path = BASE + "/n" + i;
+                final String value = "value " + i;
+                gets.add(executor.submit(new Callable<Response>() {
+                    public Response call() throws Exception {
+                        Response created = send("create", path, value);
+                        return created.exitVal == 0 ? send("get", path) : created;
+                    }
+                }));
+            }
+            for (int i = 0; i < gets.size(); i++) {
+                Response response = gets.get(i).get(10, TimeUnit.SECONDS);
+                assertEquals(response.err, 0, response.exitVal);
+                assertEquals("value " + i + Zkrw.NEWLINE, response.out);
+            }
+            assertFalse("still waiting for an item", poll.isDone());
+
+            assertEquals(0, send("qAdd", queue, "item", "1").exitVal);
+            Response polled = poll.get(10, TimeUnit.SECONDS);
+            assertEquals(polled.err, 0, polled.exitVal);
+            assertEquals("item" + Zkrw.NEWLINE, polled.out);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
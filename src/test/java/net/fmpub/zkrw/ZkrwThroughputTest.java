@@ -0,0 +1,244 @@
+/**
+ * Project: Zkrw
+ * File: ZkrwThroughputTest.java
+ * Created on: Oct 17, 2026
+ * 2026 Federated Media, Inc.
+ */
+package net.fmpub.zkrw;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+
+import net.fmpub.zk.util.ZkTestServer;
+import net.fmpub.zk.util.queue.PackedPriorityKeyHandler;
+import net.fmpub.zk.util.queue.PriorityDistributedQueue;
+
+import org.apache.log4j.PropertyConfigurator;
+import org.apache.zookeeper.*;
+import org.apache.zookeeper.AsyncCallback.StringCallback;
+import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.ZooDefs.Ids;
+import org.junit.*;
+
+/**
+ * Throughput and latency of the main Zkrw operations and the queue against the
+ * in-process test server. Each test prints one line of results and fails if
+ * the rate drops below a floor far under the usual rate, to catch large
+ * regressions offline.
+ * <p>
+ * The floors are multiplied by the system property zkrw.perf.floorFactor
+ * (default 1.0). Set it to 0 to only print the results.
+ */
+public class ZkrwThroughputTest {
+
+    static {
+        PropertyConfigurator.configure("src/main/resources/log4j.test.properties");
+    }
+
+    public static final String FLOOR_FACTOR_PROPERTY = "zkrw.perf.floorFactor";
+
+    private static final int NUM_OPS = 2000;
+
+    /**
+     * Children per node in the test tree, 3 levels deep.
+     */
+    private static final int TREE_FANOUT = 12;
+
+    public static final String TEST_ZK_NODE = zkrwTest.TEST_ZK_NODE;
+
+    Zkrw app;
+
+    String zkServers;
+
+    @Before
+    public void setUp() throws Exception {
+        zkServers = ZkTestServer.newChroot();
+        app = new Zkrw(zkServers);
+        app.create(TEST_ZK_NODE, "0");
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        app.close();
+    }
+
+    @Test
+    public void testGet() throws Exception {
+        Latencies latencies = new Latencies("get", NUM_OPS);
+        for (int i = 0; i < NUM_OPS; i++) {
+            long start = System.nanoTime();
+            assertEquals("0", app.get(TEST_ZK_NODE));
+            latencies.add(start);
+        }
+        latencies.check(500);
+    }
+
+    @Test
+    public void testSet() throws Exception {
+        Latencies latencies = new Latencies("set", NUM_OPS);
+        for (int i = 0; i < NUM_OPS; i++) {
+            long start = System.nanoTime();
+            app.set(TEST_ZK_NODE, String.valueOf(i));
+            latencies.add(start);
+        }
+        assertEquals(String.valueOf(NUM_OPS - 1), app.get(TEST_ZK_NODE));
+        latencies.check(100);
+    }
+
+    @Test
+    public void testGetAllAndDeleteAll() throws Exception {
+        int numNodes = createTree(TEST_ZK_NODE, 3);
+
+        Latencies latencies = new Latencies("getAll (" + numNodes + " nodes)", 1);
+        long start = System.nanoTime();
+        String output = app.getAll(TEST_ZK_NODE);
+        latencies.add(start);
+        // one line per node, plus the root
+        assertEquals(numNodes + 1, output.split(Zkrw.NEWLINE).length);
+        latencies.checkNodes(numNodes, 2000);
+
+        latencies = new Latencies("deleteAll (" + numNodes + " nodes)", 1);
+        start = System.nanoTime();
+        assertEquals(numNodes + 1, app.deleteAll(TEST_ZK_NODE));
+        latencies.add(start);
+        assertEquals(Zkrw.FALSE_RETURN_VAL, app.exists(TEST_ZK_NODE));
+        latencies.checkNodes(numNodes, 1000);
+    }
+
+    @Test
+    public void testQueue() throws Exception {
+        String queuePath = TEST_ZK_NODE + "/test-queue";
+        PriorityDistributedQueue<Long, Integer> queue = new PriorityDistributedQueue<Long, Integer>(
+                app.getZooKeeper(), queuePath, new PackedPriorityKeyHandler());
+
+        List<byte[]> values = new ArrayList<byte[]>();
+        for (int i = 0; i < NUM_OPS; i++) {
+            values.add(("item-" + i).getBytes());
+        }
+
+        Latencies latencies = new Latencies("offerAll (" + NUM_OPS + " items)", 1);
+        long start = System.nanoTime();
+        assertEquals(NUM_OPS, queue.offerAll(values, 1).size());
+        latencies.add(start);
+        latencies.checkNodes(NUM_OPS, 1000);
+
+        int numPolls = NUM_OPS / 10;
+        latencies = new Latencies("poll", numPolls);
+        for (int i = 0; i < numPolls; i++) {
+            start = System.nanoTime();
+            assertEquals("item-" + i, new String(queue.poll()));
+            latencies.add(start);
+        }
+        latencies.check(20);
+
+        int numPolled = numPolls;
+        latencies = new Latencies("pollBatch (100 items)", NUM_OPS / 100);
+        while (numPolled < NUM_OPS) {
+            start = System.nanoTime();
+            List<byte[]> batch = queue.pollBatch(100, 0);
+            latencies.add(start);
+            for (byte[] value : batch) {
+                assertEquals("item-" + numPolled++, new String(value));
+            }
+        }
+        assertNull(queue.poll());
+        latencies.checkNodes(NUM_OPS - numPolls, 500);
+    }
+
+    /**
+     * Creates a tree of TREE_FANOUT children per node under path with
+     * pipelined creates.
+     *
+     * @return the number of nodes created
+     */
+    private int createTree(String path, int depth) throws InterruptedException {
+        List<String> level = Collections.singletonList(path);
+        List<String> paths = new ArrayList<String>();
+        for (int d = 0; d < depth; d++) {
+            List<String> nextLevel = new ArrayList<String>();
+            for (String parent : level) {
+                for (int i = 0; i < TREE_FANOUT; i++) {
+                    nextLevel.add(parent + "/n" + i);
+                }
+            }
+            paths.addAll(nextLevel);
+            level = nextLevel;
+        }
+
+        final CountDownLatch created = new CountDownLatch(paths.size());
+        ZooKeeper zk = app.getZooKeeper();
+        for (String nodePath : paths) {
+            zk.create(nodePath, "value".getBytes(), Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT,
+                    new StringCallback() {
+                        @Override
+                        public void processResult(int rc, String path, Object ctx, String name) {
+                            assertEquals(Code.OK.intValue(), rc);
+                            created.countDown();
+                        }
+                    }, null);
+        }
+        created.await();
+        return paths.size();
+    }
+
+    /**
+     * Records the latency of each operation.
+     */
+    private static class Latencies {
+
+        private final String name;
+        private final long[] nanos;
+        private int count = 0;
+        private final long startNanos = System.nanoTime();
+
+        Latencies(String name, int numOps) {
+            this.name = name;
+            this.nanos = new long[numOps];
+        }
+
+        void add(long opStartNanos) {
+            nanos[count++] = System.nanoTime() - opStartNanos;
+        }
+
+        /**
+         * Print the results and check the operation rate.
+         */
+        void check(double minOpsPerSec) {
+            double opsPerSec = print(count, "ops");
+            assertRate(opsPerSec, minOpsPerSec, "ops");
+        }
+
+        /**
+         * Print the results and check the rate of nodes or items processed.
+         */
+        void checkNodes(int numNodes, double minNodesPerSec) {
+            double nodesPerSec = print(numNodes, "nodes");
+            assertRate(nodesPerSec, minNodesPerSec, "nodes");
+        }
+
+        private double print(int numUnits, String units) {
+            double elapsedMs = (System.nanoTime() - startNanos) / 1e6;
+            double rate = numUnits / (elapsedMs / 1000);
+
+            long[] sorted = Arrays.copyOf(nanos, count);
+            Arrays.sort(sorted);
+            System.out.println(String.format("%s: %d %s in %.1f ms, %.0f %s/s, latency p50 %.2f ms, p99 %.2f ms, max %.2f ms",
+                    name, numUnits, units, elapsedMs, rate, units, percentile(sorted, 50), percentile(sorted, 99),
+                    percentile(sorted, 100)));
+            return rate;
+        }
+
+        private void assertRate(double rate, double minRate, String units) {
+            double floor = minRate * Double.parseDouble(System.getProperty(FLOOR_FACTOR_PROPERTY, "1.0"));
+            assertTrue(String.format("%s: %.0f %s/s is below the floor of %.0f", name, rate, units, floor),
+                    rate >= floor);
+        }
+
+        private static double percentile(long[] sorted, int percent) {
+            int index = (int) Math.ceil(sorted.length * percent / 100.0) - 1;
+            return sorted[Math.max(index, 0)] / 1e6;
+        }
+    }
+}
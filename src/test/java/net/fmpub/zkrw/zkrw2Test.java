@@ -7,9 +7,8 @@
  */
 package net.fmpub.zkrw;
 
-import java.io.IOException;
-
 import junit.framework.TestCase;
+import net.fmpub.zk.util.ZkTestServer;
 
 import org.apache.log4j.PropertyConfigurator;
 import org.apache.zookeeper.KeeperException;
@@ -24,6 +23,11 @@ public class zkrw2Test extends TestCase {
 
 	Zkrw app;
 
+	/**
+	 * Connect string for this test's chroot on the test server.
+	 */
+	String zkServers;
+
 	int setupFailureCount = 0;
 
 	private boolean stopOption() {
@@ -107,10 +111,11 @@ public class zkrw2Test extends TestCase {
 	public Zkrw initApp() {
 		try {
 			if (app == null) {
-				app = new Zkrw(zkrwTest.ZK_SERVERS);
+				zkServers = ZkTestServer.newChroot();
+				app = new Zkrw(zkServers);
 			}
 			return app;
-		} catch (IOException e) {
+		} catch (Exception e) {
 
 			e.printStackTrace();
 		}
@@ -7,9 +7,13 @@
  */
 package net.fmpub.zkrw;
 
-import java.io.IOException;
+import java.io.*;
+import java.util.*;
 
 import junit.framework.TestCase;
+import net.fmpub.zk.util.ValueCodec;
+import net.fmpub.zk.util.ZkStats;
+import net.fmpub.zk.util.ZkTestServer;
 
 import org.apache.log4j.PropertyConfigurator;
 import org.apache.zookeeper.KeeperException;
@@ -23,7 +27,11 @@ import org.junit.*;
 public class zkrw3Test extends TestCase {
 
     Zkrw app;
-    public static final String ZK_SERVERS = "127.0.0.1:2181";
+
+    /**
+     * Connect string for this test's chroot on the test server.
+     */
+    String zkServers;
 
     public static final String TEST_ZK_OTHER_GRGRANDCHILDNAME = "/more/blah/blah/test-great-grandchild/1/2";
     public static final String TEST_ZK_OTHER_GRGRANDCHILD_NODE = zkrwTest.TEST_ZK_ROOT_NODE
@@ -60,10 +68,11 @@ public class zkrw3Test extends TestCase {
     public Zkrw initApp() {
         try {
             if (app == null) {
-                app = new Zkrw(zkrwTest.ZK_SERVERS);
+                zkServers = ZkTestServer.newChroot();
+                app = new Zkrw(zkServers);
             }
             return app;
-        } catch (IOException e) {
+        } catch (Exception e) {
 
             e.printStackTrace();
         }
@@ -170,10 +179,10 @@ public class zkrw3Test extends TestCase {
             System.out.println("Nodes: " + app.getChildren(zkrwTest.TEST_ZK_ROOT_NODE));
 
             System.out.println("exists...");
-            Zkrw.main(new String[] { ZK_SERVERS, "", "", "", "", "exists", TEST_ZK_QU_NODE });
+            Zkrw.main(new String[] { zkServers, "", "", "", "", "exists", TEST_ZK_QU_NODE });
 
             System.out.println("createIfNotExistsWithParents...");
-            Zkrw.main(new String[] { ZK_SERVERS, "", "", "", "", "createIfNotExistsWithParents",
+            Zkrw.main(new String[] { zkServers, "", "", "", "", "createIfNotExistsWithParents",
                     TEST_ZK_QU_NODE, "0" });
             System.out.println("Queue Children: " + app.getChildren(TEST_ZK_QU_NODE));
 
@@ -182,9 +191,9 @@ public class zkrw3Test extends TestCase {
             // "$ZK_SERVERS" "$ZK_SESSTIMEOUT_MS" "$ZK_NUM_RETRIES"
             // "$ZK_RETRY_DELAY_MIN_MS" "$ZK_RETRY_DELAY_MAX_MS"
 
-            Zkrw.main(new String[] { ZK_SERVERS, "", "", "", "", "qAdd", TEST_ZK_QU_NODE, "new1",
+            Zkrw.main(new String[] { zkServers, "", "", "", "", "qAdd", TEST_ZK_QU_NODE, "new1",
                     "5" });
-            Zkrw.main(new String[] { ZK_SERVERS, "", "", "", "", "qAdd", TEST_ZK_QU_NODE, "new2",
+            Zkrw.main(new String[] { zkServers, "", "", "", "", "qAdd", TEST_ZK_QU_NODE, "new2",
                     "3" });
 
             System.out.println("Queue Children: " + app.getChildren(TEST_ZK_QU_NODE));
@@ -209,10 +218,10 @@ public class zkrw3Test extends TestCase {
             System.out.println("Nodes: " + app.getChildren(zkrwTest.TEST_ZK_ROOT_NODE));
 
             System.out.println("exists...");
-            Zkrw.main(new String[] { ZK_SERVERS, "", "", "", "", "exists", TEST_ZK_QU_NODE });
+            Zkrw.main(new String[] { zkServers, "", "", "", "", "exists", TEST_ZK_QU_NODE });
 
             System.out.println("createIfNotExistsWithParents...");
-            Zkrw.main(new String[] { ZK_SERVERS, "", "", "", "", "createIfNotExistsWithParents",
+            Zkrw.main(new String[] { zkServers, "", "", "", "", "createIfNotExistsWithParents",
                     TEST_ZK_QU_NODE, "0" });
             System.out.println("Queue Children: " + app.getChildren(TEST_ZK_QU_NODE));
 
@@ -222,10 +231,10 @@ public class zkrw3Test extends TestCase {
             // "$ZK_RETRY_DELAY_MIN_MS" "$ZK_RETRY_DELAY_MAX_MS"
 
             // no priority
-            Zkrw.main(new String[] { ZK_SERVERS, "", "", "", "", "qAdd", TEST_ZK_QU_NODE, "new2" });
+            Zkrw.main(new String[] { zkServers, "", "", "", "", "qAdd", TEST_ZK_QU_NODE, "new2" });
 
             // empty priority
-            Zkrw.main(new String[] { ZK_SERVERS, "", "", "", "", "qAdd", TEST_ZK_QU_NODE, "new3",
+            Zkrw.main(new String[] { zkServers, "", "", "", "", "qAdd", TEST_ZK_QU_NODE, "new3",
                     "" });
 
             System.out.println("Queue Children: " + app.getChildren(TEST_ZK_QU_NODE));
@@ -264,6 +273,448 @@ public class zkrw3Test extends TestCase {
         }
     }
     
+    /**
+     * createOrSet and createIfNotExists take one round trip when the node
+     * is in the expected state.
+     */
+    @Test
+    public void testCreateRoundTrips() {
+        System.out.println("testCreateRoundTrips...");
+        stopOption();
+        try {
+            ZkStats stats = app.getStats();
+            // the connect is recorded from the event thread, so only count operations once it is in
+            app.awaitConnected();
+
+            stats.reset();
+            app.createOrSet(zkrwTest.TEST_ZK_NODE, "1");
+            // set fails with NoNode, then create
+            assertEquals(2, stats.getOperations());
+            assertEquals("1", app.get(zkrwTest.TEST_ZK_NODE));
+
+            stats.reset();
+            app.createOrSet(zkrwTest.TEST_ZK_NODE, "2");
+            assertEquals(1, stats.getOperations());
+            assertEquals("2", app.get(zkrwTest.TEST_ZK_NODE));
+
+            stats.reset();
+            app.createIfNotExists(zkrwTest.TEST_ZK_NODE, "3");
+            assertEquals(1, stats.getOperations());
+            assertEquals(1, stats.getErrorCount(KeeperException.Code.NODEEXISTS));
+            assertEquals("2", app.get(zkrwTest.TEST_ZK_NODE));
+
+        } catch (Exception e) {
+
+            e.printStackTrace();
+            fail();
+        }
+    }
+
+    @Test
+    public void testCodec() {
+        System.out.println("testCodec...");
+        stopOption();
+        try {
+            StringBuilder json = new StringBuilder();
+            for (int i = 0; i < 500; i++) {
+                json.append("{\"id\":").append(i).append(",\"name\":\"test\"}");
+            }
+            String value = json.toString();
+
+            app.createOrSet(zkrwTest.TEST_ZK_NODE, "plain");
+            app.setCodec(ValueCodec.forName("gzip", 0));
+            app.createOrSet(zkrwTest.TEST_ZK_CHILD1_NODE, value);
+            byte[] stored = app.getZooKeeper().getData(zkrwTest.TEST_ZK_CHILD1_NODE, false, null);
+            assertTrue(ValueCodec.isEncoded(stored));
+            assertTrue(stored.length < value.length() / 4);
+
+            // plain and compressed values are both read back
+            assertEquals("plain", app.get(zkrwTest.TEST_ZK_NODE));
+            assertEquals(value, app.get(zkrwTest.TEST_ZK_CHILD1_NODE));
+            assertTrue(app.getAll(zkrwTest.TEST_ZK_NODE).contains(zkrwTest.TEST_ZK_CHILD1_NODE + Zkrw.DEFAULT_LIST_DELIMITER + value));
+
+            app.setCodec(ValueCodec.forName("deflate", 0));
+            app.queueAdd(TEST_ZK_QU_NODE, value, 1);
+            app.setCodec(ValueCodec.PLAIN);
+            app.queueAdd(TEST_ZK_QU_NODE, "plain", 2);
+            assertEquals(value, app.queuePoll(TEST_ZK_QU_NODE));
+            assertEquals("plain", app.queuePoll(TEST_ZK_QU_NODE));
+
+        } catch (Exception e) {
+
+            e.printStackTrace();
+            fail();
+        }
+    }
+
+    @Test
+    public void testLargeValue() {
+        System.out.println("testLargeValue...");
+        stopOption();
+        try {
+            StringBuilder value = new StringBuilder();
+            for (int i = 0; i < 20000; i++) {
+                value.append("line ").append(i).append('\n');
+            }
+            File file = File.createTempFile("zkrw-large", "");
+            try {
+                FileOutputStream fileOut = new FileOutputStream(file);
+                fileOut.write(value.toString().getBytes());
+                fileOut.close();
+
+                app.setChunkSize(64 * 1024);
+                assertEquals(value.length(), app.setLarge(zkrwTest.TEST_ZK_NODE, file.getPath()));
+                assertEquals(4, Integer.parseInt(app.getNumChildren(zkrwTest.TEST_ZK_NODE)));
+            } finally {
+                file.delete();
+            }
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertEquals(value.length(), app.getLarge(zkrwTest.TEST_ZK_NODE, out));
+            assertEquals(value.toString(), out.toString());
+
+        } catch (Exception e) {
+
+            e.printStackTrace();
+            fail();
+        }
+    }
+
+    @Test
+    public void testNdjsonFormat() {
+        System.out.println("testNdjsonFormat...");
+        stopOption();
+        try {
+            app.createOrSet(zkrwTest.TEST_ZK_NODE, "main");
+            app.createOrSet(zkrwTest.TEST_ZK_CHILD1_NODE, "line 1\nline\t2");
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertTrue(app.execute("getAll", zkrwTest.TEST_ZK_NODE, null, null, Zkrw.FORMAT_NDJSON, new PrintStream(out)));
+            String[] lines = out.toString().split("\n");
+            assertEquals(2, lines.length);
+            assertTrue(lines[0].startsWith("{\"path\":\"" + zkrwTest.TEST_ZK_NODE + "\",\"value\":\"main\",\"ctime\":"));
+            assertTrue(lines[0].endsWith(",\"version\":0,\"dataLength\":4,\"numChildren\":1}"));
+            assertTrue(lines[1].contains("\"value\":\"line 1\\nline\\t2\""));
+
+            out.reset();
+            assertTrue(app.execute("get", zkrwTest.TEST_ZK_NODE, null, null, Zkrw.FORMAT_NDJSON, new PrintStream(out)));
+            assertEquals(lines[0] + "\n", out.toString());
+
+        } catch (Exception e) {
+
+            e.printStackTrace();
+            fail();
+        }
+    }
+
+    @Test
+    public void testPruneOlder() {
+        System.out.println("testPruneOlder...");
+        stopOption();
+        try {
+            String base = zkrwTest.TEST_ZK_NODE + "/staged-logs";
+            app.createOrSetWithParents(base + "/a/staged_logs_1/x", "old");
+            app.createOrSet(base + "/a/staged_logs_2", "old");
+            app.createOrSetWithParents(base + "/b/other_1", "old");
+            app.createOrSet(base + "/b/other_1", "expired");
+            app.createOrSetWithParents(base + "/c/staged_logs_3", "old");
+            long cutoffMs = Long.parseLong(app.getMTime(base + "/c/staged_logs_3")) + 1;
+
+            Thread.sleep(20);
+            app.createOrSet(base + "/c/staged_logs_5", "new");
+            app.createOrSetWithParents(base + "/d/staged_logs_4", "new");
+
+            // each with the number of nodes deleted with it
+            Map<String, Integer> expected = new LinkedHashMap<String, Integer>();
+            expected.put(base + "/a/staged_logs_1", 2);
+            expected.put(base + "/a/staged_logs_2", 1);
+            expected.put(base + "/c/staged_logs_3", 1);
+            expected.put(base + "/a", 1);
+
+            // the regex ignores case
+            Map<String, Integer> pruned = app.pruneOlder(base, cutoffMs, "STAGED_LOGS", true);
+            assertEquals(new ArrayList<String>(expected.keySet()), new ArrayList<String>(pruned.keySet()));
+            assertEquals(expected, pruned);
+            assertEquals(Zkrw.TRUE_RETURN_VAL, app.exists(base + "/a/staged_logs_1/x"));
+
+            // the regex also matches the values, as "path<TAB>value" lines
+            assertEquals(Arrays.asList(base + "/b/other_1", base + "/b"),
+                    new ArrayList<String>(app.pruneOlder(base, cutoffMs, "\\tEXPIRED$", true).keySet()));
+
+            pruned = app.pruneOlder(base, cutoffMs, "staged_logs", false);
+            assertEquals(new ArrayList<String>(expected.keySet()), new ArrayList<String>(pruned.keySet()));
+            assertEquals(expected, pruned);
+            assertEquals(Zkrw.FALSE_RETURN_VAL, app.exists(base + "/a"));
+            assertEquals(Zkrw.FALSE_RETURN_VAL, app.exists(base + "/c/staged_logs_3"));
+            assertEquals(Zkrw.TRUE_RETURN_VAL, app.exists(base + "/b/other_1"));
+            assertEquals(Zkrw.TRUE_RETURN_VAL, app.exists(base + "/c/staged_logs_5"));
+            assertEquals(Zkrw.TRUE_RETURN_VAL, app.exists(base + "/d/staged_logs_4"));
+
+            // without a regex, any old node goes with its subtree, but never the base
+            assertEquals(Arrays.asList(base + "/b", base + "/c"), new ArrayList<String>(app.pruneOlder(base, cutoffMs, null, false).keySet()));
+            assertEquals(Zkrw.TRUE_RETURN_VAL, app.exists(base + "/d/staged_logs_4"));
+            assertTrue(app.pruneOlder(base, cutoffMs, null, false).isEmpty());
+
+            assertEquals(1700000000000L, Zkrw.parseCutoffMs("1700000000"));
+            try {
+                Zkrw.parseCutoffMs("yesterday");
+                fail("expected IllegalArgumentException");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+
+        } catch (Exception e) {
+
+            e.printStackTrace();
+            fail();
+        }
+    }
+
+    @Test
+    public void testWaitForChange() {
+        System.out.println("testWaitForChange...");
+        stopOption();
+        try {
+            app.createOrSet(zkrwTest.TEST_ZK_NODE, "a");
+            ZkStats stats = app.getStats();
+            app.awaitConnected();
+
+            Thread setter = new Thread() {
+                public void run() {
+                    try {
+                        Thread.sleep(200);
+                        app.set(zkrwTest.TEST_ZK_NODE, "b");
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+            };
+            stats.reset();
+            setter.start();
+            assertEquals("b", app.waitForChange(zkrwTest.TEST_ZK_NODE, 10, null));
+            setter.join();
+            // woken by the watch: a read before and after the set, and the set
+            assertEquals(3, stats.getOperations());
+
+            // already changed, or not in time
+            assertEquals("b", app.waitForChange(zkrwTest.TEST_ZK_NODE, 0, "a"));
+            assertNull(app.waitForChange(zkrwTest.TEST_ZK_NODE, 0, "b"));
+            assertNull(app.waitForChange(zkrwTest.TEST_ZK_NODE, 1, Zkrw.VERSION_PREFIX + "1"));
+
+            // setting the same value is a change of version
+            app.set(zkrwTest.TEST_ZK_NODE, "b");
+            assertEquals("b", app.waitForChange(zkrwTest.TEST_ZK_NODE, 0, Zkrw.VERSION_PREFIX + "1"));
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try {
+                app.execute("waitForChange", zkrwTest.TEST_ZK_NODE, "0", null, Zkrw.FORMAT_TEXT, new PrintStream(out));
+                fail("expected RuntimeException");
+            } catch (RuntimeException e) {
+                // expected
+            }
+
+        } catch (Exception e) {
+
+            e.printStackTrace();
+            fail();
+        }
+    }
+
+    @Test
+    public void testBarrierAndLatch() {
+        System.out.println("testBarrierAndLatch...");
+        stopOption();
+        try {
+            String barrier = zkrwTest.TEST_ZK_NODE + "/jobs/barrier";
+            // created with its parents, and a single party goes straight through
+            assertTrue(app.barrierEnter(barrier, 1, 10));
+            assertTrue(app.barrierLeave(barrier, 1, 10));
+            assertEquals("2", app.get(barrier));
+            assertFalse(app.barrierEnter(barrier, 2, 0));
+
+            String latch = zkrwTest.TEST_ZK_NODE + "/jobs/latch";
+            assertFalse(app.latchAwait(latch, 1, 0));
+            assertEquals(1, app.latchCountDown(latch));
+            assertEquals(2, app.latchCountDown(latch));
+            assertTrue(app.latchAwait(latch, 2, 0));
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try {
+                app.execute("latchAwait", latch, "3", "0", Zkrw.FORMAT_TEXT, new PrintStream(out));
+                fail("expected RuntimeException");
+            } catch (RuntimeException e) {
+                // expected
+            }
+
+        } catch (Exception e) {
+
+            e.printStackTrace();
+            fail();
+        }
+    }
+
+    @Test
+    public void testQueueAddBatch() {
+        System.out.println("testQueueAddBatch...");
+        stopOption();
+        File file = null;
+        try {
+            app.createIfNotExistsWithParents(TEST_ZK_QU_NODE, "");
+            file = File.createTempFile("zkrw-payloads", "");
+            OutputStream fileOut = new FileOutputStream(file);
+            fileOut.write("\tsecond\n1\tfirst\n\n\tthird\n".getBytes());
+            fileOut.close();
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertTrue(app.execute("qAddBatch", TEST_ZK_QU_NODE, "pri:" + file.getPath(), "5", Zkrw.FORMAT_TEXT, new PrintStream(out)));
+            String[] names = out.toString().split(Zkrw.NEWLINE);
+            assertEquals(3, names.length);
+            for (String name : names) {
+                assertTrue(name, name.startsWith(TEST_ZK_QU_NODE + "/"));
+            }
+            // 1 before the default priority 5
+            assertEquals(Arrays.asList("first", "second", "third"), app.queuePollBatch(TEST_ZK_QU_NODE, 10, 0));
+
+            // the second item is larger than the server accepts, which closes the connection
+            fileOut = new FileOutputStream(file);
+            fileOut.write("5\nfirst\n".getBytes());
+            fileOut.write((2 * 1024 * 1024 + "\n").getBytes());
+            fileOut.write(new byte[2 * 1024 * 1024]);
+            fileOut.write("\n5\nthird\n".getBytes());
+            fileOut.close();
+
+            final int[] numConnects = new int[1];
+            Zkrw.Connector connector = new Zkrw.Connector() {
+                @Override
+                public Zkrw connect() throws IOException {
+                    numConnects[0]++;
+                    return new Zkrw(zkServers);
+                }
+
+                @Override
+                public void release(Zkrw rw) throws InterruptedException {
+                    rw.close();
+                }
+            };
+            out.reset();
+            ByteArrayOutputStream err = new ByteArrayOutputStream();
+            assertEquals(1, Zkrw.run(connector, "test", 3, 10, 100, "qAddBatch", TEST_ZK_QU_NODE, "len:" + file.getPath(), "",
+                    new PrintStream(out), new PrintStream(err)));
+            // not retried, so the first item is added at most once. Its reply
+            // may be lost with the connection, otherwise it is reported.
+            assertEquals(1, numConnects[0]);
+            List<String> children = app.getZooKeeper().getChildren(TEST_ZK_QU_NODE, false);
+            assertTrue(children.toString(), children.size() <= 1);
+            if (out.size() > 0) {
+                assertEquals(Arrays.asList(TEST_ZK_QU_NODE + "/" + children.get(0)),
+                        Arrays.asList(out.toString().split(Zkrw.NEWLINE)));
+            }
+            if (!children.isEmpty()) {
+                assertEquals(Arrays.asList("first"), app.queuePollBatch(TEST_ZK_QU_NODE, 10, 0));
+            }
+        } catch (Exception e) {
+
+            e.printStackTrace();
+            fail();
+        } finally {
+            if (file != null) {
+                file.delete();
+            }
+        }
+    }
+
+    @Test
+    public void testMgetAndMstat() {
+        System.out.println("testMgetAndMstat...");
+        stopOption();
+        try {
+            app.createOrSet(zkrwTest.TEST_ZK_NODE, "main");
+            app.createOrSet(zkrwTest.TEST_ZK_CHILD1_NODE, "child");
+            String missing = zkrwTest.TEST_ZK_NODE + "/missing";
+
+            List<String> args = new ArrayList<String>(Arrays.asList("mget", zkrwTest.TEST_ZK_CHILD1_NODE, missing,
+                    zkrwTest.TEST_ZK_NODE));
+            Zkrw.joinPaths(args, 0);
+            assertEquals(2, args.size());
+            String paths = args.get(1);
+
+            ZkStats stats = app.getStats();
+            app.awaitConnected();
+            stats.reset();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try {
+                app.execute("mget", paths, null, null, Zkrw.FORMAT_TEXT, new PrintStream(out));
+                fail("expected RuntimeException");
+            } catch (RuntimeException e) {
+                // the missing path, after all the results
+            }
+            assertEquals(3, stats.getOperations());
+            String[] lines = out.toString().split(Zkrw.NEWLINE);
+            assertEquals(3, lines.length);
+            assertEquals(zkrwTest.TEST_ZK_CHILD1_NODE + "\t0\tchild", lines[0]);
+            assertTrue(lines[1], lines[1].startsWith(missing + "\t1\t") && lines[1].contains("NoNode"));
+            assertEquals(zkrwTest.TEST_ZK_NODE + "\t0\tmain", lines[2]);
+
+            out.reset();
+            String mtime = app.getMTime(zkrwTest.TEST_ZK_NODE);
+            assertTrue(app.execute("mstat", zkrwTest.TEST_ZK_NODE, null, null, Zkrw.FORMAT_TEXT, new PrintStream(out)));
+            String[] fields = out.toString().trim().split("\t");
+            assertEquals(7, fields.length);
+            assertEquals(mtime, fields[3]);
+            // dataLength and numChildren
+            assertEquals("4", fields[5]);
+            assertEquals("1", fields[6]);
+
+            out.reset();
+            assertTrue(app.execute("mstat", zkrwTest.TEST_ZK_CHILD1_NODE, null, null, Zkrw.FORMAT_NDJSON, new PrintStream(out)));
+            assertTrue(out.toString().startsWith("{\"path\":\"" + zkrwTest.TEST_ZK_CHILD1_NODE + "\",\"ctime\":"));
+
+            out.reset();
+            try {
+                app.execute("mget", missing, null, null, Zkrw.FORMAT_NDJSON, new PrintStream(out));
+                fail("expected RuntimeException");
+            } catch (RuntimeException e) {
+                // expected
+            }
+            assertTrue(out.toString().startsWith("{\"path\":\"" + missing + "\",\"error\":\""));
+
+        } catch (Exception e) {
+
+            e.printStackTrace();
+            fail();
+        }
+    }
+
+    @Test
+    public void testCreateWithParentsRoundTrips() {
+        System.out.println("testCreateWithParentsRoundTrips...");
+        stopOption();
+        try {
+            ZkStats stats = app.getStats();
+            // the connect is recorded from the event thread, so only count operations once it is in
+            app.awaitConnected();
+            // one create per level, including the existing root node
+            int levels = zkrwTest.TEST_ZK_GRGRANDCHILD_NODE.split("/").length - 1;
+
+            stats.reset();
+            app.createOrSetWithParents(zkrwTest.TEST_ZK_GRGRANDCHILD_NODE, "1");
+            // the existing root node is set too
+            assertEquals(levels + 1, stats.getOperations());
+            assertEquals("1", app.get(zkrwTest.TEST_ZK_GRGRANDCHILD_NODE));
+            assertEquals("1", app.get(zkrwTest.TEST_ZK_NODE));
+
+            stats.reset();
+            app.createIfNotExistsWithParents(zkrwTest.TEST_ZK_GRGRANDCHILD_NODE, "2");
+            assertEquals(levels, stats.getOperations());
+            assertEquals("1", app.get(zkrwTest.TEST_ZK_GRGRANDCHILD_NODE));
+
+        } catch (Exception e) {
+
+            e.printStackTrace();
+            fail();
+        }
+    }
+
     /**
      * Test method for
      * {@link net.fmpub.zkrw.Zkrw#createIfNotExists(java.lang.String, java.lang.String)}
@@ -7,9 +7,13 @@
  */
 package net.fmpub.zkrw;
 
-import java.io.IOException;
+import java.io.*;
+import java.util.*;
 
 import junit.framework.TestCase;
+import net.fmpub.zk.util.NonRetryableException;
+import net.fmpub.zk.util.RetryPolicy;
+import net.fmpub.zk.util.ZkTestServer;
 
 import org.apache.log4j.*;
 import org.apache.zookeeper.*;
@@ -25,7 +29,10 @@ public class zkrwTest extends TestCase implements Watcher {
     
     Zkrw app;
 
-    public static final String ZK_SERVERS = "127.0.0.1:2181";
+    /**
+     * Connect string for this test's chroot on the test server.
+     */
+    String zkServers;
 
     public static final String TEST_ZK_ROOT_NODE = "/DS-test"; // DO NOT DELETE
     public static final String TEST_ZK_NODE = TEST_ZK_ROOT_NODE + "/main";
@@ -66,7 +73,7 @@ public class zkrwTest extends TestCase implements Watcher {
         for (String methodName : METHOD_NAMES) {
             System.out.println("Calling " + methodName);
             // "$ZK_SERVERS" "$ZK_SESSTIMEOUT_MS" "$ZK_NUM_RETRIES" "$ZK_RETRY_DELAY_MIN_MS" "$ZK_RETRY_DELAY_MAX_MS"
-            Zkrw.main(new String[] { ZK_SERVERS, "","","","", methodName, TEST_ZK_NODE, "0" });
+            Zkrw.main(new String[] { zkServers, "","","","", methodName, TEST_ZK_NODE, "0" });
         }
         
 
@@ -83,7 +90,7 @@ public class zkrwTest extends TestCase implements Watcher {
         for (String methodName : METHOD_NAMES) {
             System.out.println("Calling " + methodName);
             // "$ZK_SERVERS" "$ZK_SESSTIMEOUT_MS" "$ZK_NUM_RETRIES" "$ZK_RETRY_DELAY_MIN_MS" "$ZK_RETRY_DELAY_MAX_MS"
-            Zkrw.main(new String[] { ZK_SERVERS, "","","","", methodName, TEST_ZK_NODE, "" });
+            Zkrw.main(new String[] { zkServers, "","","","", methodName, TEST_ZK_NODE, "" });
         }
         
 
@@ -98,11 +105,11 @@ public class zkrwTest extends TestCase implements Watcher {
         stopOption();
         
         // check works with a node, with 5 retries, low wait
-        assertEquals(0,Zkrw.run(ZK_SERVERS, 3000, 5, 0, 5, "exists", TEST_ZK_NODE, "", ""));
-        assertEquals(0,Zkrw.run(ZK_SERVERS, 3000, 5, 0, 5, "create", TEST_ZK_NODE, "new", ""));
-        assertEquals(0,Zkrw.run(ZK_SERVERS, 3000, 5, 0, 5, "get", TEST_ZK_NODE, "", ""));
+        assertEquals(0,Zkrw.run(zkServers, 3000, 5, 0, 5, "exists", TEST_ZK_NODE, "", ""));
+        assertEquals(0,Zkrw.run(zkServers, 3000, 5, 0, 5, "create", TEST_ZK_NODE, "new", ""));
+        assertEquals(0,Zkrw.run(zkServers, 3000, 5, 0, 5, "get", TEST_ZK_NODE, "", ""));
         
-        // check it fails with a non-existent node, with 5 retries
+        // check a non-existent node fails on the first attempt, with 5 retries
         final String node = TEST_ZK_NODE + "/testTiming";
         
         
@@ -111,78 +118,98 @@ public class zkrwTest extends TestCase implements Watcher {
         final int minDur = 10;
         final int range = 1000;
         
+        FailingConnector connector = new FailingConnector();
         long startFailure = System.currentTimeMillis();
-        assertEquals(1,Zkrw.run(ZK_SERVERS, 3000, retries, minDur, range, "get", node, "", ""));
+        assertEquals(1,runWith(connector, retries, minDur, range, "get", node));
         long failureRuntime = System.currentTimeMillis() - startFailure;
-        assertTrue(failureRuntime > (minDur * retries) && failureRuntime < ( (minDur + range) * retries) );
+        assertEquals(1, connector.numAttempts);
+        assertTrue(failureRuntime < range);
         
-        // check it passes with a non-existent node, with 15 retries
+        // check connection loss is retried on the same session
+        connector = new FailingConnector(new KeeperException.ConnectionLossException(), new KeeperException.OperationTimeoutException());
+        long startRetries = System.currentTimeMillis();
+        assertEquals(0,runWith(connector, retries, minDur, range, "get", TEST_ZK_NODE));
+        long retriesRuntime = System.currentTimeMillis() - startRetries;
+        assertEquals(3, connector.numAttempts);
+        assertEquals(1, connector.numConnects);
+        assertEquals(1, connector.numReleases);
+        // backoff of at least the min delay before each retry
+        assertTrue(retriesRuntime >= minDur * 2);
         
-        TestRunThread testThread = new TestRunThread(retries,minDur,range,node);
-        testThread.start();
-        Thread.sleep(minDur+range);
-        // create the node
-        System.out.println("Attempting testRetriesAndTimeout to create " + node);
-        assertEquals(0,Zkrw.run(ZK_SERVERS, 3000, 15, 0, 1000, "create", node, "new", ""));
+        // check an expired session is replaced
+        connector = new FailingConnector(new KeeperException.SessionExpiredException());
+        assertEquals(0,runWith(connector, retries, minDur, range, "get", TEST_ZK_NODE));
+        assertEquals(2, connector.numAttempts);
+        assertEquals(2, connector.numConnects);
+        assertEquals(2, connector.numReleases);
         
-        // wait for test thread to complete
-        testThread.join();
+        // check it gives up after the max attempts
+        connector = new FailingConnector(new KeeperException.ConnectionLossException(), new KeeperException.ConnectionLossException());
+        assertEquals(1,runWith(connector, 2, minDur, range, "get", TEST_ZK_NODE));
+        assertEquals(2, connector.numAttempts);
         
-        assertEquals(0,testThread.getReturnVal());
-        assertTrue(testThread.getRuntime() > minDur && testThread.getRuntime() < ( (minDur + range) * retries) );
+    }
+    
+    @Test
+    public void testRetryPolicyDelays() {
+        RetryPolicy policy = new RetryPolicy(8, 10, 100);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(10, policy.getDelayMs(0));
+            int delay = policy.getDelayMs(1);
+            assertTrue(delay >= 10 && delay <= 20);
+            delay = policy.getDelayMs(3);
+            assertTrue(delay >= 10 && delay <= 80);
+            delay = policy.getDelayMs(60);
+            assertTrue(delay >= 10 && delay <= 100);
+        }
         
+        assertTrue(RetryPolicy.isRetryable(new KeeperException.ConnectionLossException()));
+        assertTrue(RetryPolicy.isRetryable(new RuntimeException(new KeeperException.SessionExpiredException())));
+        assertFalse(RetryPolicy.isRetryable(new KeeperException.NoNodeException()));
+        assertFalse(RetryPolicy.isRetryable(new IllegalArgumentException()));
+        assertFalse(RetryPolicy.isRetryable(new NonRetryableException("added", new KeeperException.ConnectionLossException())));
+        assertTrue(RetryPolicy.needsNewSession(new KeeperException.SessionExpiredException()));
+        assertFalse(RetryPolicy.needsNewSession(new KeeperException.ConnectionLossException()));
     }
     
-    private class TestRunThread extends Thread {
-
-        int returnVal;
+    private int runWith(Zkrw.Connector connector, int retries, int minDur, int range, String command, String node) {
+        return Zkrw.run(connector, "test", retries, minDur, range, command, node, "", "", new PrintStream(new ByteArrayOutputStream()), System.err);
+    }
+    
+    /**
+     * Connects sessions whose first attempts fail with the given failures.
+     */
+    private class FailingConnector implements Zkrw.Connector {
         
-        int retries;
-        int minDur;
-        int range;
-        String node;
-        long runtime = 0;
-       
-        /**
-         * @param retries
-         * @param minDur
-         * @param range
-         * @param node
-         */
-        public TestRunThread(int retries, int minDur, int range, String node) {
-            super();
-            this.retries = retries;
-            this.minDur = minDur;
-            this.range = range;
-            this.node = node;
-        }
-
-        /* (non-Javadoc)
-         * @see java.lang.Thread#run()
-         */
-        @Override
-        public void run() {
-            long start = System.currentTimeMillis();
-            System.out.println("\nAttempting testRetriesAndTimeout threaded test of " + node);
-            
-            // check it eventually succeeds with a non-existent node, with  retries
-            returnVal = (Zkrw.run(ZK_SERVERS, 3000, retries, minDur, range, "get", node, "", ""));
-            
-            runtime = System.currentTimeMillis() - start;
-            System.out.println("\n Finished testRetriesAndTimeout threaded test with "+returnVal+" in " + runtime+ " ms");
-            
-            
-            //success2 = (runtime > (minDur) && runtime < ( (minDur + range) * retries) );
-        }
+        final List<Exception> failures;
+        int numConnects = 0;
+        int numReleases = 0;
+        int numAttempts = 0;
         
-        public int getReturnVal() {
-            return returnVal;
+        FailingConnector(Exception... failures) {
+            this.failures = new ArrayList<Exception>(Arrays.asList(failures));
         }
         
-        public long getRuntime() {
-            return runtime;
+        @Override
+        public Zkrw connect() throws IOException {
+            numConnects++;
+            return new Zkrw(zkServers) {
+                @Override
+                boolean execute(String command, String path, String dataOrSec, String priority, String format, Stdin stdin, PrintStream out) throws Exception {
+                    numAttempts++;
+                    if (!failures.isEmpty()) {
+                        throw failures.remove(0);
+                    }
+                    return super.execute(command, path, dataOrSec, priority, format, stdin, out);
+                }
+            };
         }
         
+        @Override
+        public void release(Zkrw rw) throws InterruptedException {
+            numReleases++;
+            rw.close();
+        }
     }
 
     private void stopOption() {
@@ -227,11 +254,12 @@ public class zkrwTest extends TestCase implements Watcher {
 
     public Zkrw initApp() {
         try {
+            zkServers = ZkTestServer.newChroot();
             // if (app == null) {
-            app = new Zkrw(ZK_SERVERS);
+            app = new Zkrw(zkServers);
             // }
             return app;
-        } catch (IOException e) {
+        } catch (Exception e) {
 
             e.printStackTrace();
         }